@@ -18,6 +18,7 @@ package com.google.zxing;
 
 import com.google.zxing.common.BitArray;
 import com.google.zxing.common.BitMatrix;
+import com.google.zxing.common.RunLengthRow;
 
 /**
  * This class hierarchy provides a set of methods to convert luminance data to 1 bit data.
@@ -30,6 +31,7 @@ import com.google.zxing.common.BitMatrix;
 public abstract class Binarizer {
 
   private final LuminanceSource source;
+  private BitArray runScratch; // bits for the default getBlackRuns()
 
   protected Binarizer(LuminanceSource source) {
     this.source = source;
@@ -55,6 +57,26 @@ public abstract class Binarizer {
    */
   public abstract BitArray getBlackRow(int y, BitArray row) throws NotFoundException;
 
+  /**
+   * Converts one row of luminance data to runs of black and white pixels, for 1D readers which
+   * work on run lengths. The same rules apply as for {@link #getBlackRow(int, BitArray)}. This
+   * default converts the result of getBlackRow; implementations that can find the runs directly
+   * should override it.
+   *
+   * @param y The row to fetch, which must be in [0, bitmap height)
+   * @param runs An optional preallocated row. If null, a new one is allocated. Always use the
+   *             returned object.
+   * @return The runs in this row
+   * @throws NotFoundException if row can't be binarized
+   */
+  public RunLengthRow getBlackRuns(int y, RunLengthRow runs) throws NotFoundException {
+    if (runs == null) {
+      runs = new RunLengthRow();
+    }
+    runScratch = getBlackRow(y, runScratch);
+    return runs.set(runScratch);
+  }
+
   /**
    * Converts a 2D array of luminance data to 1 bit data. As above, assume this method is expensive
    * and do not call it repeatedly. This method is intended for decoding 2D barcodes and may or
@@ -18,6 +18,7 @@ package com.google.zxing;
 
 import com.google.zxing.common.BitArray;
 import com.google.zxing.common.BitMatrix;
+import com.google.zxing.common.RunLengthRow;
 
 /**
  * This class is the core bitmap class used by ZXing to represent 1 bit data. Reader objects
@@ -66,6 +67,20 @@ public final class BinaryBitmap {
     return binarizer.getBlackRow(y, row);
   }
 
+  /**
+   * Converts one row of luminance data to runs of black and white pixels. As above, callers should
+   * assume this method is expensive. This is the same row as getBlackRow(), in a form that 1D
+   * readers can match patterns against in either direction.
+   *
+   * @param y The row to fetch, which must be in [0, bitmap height)
+   * @param runs An optional preallocated row. Always use the returned object.
+   * @return The runs in this row
+   * @throws NotFoundException if row can't be binarized
+   */
+  public RunLengthRow getBlackRuns(int y, RunLengthRow runs) throws NotFoundException {
+    return binarizer.getBlackRuns(y, runs);
+  }
+
   /**
    * Converts a 2D array of luminance data to 1 bit. As above, assume this method is expensive
    * and do not call it repeatedly. This method is intended for decoding 2D barcodes and may or
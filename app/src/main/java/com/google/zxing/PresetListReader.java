@@ -1,6 +1,8 @@
 package com.google.zxing;
 
 import com.google.zxing.aztec.AztecReader;
+import com.google.zxing.common.BitArray;
+import com.google.zxing.common.RunLengthRow;
 import com.google.zxing.datamatrix.DataMatrixReader;
 import com.google.zxing.maxicode.MaxiCodeReader;
 import com.google.zxing.oned.CodaBarReader;
@@ -10,6 +12,7 @@ import com.google.zxing.oned.Code93Reader;
 import com.google.zxing.oned.EAN13Reader;
 import com.google.zxing.oned.EAN8Reader;
 import com.google.zxing.oned.ITFReader;
+import com.google.zxing.oned.OneDReader;
 import com.google.zxing.oned.UPCAReader;
 import com.google.zxing.oned.UPCEReader;
 import com.google.zxing.oned.rss.RSS14Reader;
@@ -18,73 +21,126 @@ import com.google.zxing.pdf417.PDF417Reader;
 import com.google.zxing.qrcode.QRCodeReader;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
 public class PresetListReader  implements Reader {
     private final ArrayList<Reader> readers = new ArrayList<>();
+    private final ArrayList<BarcodeFormat> formats = new ArrayList<>(); // null for the 1D group
+    private OneDGroup oneD; // all the 1D readers, which take their place in the list together
+    private boolean groupOneD;
+    private DecodeListener listener;
+
+    /** Told how each reader got on during a decode. See {@link #setDecodeListener(DecodeListener)} */
+    public interface DecodeListener {
+        /**
+         * Called after each reader has tried an image, on the thread doing the decoding.
+         * @param format format of the reader
+         * @param nanos  time the reader took
+         * @param result decoded code, or null if the reader failed
+         * @param error  why the reader failed (often {@link ChecksumException} or {@link FormatException}
+         *               if a code was found but couldn't be read), or null if it found nothing or succeeded
+         */
+        void readerFinished(BarcodeFormat format, long nanos, Result result, Exception error);
+    }
 
     public void add(BarcodeFormat format){
         switch (format){
             case AZTEC:
-                readers.add(new AztecReader());
+                add(format, new AztecReader());
                 break;
             case CODABAR:
-                readers.add(new CodaBarReader());
+                addOneD(format, new CodaBarReader());
                 break;
             case CODE_39:
-                readers.add(new Code39Reader());
+                addOneD(format, new Code39Reader());
                 break;
             case CODE_93:
-                readers.add(new Code93Reader());
+                addOneD(format, new Code93Reader());
                 break;
             case CODE_128:
-                readers.add(new Code128Reader());
+                addOneD(format, new Code128Reader());
                 break;
             case DATA_MATRIX:
-                readers.add(new DataMatrixReader());
+                add(format, new DataMatrixReader());
                 break;
             case EAN_8:
-                readers.add(new EAN8Reader());
+                addOneD(format, new EAN8Reader());
                 break;
             case EAN_13:
-                readers.add(new EAN13Reader());
+                addOneD(format, new EAN13Reader());
                 break;
             case ITF:
-                readers.add(new ITFReader());
+                addOneD(format, new ITFReader());
                 break;
             case MAXICODE:
-                readers.add(new MaxiCodeReader());
+                add(format, new MaxiCodeReader());
                 break;
             case PDF_417:
-                readers.add(new PDF417Reader());
+                add(format, new PDF417Reader());
                 break;
             case QR_CODE:
-                readers.add(new QRCodeReader());
+                add(format, new QRCodeReader());
                 break;
             case RSS_14:
-                readers.add(new RSS14Reader());
+                addOneD(format, new RSS14Reader());
                 break;
             case RSS_EXPANDED:
-                readers.add(new RSSExpandedReader());
+                addOneD(format, new RSSExpandedReader());
                 break;
             case UPC_A:
-                readers.add(new UPCAReader());
+                addOneD(format, new UPCAReader());
                 break;
             case UPC_E:
-                readers.add(new UPCEReader());
+                addOneD(format, new UPCEReader());
                 break;
         }
     }
 
-    private Map<DecodeHintType,?> hints = null;
+    private void add(BarcodeFormat format, Reader reader){
+        readers.add(reader);
+        formats.add(format);
+    }
+
+    /** 1D readers go in the list like any other, or if grouping is on,
+     * all in one group where the first of them was added. See {@link OneDGroup} */
+    private void addOneD(BarcodeFormat format, OneDReader reader){
+        if (!groupOneD) {
+            add(format, reader);
+            return;
+        }
+        if (oneD == null) {
+            oneD = new OneDGroup();
+            add(null, oneD);
+        }
+        oneD.add(format, reader);
+    }
+
+    /** If true, 1D formats added after this share the work of each scan line, and take their turn
+     * in the list together, where the first of them was added. Frames with no 1D code are quicker,
+     * but the 1D readers take turns on each line rather than each scanning the whole frame,
+     * so a later 1D format can be returned ahead of an earlier one, and a code found early on
+     * can cost more. Off by default, so formats are tried strictly in the order added.
+     * Set this before adding formats. */
+    public void setGroupOneD(boolean value){
+        groupOneD = value;
+    }
+
+    /** If not null, the listener is told which readers were tried on each image,
+     * how long each took, and how it got on. Readers are not timed if this is null. */
+    public void setDecodeListener(DecodeListener listener){
+        this.listener = listener;
+    }
+
+    private Map<DecodeHintType,Object> hints = null;
 
     /** If true, the "Try Harder" hint will be given to scanners.
      * This might improve success on marginal codes, but at the
      * expense of more processing time. */
     public void setTryHarder(boolean value){
         if (!value) {
-            hints = null;
+            if (hints != null) hints.remove(DecodeHintType.TRY_HARDER);
             return;
         }
 
@@ -97,28 +153,56 @@ public class PresetListReader  implements Reader {
         }
     }
 
+    /** If not null, readers will report possible result points (like QR finder patterns)
+     * to the callback as they find them, even if the code doesn't go on to decode.
+     * This is called on the thread doing the decoding. */
+    public void setResultPointCallback(ResultPointCallback callback){
+        if (callback == null) {
+            if (hints != null) hints.remove(DecodeHintType.NEED_RESULT_POINT_CALLBACK);
+            return;
+        }
+
+        if (hints == null) {
+            hints = new HashMap<>();
+        }
+
+        hints.put(DecodeHintType.NEED_RESULT_POINT_CALLBACK, callback);
+    }
+
     @Override
     public Result decode(BinaryBitmap image) throws NotFoundException, ChecksumException, FormatException {
-        for (Reader reader : readers) {
-            try {
-                var result = reader.decode(image, hints);
-                if (result != null) return result;
-            } catch (Exception e) {
-                // Ignore
-            }
-        }
-        return null;
+        return decodeAll(image, hints);
     }
 
     @Override
     public Result decode(BinaryBitmap image, Map<DecodeHintType, ?> hints) throws NotFoundException, ChecksumException, FormatException {
-        for (Reader reader : readers) {
-            try {
-                var result = reader.decode(image);
+        return decodeAll(image, null);
+    }
+
+    private Result decodeAll(BinaryBitmap image, Map<DecodeHintType, ?> hints) {
+        var listener = this.listener;
+        for (int i = 0; i < readers.size(); i++) {
+            // Stop between formats if the decode was abandoned, as the parameter sweep does after a hit
+            if (Thread.currentThread().isInterrupted()) return null;
+
+            var start = listener != null ? System.nanoTime() : 0L;
+            Result result = null;
+            Exception error = null;
+            var reader = readers.get(i);
+            if (reader == oneD) {
+                result = oneD.decodeAll(image, hints, listener);
                 if (result != null) return result;
+                continue;
+            }
+            try {
+                result = reader.decode(image, hints);
+            } catch (NotFoundException e) {
+                // Nothing of this format in the image
             } catch (Exception e) {
-                // Ignore
+                error = e;
             }
+            if (listener != null) listener.readerFinished(formats.get(i), System.nanoTime() - start, result, error);
+            if (result != null) return result;
         }
         return null;
     }
@@ -129,4 +213,82 @@ public class PresetListReader  implements Reader {
             reader.reset();
         }
     }
+
+    /**
+     * Runs several 1D readers as one, so they share the work of each scan line.
+     * <p>
+     * Each line is thresholded once into runs, and reversed once (by flipping the run list)
+     * for upside down codes, then every reader is tried on it in turn. Reading one at a time,
+     * each reader would threshold and reverse every line again for itself.
+     * Only used when {@link #setGroupOneD(boolean)} is on.
+     * <p>
+     * Each reader is still timed and reported to the listener separately. The shared work on
+     * each line is split evenly between them.
+     */
+    private static final class OneDGroup extends OneDReader {
+        private final ArrayList<OneDReader> members = new ArrayList<>();
+        private final ArrayList<BarcodeFormat> memberFormats = new ArrayList<>();
+        private final RunLengthRow runs = new RunLengthRow();
+        private long[] nanos = new long[0];
+        private boolean timing;
+
+        void add(BarcodeFormat format, OneDReader reader) {
+            members.add(reader);
+            memberFormats.add(format);
+            nanos = new long[members.size()];
+        }
+
+        /** Decode as {@link #decode(BinaryBitmap, Map)}, reporting each member to the listener */
+        Result decodeAll(BinaryBitmap image, Map<DecodeHintType, ?> hints, DecodeListener listener) {
+            timing = listener != null;
+            var start = timing ? System.nanoTime() : 0L;
+            Arrays.fill(nanos, 0L);
+            Result result = null;
+            try {
+                result = decode(image, hints);
+            } catch (NotFoundException | FormatException e) {
+                // Nothing of these formats in the image. Row errors are not passed out by 1D readers.
+            }
+            if (!timing) return result;
+
+            var count = members.size();
+            var shared = System.nanoTime() - start;
+            for (var n : nanos) shared -= n;
+            shared = Math.max(0L, shared) / count;
+            for (int i = 0; i < count; i++) {
+                var format = memberFormats.get(i);
+                var found = result != null && result.getBarcodeFormat() == format ? result : null;
+                listener.readerFinished(format, nanos[i] + shared, found, null);
+            }
+            return result;
+        }
+
+        @Override
+        public Result decodeRow(int rowNumber, BitArray row, Map<DecodeHintType, ?> hints) throws NotFoundException {
+            return decodeRuns(rowNumber, runs.set(row), hints);
+        }
+
+        @Override
+        public Result decodeRuns(int rowNumber, RunLengthRow row, Map<DecodeHintType, ?> hints) throws NotFoundException {
+            var count = members.size();
+            for (int i = 0; i < count; i++) {
+                var start = timing ? System.nanoTime() : 0L;
+                try {
+                    return members.get(i).decodeRuns(rowNumber, row, hints);
+                } catch (ReaderException e) {
+                    // not this format on this line
+                } finally {
+                    if (timing) nanos[i] += System.nanoTime() - start;
+                }
+            }
+            throw NotFoundException.getNotFoundInstance();
+        }
+
+        @Override
+        public void reset() {
+            for (Reader reader : members) {
+                reader.reset();
+            }
+        }
+    }
 }
@@ -136,6 +136,75 @@ public final class BitArray implements Cloneable {
     return Math.min(result, size);
   }
 
+  /**
+   * @param from index to start looking from
+   * @return index of the first bit after {@code from} whose value differs from bit {@code from},
+   *  or {@code size} if the run of equal bits continues to the end
+   * @see #getPreviousTransition(int)
+   */
+  public int getNextTransition(int from) {
+    if (from >= size) {
+      return size;
+    }
+    int bitsOffset = from / 32;
+    int currentBits = bits[bitsOffset];
+    // all ones if bit 'from' is set, so XOR turns the run into zeros and the next transition into a one
+    int flip = -((currentBits >>> (from & 0x1F)) & 1);
+    currentBits = (currentBits ^ flip) & -(1 << (from & 0x1F));
+    while (currentBits == 0) {
+      if (++bitsOffset == bits.length) {
+        return size;
+      }
+      currentBits = bits[bitsOffset] ^ flip;
+    }
+    int result = (bitsOffset * 32) + Integer.numberOfTrailingZeros(currentBits);
+    return Math.min(result, size);
+  }
+
+  /**
+   * @param from index to start looking back from
+   * @return index of the last bit before {@code from} whose value differs from bit {@code from},
+   *  or -1 if the run of equal bits continues to the start
+   * @see #getNextTransition(int)
+   */
+  public int getPreviousTransition(int from) {
+    int bitsOffset = from / 32;
+    int currentBits = bits[bitsOffset];
+    int flip = -((currentBits >>> (from & 0x1F)) & 1);
+    // mask off bit 'from' and greater bits
+    currentBits = (currentBits ^ flip) & ((1 << (from & 0x1F)) - 1);
+    while (currentBits == 0) {
+      if (--bitsOffset < 0) {
+        return -1;
+      }
+      currentBits = bits[bitsOffset] ^ flip;
+    }
+    return (bitsOffset * 32) + 31 - Integer.numberOfLeadingZeros(currentBits);
+  }
+
+  /**
+   * Run-length encodes a range of bits. The first run is of the value of bit {@code start},
+   * and runs alternate from there.
+   *
+   * @param start start of range, inclusive
+   * @param end end of range, exclusive
+   * @param runs array to fill with the width of each run. Runs that don't fit are not counted.
+   * @return number of runs written to {@code runs}
+   */
+  public int getRuns(int start, int end, int[] runs) {
+    if (end > size) {
+      throw new IllegalArgumentException();
+    }
+    int count = 0;
+    int maxRuns = runs.length;
+    while (start < end && count < maxRuns) {
+      int next = Math.min(getNextTransition(start), end);
+      runs[count++] = next - start;
+      start = next;
+    }
+    return count;
+  }
+
   /**
    * Sets a block of 32 bits, starting at bit i.
    *
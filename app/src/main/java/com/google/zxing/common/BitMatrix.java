@@ -170,9 +170,17 @@ public final class BitMatrix implements Cloneable {
    *
    * If min/max ranges are valid, the enclosed range is colored. Set all to zero to turn off highlight. */
   public int[] toColorInts(boolean invert) {
+    colorIntsBuffer = toColorInts(invert, colorIntsBuffer);
+    return colorIntsBuffer;
+  }
+
+  /** Convert the bit matrix to an array of ints, one int per pixel, writing into the given buffer.
+   * The buffer is replaced if null or too small, so keep the one returned for the next call.
+   * This lets a caller that thresholds a new matrix each frame reuse one buffer across them. */
+  public int[] toColorInts(boolean invert, int[] colorIntsBuffer) {
     var size = width * height;
     if (colorIntsBuffer == null || colorIntsBuffer.length < size) {
-      colorIntsBuffer = new int[width * height];
+      colorIntsBuffer = new int[size];
     }
 
     var white = invert ? 0xFF000000 : 0xFFFFFFFF;
@@ -313,6 +321,63 @@ public final class BitMatrix implements Cloneable {
     return row;
   }
 
+  /**
+   * Retrieve one column of the matrix as a BitArray, with bit y of the array from row y.
+   * Vertical scans can then use the BitArray's word-level searches.
+   *
+   * @param x The column to retrieve
+   * @param column An optional caller-allocated BitArray, will be allocated if null or too small
+   * @return The resulting BitArray - this reference should always be used even when passing
+   *         your own column
+   */
+  public BitArray getColumn(int x, BitArray column) {
+    if (column == null || column.getSize() < height) {
+      column = new BitArray(height);
+    } else {
+      column.clear();
+    }
+    int[] columnBits = column.getBitArray();
+    int offset = x / 32;
+    int shift = x & 0x1f;
+    for (int y = 0; y < height; y++, offset += rowSize) {
+      columnBits[y / 32] |= ((bits[offset] >>> shift) & 1) << (y & 0x1f);
+    }
+    return column;
+  }
+
+  /**
+   * Efficient method to check if a range of bits in one row is set, or not set.
+   *
+   * @param y row to check
+   * @param start start of range, inclusive.
+   * @param end end of range, exclusive
+   * @param value if true, checks that bits in range are set, otherwise checks that they are not set
+   * @return true iff all bits are set or not set in range, according to value argument
+   * @see BitArray#isRange(int, int, boolean)
+   */
+  public boolean isRowRange(int y, int start, int end, boolean value) {
+    if (end < start || start < 0 || end > width) {
+      throw new IllegalArgumentException();
+    }
+    if (end == start) {
+      return true; // empty range matches
+    }
+    end--; // will be easier to treat this as the last actually set bit -- inclusive
+    int offset = y * rowSize;
+    int firstInt = start / 32;
+    int lastInt = end / 32;
+    for (int i = firstInt; i <= lastInt; i++) {
+      int firstBit = i > firstInt ? 0 : start & 0x1F;
+      int lastBit = i < lastInt ? 31 : end & 0x1F;
+      // Ones from firstBit to lastBit, inclusive
+      int mask = (2 << lastBit) - (1 << firstBit);
+      if ((bits[offset + i] & mask) != (value ? mask : 0)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
   /**
    * @param y row to set
    * @param row {@link BitArray} to copy from
@@ -504,6 +569,14 @@ public final class BitMatrix implements Cloneable {
     return rowSize;
   }
 
+  /**
+   * @return underlying array of ints, {@link #getRowSize()} ints per row. Within a row, the
+   *         least significant bit of the first element is column 0. Changes write through.
+   */
+  public int[] getBits() {
+    return bits;
+  }
+
   @Override
   public boolean equals(Object o) {
     if (!(o instanceof BitMatrix)) {
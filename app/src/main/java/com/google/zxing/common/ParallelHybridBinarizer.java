@@ -0,0 +1,296 @@
+/*
+ * Copyright 2009 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.common;
+
+import com.google.zxing.Binarizer;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.NotFoundException;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The same local thresholding as {@link HybridBinarizer}, with the same output bit for bit,
+ * but spread over a fork-join pool and writing into reusable buffers.
+ *
+ * The work is done in three passes over the 8x8 pixel blocks:
+ * <ol>
+ *   <li>Sum, minimum and maximum of each block. Block rows are independent, so these run in parallel.</li>
+ *   <li>Black point of each low contrast block, from the blocks above and to the left.
+ *   Each depends on the last, so this runs in order, but it is only a few operations per block.</li>
+ *   <li>Threshold each block against the 5x5 blocks around it. Block rows write to different
+ *   rows of the matrix, so these run in parallel. When the height isn't a multiple of the block
+ *   size, the last block row overlaps the one before it, so it is done after the others.</li>
+ * </ol>
+ *
+ * Buffers come from a {@link Scratch}, which is kept by the caller between frames. The matrix
+ * returned belongs to the scratch, and is overwritten by the next binarizer that uses it.
+ */
+public final class ParallelHybridBinarizer extends GlobalHistogramBinarizer {
+
+  private static final int BLOCK_SIZE_POWER = 3;
+  private static final int BLOCK_SIZE = 1 << BLOCK_SIZE_POWER;
+  private static final int BLOCK_SIZE_MASK = BLOCK_SIZE - 1;
+  private static final int MINIMUM_DIMENSION = BLOCK_SIZE * 5;
+  private static final int MIN_DYNAMIC_RANGE = 24;
+  private static final int ROWS_PER_TASK = 8; // block rows (64 pixel rows) each task does without splitting
+  private static final int HIGH_CONTRAST = -1; // marks a block that uses its own average, in `Scratch.lowMins`
+
+  /**
+   * Buffers reused between frames: the black point grid and the output matrix.
+   * Only one binarizer should use a scratch at a time.
+   */
+  public static final class Scratch {
+    private int[] blackPoints;
+    private int[] lowMins; // minimum of each low contrast block, or HIGH_CONTRAST
+    private BitMatrix matrix;
+
+    void prepare(int blocks, int width, int height) {
+      if (blackPoints == null || blackPoints.length < blocks) {
+        blackPoints = new int[blocks];
+        lowMins = new int[blocks];
+      }
+      if (matrix == null || matrix.getWidth() != width || matrix.getHeight() != height) {
+        matrix = new BitMatrix(width, height);
+      } else {
+        matrix.clear();
+      }
+    }
+  }
+
+  private final ForkJoinPool pool;
+  private final Scratch scratch;
+  private BitMatrix matrix;
+
+  /**
+   * @param source  luminance to threshold
+   * @param pool    threads to spread the work over
+   * @param scratch buffers to reuse. The matrix returned is only good until the scratch is used again.
+   */
+  public ParallelHybridBinarizer(LuminanceSource source, ForkJoinPool pool, Scratch scratch) {
+    super(source);
+    this.pool = pool;
+    this.scratch = scratch;
+  }
+
+  @Override
+  public BitMatrix getBlackMatrix() throws NotFoundException {
+    if (matrix != null) {
+      return matrix;
+    }
+    LuminanceSource source = getLuminanceSource();
+    int width = source.getWidth();
+    int height = source.getHeight();
+    if (width >= MINIMUM_DIMENSION && height >= MINIMUM_DIMENSION) {
+      int subWidth = (width + BLOCK_SIZE_MASK) >> BLOCK_SIZE_POWER;
+      int subHeight = (height + BLOCK_SIZE_MASK) >> BLOCK_SIZE_POWER;
+      scratch.prepare(subWidth * subHeight, width, height);
+
+      Frame frame = new Frame(source.getMatrix(), width, height, subWidth, subHeight, scratch);
+      pool.invoke(new BlockRows(frame, BlockRows.STATISTICS, 0, subHeight));
+      frame.correctLowContrastBlocks();
+
+      // The last block row is moved up to fit in the frame, and may share pixel rows with the one
+      // above. BitMatrix words can't be written by two threads at once, so it's done afterwards.
+      boolean overlaps = (height & BLOCK_SIZE_MASK) != 0;
+      int parallelRows = overlaps ? subHeight - 1 : subHeight;
+      pool.invoke(new BlockRows(frame, BlockRows.THRESHOLD, 0, parallelRows));
+      if (overlaps) {
+        frame.thresholdRow(subHeight - 1);
+      }
+      matrix = scratch.matrix;
+    } else {
+      // If the image is too small, fall back to the global histogram approach.
+      matrix = super.getBlackMatrix();
+    }
+    return matrix;
+  }
+
+  /** A new binarizer gets its own scratch, so it doesn't overwrite this one's matrix */
+  @Override
+  public Binarizer createBinarizer(LuminanceSource source) {
+    return new ParallelHybridBinarizer(source, pool, new Scratch());
+  }
+
+  /** Splits a range of block rows in half until it's small enough to run */
+  private static final class BlockRows extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    static final int STATISTICS = 0;
+    static final int THRESHOLD = 1;
+
+    private final Frame frame;
+    private final int pass;
+    private final int from;
+    private final int to;
+
+    BlockRows(Frame frame, int pass, int from, int to) {
+      this.frame = frame;
+      this.pass = pass;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from <= ROWS_PER_TASK) {
+        for (int y = from; y < to; y++) {
+          if (pass == STATISTICS) {
+            frame.statisticsRow(y);
+          } else {
+            frame.thresholdRow(y);
+          }
+        }
+        return;
+      }
+      int middle = (from + to) >>> 1;
+      invokeAll(new BlockRows(frame, pass, from, middle), new BlockRows(frame, pass, middle, to));
+    }
+  }
+
+  /** One frame being thresholded, shared by the tasks */
+  private static final class Frame {
+    private final byte[] luminances;
+    private final int width;
+    private final int height;
+    private final int subWidth;
+    private final int subHeight;
+    private final int[] blackPoints;
+    private final int[] lowMins;
+    private final int[] bits;
+    private final int rowSize;
+
+    Frame(byte[] luminances, int width, int height, int subWidth, int subHeight, Scratch scratch) {
+      this.luminances = luminances;
+      this.width = width;
+      this.height = height;
+      this.subWidth = subWidth;
+      this.subHeight = subHeight;
+      this.blackPoints = scratch.blackPoints;
+      this.lowMins = scratch.lowMins;
+      this.bits = scratch.matrix.getBits();
+      this.rowSize = scratch.matrix.getRowSize();
+    }
+
+    /**
+     * Average of each block in a row, as {@link HybridBinarizer} calculates it.
+     * Blocks with too little contrast to use their average keep their minimum for the next pass.
+     */
+    void statisticsRow(int y) {
+      int maxYOffset = height - BLOCK_SIZE;
+      int maxXOffset = width - BLOCK_SIZE;
+      int yoffset = Math.min(y << BLOCK_SIZE_POWER, maxYOffset);
+      int out = y * subWidth;
+      for (int x = 0; x < subWidth; x++) {
+        int xoffset = Math.min(x << BLOCK_SIZE_POWER, maxXOffset);
+        int sum = 0;
+        int min = 0xFF;
+        int max = 0;
+        for (int yy = 0, offset = yoffset * width + xoffset; yy < BLOCK_SIZE; yy++, offset += width) {
+          for (int xx = 0; xx < BLOCK_SIZE; xx++) {
+            int pixel = luminances[offset + xx] & 0xFF;
+            sum += pixel;
+            if (pixel < min) {
+              min = pixel;
+            }
+            if (pixel > max) {
+              max = pixel;
+            }
+          }
+        }
+        if (max - min > MIN_DYNAMIC_RANGE) {
+          blackPoints[out + x] = sum >> (BLOCK_SIZE_POWER * 2);
+          lowMins[out + x] = HIGH_CONTRAST;
+        } else {
+          lowMins[out + x] = min;
+        }
+      }
+    }
+
+    /**
+     * Black point of each low contrast block: half its minimum, or the black point of the blocks
+     * above and to the left if its minimum is darker than them. In block order, as each can
+     * depend on the one before it.
+     */
+    void correctLowContrastBlocks() {
+      for (int y = 0; y < subHeight; y++) {
+        int row = y * subWidth;
+        for (int x = 0; x < subWidth; x++) {
+          int min = lowMins[row + x];
+          if (min == HIGH_CONTRAST) {
+            continue;
+          }
+          int average = min / 2;
+          if (y > 0 && x > 0) {
+            int above = row - subWidth + x;
+            int averageNeighborBlackPoint =
+                (blackPoints[above] + (2 * blackPoints[row + x - 1]) + blackPoints[above - 1]) / 4;
+            if (min < averageNeighborBlackPoint) {
+              average = averageNeighborBlackPoint;
+            }
+          }
+          blackPoints[row + x] = average;
+        }
+      }
+    }
+
+    /** Threshold each block in a row against the average black point of the 5x5 blocks around it */
+    void thresholdRow(int y) {
+      int maxYOffset = height - BLOCK_SIZE;
+      int maxXOffset = width - BLOCK_SIZE;
+      int yoffset = Math.min(y << BLOCK_SIZE_POWER, maxYOffset);
+      int top = cap(y, subHeight - 3);
+      for (int x = 0; x < subWidth; x++) {
+        int xoffset = Math.min(x << BLOCK_SIZE_POWER, maxXOffset);
+        int left = cap(x, subWidth - 3);
+        int sum = 0;
+        for (int z = -2; z <= 2; z++) {
+          int row = (top + z) * subWidth + left;
+          sum += blackPoints[row - 2] + blackPoints[row - 1] + blackPoints[row] + blackPoints[row + 1] + blackPoints[row + 2];
+        }
+        thresholdBlock(xoffset, yoffset, sum / 25);
+      }
+    }
+
+    /** Set the bits of pixels at or below the threshold, eight at a time */
+    private void thresholdBlock(int xoffset, int yoffset, int threshold) {
+      int word = xoffset >>> 5;
+      int shift = xoffset & 0x1f;
+      for (int y = 0, offset = yoffset * width + xoffset; y < BLOCK_SIZE; y++, offset += width) {
+        int mask = 0;
+        for (int x = 0; x < BLOCK_SIZE; x++) {
+          // Comparison needs to be <= so that black == 0 pixels are black even if the threshold is 0.
+          if ((luminances[offset + x] & 0xFF) <= threshold) {
+            mask |= 1 << x;
+          }
+        }
+        if (mask == 0) {
+          continue;
+        }
+        int index = (yoffset + y) * rowSize + word;
+        bits[index] |= mask << shift;
+        if (shift > 32 - BLOCK_SIZE) {
+          bits[index + 1] |= mask >>> (32 - shift);
+        }
+      }
+    }
+
+    private static int cap(int value, int max) {
+      return value < 2 ? 2 : Math.min(value, max);
+    }
+  }
+}
@@ -0,0 +1,240 @@
+package com.google.zxing.common;
+
+import java.util.Arrays;
+
+/**
+ * <p>One row of black and white pixels, held as the runs of equal pixels rather than as bits.
+ * 1D readers count runs far more than they look at single pixels, so this saves recounting
+ * them for every reader and every guard pattern search. Reversing the row only reverses the
+ * list of runs.</p>
+ *
+ * <p>Pixel lookups are also offered, with the same meaning as in {@link BitArray}, so readers
+ * can use either. Looking up pixels in order (left to right) is quickest.</p>
+ *
+ * <p>Instances are meant to be reused from row to row, and are not thread-safe.</p>
+ */
+public final class RunLengthRow {
+
+  private int size;
+  private int runCount;
+  private boolean firstBlack;
+  private int[] starts = new int[64]; // start of each run, then the row size after the last
+  private int lastRun; // run found by the last lookup, checked first next time
+
+  /**
+   * Empty the row, ready for a new one to be built with {@link #addTransition(int)}.
+   *
+   * @param size width of the row in pixels
+   * @param firstBlack colour of the first pixel
+   */
+  public void reset(int size, boolean firstBlack) {
+    this.size = size;
+    this.firstBlack = firstBlack;
+    this.runCount = size > 0 ? 1 : 0;
+    this.lastRun = 0;
+    starts[0] = 0;
+    starts[runCount] = size;
+  }
+
+  /**
+   * Start a new run of the other colour. Transitions must be added in increasing order.
+   *
+   * @param x first pixel of the new run
+   */
+  public void addTransition(int x) {
+    if (runCount + 1 >= starts.length) {
+      starts = Arrays.copyOf(starts, starts.length * 2);
+    }
+    starts[runCount++] = x;
+    starts[runCount] = size;
+  }
+
+  /**
+   * Fill from a row of bits
+   *
+   * @param row row to copy
+   * @return this, for chaining
+   */
+  public RunLengthRow set(BitArray row) {
+    int width = row.getSize();
+    reset(width, width > 0 && row.get(0));
+    for (int x = row.getNextTransition(0); x < width; x = row.getNextTransition(x)) {
+      addTransition(x);
+    }
+    return this;
+  }
+
+  /**
+   * Mirror this row left to right, as {@link BitArray#reverse()} does, without changing this one.
+   *
+   * @param into row to write the result to, or null to allocate one. Must not be this row.
+   * @return the reversed row
+   */
+  public RunLengthRow reverse(RunLengthRow into) {
+    if (into == null) {
+      into = new RunLengthRow();
+    }
+    into.reset(size, runCount > 0 && isBlack(runCount - 1));
+    for (int run = runCount - 1; run > 0; run--) {
+      into.addTransition(size - starts[run]);
+    }
+    return into;
+  }
+
+  /**
+   * Write the row out as bits
+   *
+   * @param row An optional caller-allocated BitArray, will be allocated if null or too small
+   * @return The resulting BitArray - this reference should always be used even when passing
+   *         your own row
+   */
+  public BitArray toBitArray(BitArray row) {
+    if (row == null || row.getSize() != size) {
+      row = new BitArray(size);
+    } else {
+      row.clear();
+    }
+    for (int run = firstBlack ? 0 : 1; run < runCount; run += 2) {
+      row.setRange(starts[run], starts[run + 1]);
+    }
+    return row;
+  }
+
+  /**
+   * @return width of the row in pixels
+   */
+  public int getSize() {
+    return size;
+  }
+
+  /**
+   * @return number of runs in the row. Runs alternate in colour.
+   */
+  public int getRunCount() {
+    return runCount;
+  }
+
+  /**
+   * @param run index of a run
+   * @return first pixel of the run
+   */
+  public int getRunStart(int run) {
+    return starts[run];
+  }
+
+  /**
+   * @param run index of a run
+   * @return first pixel after the run, or the row size for the last run
+   */
+  public int getRunEnd(int run) {
+    return starts[run + 1];
+  }
+
+  /**
+   * @param run index of a run
+   * @return width of the run in pixels
+   */
+  public int getRunWidth(int run) {
+    return starts[run + 1] - starts[run];
+  }
+
+  /**
+   * @param run index of a run
+   * @return true iff the run is black
+   */
+  public boolean isBlack(int run) {
+    return ((run & 1) == 0) == firstBlack;
+  }
+
+  /**
+   * @param i pixel to look up, which must be in [0, size)
+   * @return index of the run containing the pixel
+   */
+  public int getRun(int i) {
+    // Most lookups are for the same run as last time, or the next one along
+    int run = lastRun;
+    if (i >= starts[run]) {
+      if (i < starts[run + 1]) {
+        return run;
+      }
+      if (run + 2 <= runCount && i < starts[run + 2]) {
+        lastRun = run + 1;
+        return run + 1;
+      }
+    }
+    run = Arrays.binarySearch(starts, 0, runCount, i);
+    if (run < 0) {
+      run = -run - 2; // the run before the insertion point
+    }
+    lastRun = run;
+    return run;
+  }
+
+  /**
+   * @param i pixel to get
+   * @return true iff pixel i is black
+   */
+  public boolean get(int i) {
+    return isBlack(getRun(i));
+  }
+
+  /**
+   * @param from first pixel to check
+   * @return index of first black pixel, starting from the given index, or size if there are none
+   * @see BitArray#getNextSet(int)
+   */
+  public int getNextSet(int from) {
+    if (from >= size) {
+      return size;
+    }
+    int run = getRun(from);
+    return isBlack(run) ? from : starts[run + 1];
+  }
+
+  /**
+   * @param from first pixel to check
+   * @return index of first white pixel, starting from the given index, or size if there are none
+   * @see BitArray#getNextUnset(int)
+   */
+  public int getNextUnset(int from) {
+    if (from >= size) {
+      return size;
+    }
+    int run = getRun(from);
+    return isBlack(run) ? starts[run + 1] : from;
+  }
+
+  /**
+   * Check if a range of pixels is all black, or all white.
+   *
+   * @param start start of range, inclusive.
+   * @param end end of range, exclusive
+   * @param value if true, checks that pixels in range are black, otherwise checks that they are white
+   * @return true iff all pixels in range are the colour given
+   * @throws IllegalArgumentException if end is less than start or the range is not contained in the row
+   * @see BitArray#isRange(int, int, boolean)
+   */
+  public boolean isRange(int start, int end, boolean value) {
+    if (end < start || start < 0 || end > size) {
+      throw new IllegalArgumentException();
+    }
+    if (end == start) {
+      return true; // empty range matches
+    }
+    int run = getRun(start);
+    return isBlack(run) == value && end <= starts[run + 1];
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder result = new StringBuilder(size + runCount);
+    for (int run = 0; run < runCount; run++) {
+      char c = isBlack(run) ? 'X' : '.';
+      for (int i = starts[run]; i < starts[run + 1]; i++) {
+        result.append(c);
+      }
+    }
+    return result.toString();
+  }
+
+}
@@ -306,11 +306,7 @@ public final class WhiteRectangleDetector {
   private boolean containsBlackPoint(int a, int b, int fixed, boolean horizontal) {
 
     if (horizontal) {
-      for (int x = a; x <= b; x++) {
-        if (image.get(x, fixed)) {
-          return true;
-        }
-      }
+      return !image.isRowRange(fixed, a, b + 1, false);
     } else {
       for (int y = a; y <= b; y++) {
         if (image.get(fixed, y)) {
@@ -233,29 +233,11 @@ public final class CodaBarReader extends OneDReader {
     if (i >= end) {
       throw NotFoundException.getNotFoundInstance();
     }
-    boolean isWhite = true;
-    int count = 0;
-    while (i < end) {
-      if (row.get(i) != isWhite) {
-        count++;
-      } else {
-        counterAppend(count);
-        count = 1;
-        isWhite = !isWhite;
-      }
-      i++;
-    }
-    counterAppend(count);
-  }
-
-  private void counterAppend(int e) {
-    counters[counterLength] = e;
-    counterLength++;
-    if (counterLength >= counters.length) {
-      int[] temp = new int[counterLength * 2];
-      System.arraycopy(counters, 0, temp, 0, counterLength);
-      counters = temp;
+    // There can't be more runs than pixels. Leave a zero counter after the last run.
+    if (counters.length <= end - i) {
+      counters = new int[end - i + 1];
     }
+    counterLength = row.getRuns(i, end, counters);
   }
 
   private int findStartPattern() throws NotFoundException {
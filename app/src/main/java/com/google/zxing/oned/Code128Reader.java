@@ -25,6 +25,7 @@ import com.google.zxing.Result;
 import com.google.zxing.ResultMetadataType;
 import com.google.zxing.ResultPoint;
 import com.google.zxing.common.BitArray;
+import com.google.zxing.common.RunLengthRow;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -167,52 +168,54 @@ public final class Code128Reader extends OneDReader {
   private static final int CODE_START_C = 105;
   private static final int CODE_STOP = 106;
 
-  private static int[] findStartPattern(BitArray row) throws NotFoundException {
-    int width = row.getSize();
-    int rowOffset = row.getNextSet(0);
+  private final RunLengthRow runs = new RunLengthRow();
+
+  private static int[] findStartPattern(RunLengthRow row) throws NotFoundException {
+    int runCount = row.getRunCount();
+    int run = runCount > 0 && row.isBlack(0) ? 0 : 1; // first black run
+    if (run >= runCount) {
+      throw NotFoundException.getNotFoundInstance();
+    }
 
     int counterPosition = 0;
     int[] counters = new int[6];
-    int patternStart = rowOffset;
-    boolean isWhite = false;
     int patternLength = counters.length;
-
-    for (int i = rowOffset; i < width; i++) {
-      if (row.get(i) != isWhite) {
-        counters[counterPosition]++;
-      } else {
-        if (counterPosition == patternLength - 1) {
-          float bestVariance = MAX_AVG_VARIANCE;
-          int bestMatch = -1;
-          for (int startCode = CODE_START_A; startCode <= CODE_START_C; startCode++) {
-            float variance = patternMatchVariance(counters, CODE_PATTERNS[startCode],
-                MAX_INDIVIDUAL_VARIANCE);
-            if (variance < bestVariance) {
-              bestVariance = variance;
-              bestMatch = startCode;
-            }
-          }
-          // Look for whitespace before start pattern, >= 50% of width of start pattern
-          if (bestMatch >= 0 &&
-              row.isRange(Math.max(0, patternStart - (i - patternStart) / 2), patternStart, false)) {
-            return new int[]{patternStart, i, bestMatch};
+    int patternStart = row.getRunStart(run);
+    counters[0] = row.getRunWidth(run);
+
+    // each run after the first is one step of the search
+    for (run++; run < runCount; run++) {
+      int i = row.getRunStart(run);
+      if (counterPosition == patternLength - 1) {
+        float bestVariance = MAX_AVG_VARIANCE;
+        int bestMatch = -1;
+        for (int startCode = CODE_START_A; startCode <= CODE_START_C; startCode++) {
+          float variance = patternMatchVariance(counters, CODE_PATTERNS[startCode],
+              MAX_INDIVIDUAL_VARIANCE);
+          if (variance < bestVariance) {
+            bestVariance = variance;
+            bestMatch = startCode;
           }
-          patternStart += counters[0] + counters[1];
-          System.arraycopy(counters, 2, counters, 0, counterPosition - 1);
-          counters[counterPosition - 1] = 0;
-          counters[counterPosition] = 0;
-          counterPosition--;
-        } else {
-          counterPosition++;
         }
-        counters[counterPosition] = 1;
-        isWhite = !isWhite;
+        // Look for whitespace before start pattern, >= 50% of width of start pattern
+        if (bestMatch >= 0 &&
+            row.isRange(Math.max(0, patternStart - (i - patternStart) / 2), patternStart, false)) {
+          return new int[]{patternStart, i, bestMatch};
+        }
+        patternStart += counters[0] + counters[1];
+        System.arraycopy(counters, 2, counters, 0, counterPosition - 1);
+        counters[counterPosition - 1] = 0;
+        counters[counterPosition] = 0;
+        counterPosition--;
+      } else {
+        counterPosition++;
       }
+      counters[counterPosition] = row.getRunWidth(run);
     }
     throw NotFoundException.getNotFoundInstance();
   }
 
-  private static int decodeCode(BitArray row, int[] counters, int rowOffset)
+  private static int decodeCode(RunLengthRow row, int[] counters, int rowOffset)
       throws NotFoundException {
     recordPattern(row, rowOffset, counters);
     float bestVariance = MAX_AVG_VARIANCE; // worst variance we'll accept
@@ -236,6 +239,12 @@ public final class Code128Reader extends OneDReader {
   @Override
   public Result decodeRow(int rowNumber, BitArray row, Map<DecodeHintType,?> hints)
       throws NotFoundException, FormatException, ChecksumException {
+    return decodeRuns(rowNumber, runs.set(row), hints);
+  }
+
+  @Override
+  public Result decodeRuns(int rowNumber, RunLengthRow row, Map<DecodeHintType,?> hints)
+      throws NotFoundException, FormatException, ChecksumException {
 
     boolean convertFNC1 = hints != null && hints.containsKey(DecodeHintType.ASSUME_GS1);
 
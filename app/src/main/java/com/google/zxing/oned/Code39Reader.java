@@ -25,6 +25,7 @@ import com.google.zxing.Result;
 import com.google.zxing.ResultMetadataType;
 import com.google.zxing.ResultPoint;
 import com.google.zxing.common.BitArray;
+import com.google.zxing.common.RunLengthRow;
 
 import java.util.Arrays;
 import java.util.Map;
@@ -58,6 +59,7 @@ public final class Code39Reader extends OneDReader {
   private final boolean extendedMode;
   private final StringBuilder decodeRowResult;
   private final int[] counters;
+  private final RunLengthRow runs = new RunLengthRow();
 
   /**
    * Creates a reader that assumes all encoded data is data, and does not treat the final
@@ -98,6 +100,12 @@ public final class Code39Reader extends OneDReader {
   @Override
   public Result decodeRow(int rowNumber, BitArray row, Map<DecodeHintType,?> hints)
       throws NotFoundException, ChecksumException, FormatException {
+    return decodeRuns(rowNumber, runs.set(row), hints);
+  }
+
+  @Override
+  public Result decodeRuns(int rowNumber, RunLengthRow row, Map<DecodeHintType,?> hints)
+      throws NotFoundException, ChecksumException, FormatException {
 
     int[] theCounters = counters;
     Arrays.fill(theCounters, 0);
@@ -178,36 +186,36 @@ public final class Code39Reader extends OneDReader {
     return resultObject;
   }
 
-  private static int[] findAsteriskPattern(BitArray row, int[] counters) throws NotFoundException {
-    int width = row.getSize();
-    int rowOffset = row.getNextSet(0);
+  private static int[] findAsteriskPattern(RunLengthRow row, int[] counters) throws NotFoundException {
+    int runCount = row.getRunCount();
+    int run = runCount > 0 && row.isBlack(0) ? 0 : 1; // first black run
+    if (run >= runCount) {
+      throw NotFoundException.getNotFoundInstance();
+    }
 
     int counterPosition = 0;
-    int patternStart = rowOffset;
-    boolean isWhite = false;
+    int patternStart = row.getRunStart(run);
     int patternLength = counters.length;
+    counters[0] = row.getRunWidth(run);
 
-    for (int i = rowOffset; i < width; i++) {
-      if (row.get(i) != isWhite) {
-        counters[counterPosition]++;
-      } else {
-        if (counterPosition == patternLength - 1) {
-          // Look for whitespace before start pattern, >= 50% of width of start pattern
-          if (toNarrowWidePattern(counters) == ASTERISK_ENCODING &&
-              row.isRange(Math.max(0, patternStart - ((i - patternStart) / 2)), patternStart, false)) {
-            return new int[]{patternStart, i};
-          }
-          patternStart += counters[0] + counters[1];
-          System.arraycopy(counters, 2, counters, 0, counterPosition - 1);
-          counters[counterPosition - 1] = 0;
-          counters[counterPosition] = 0;
-          counterPosition--;
-        } else {
-          counterPosition++;
+    // each run after the first is one step of the search
+    for (run++; run < runCount; run++) {
+      int i = row.getRunStart(run);
+      if (counterPosition == patternLength - 1) {
+        // Look for whitespace before start pattern, >= 50% of width of start pattern
+        if (toNarrowWidePattern(counters) == ASTERISK_ENCODING &&
+            row.isRange(Math.max(0, patternStart - ((i - patternStart) / 2)), patternStart, false)) {
+          return new int[]{patternStart, i};
         }
-        counters[counterPosition] = 1;
-        isWhite = !isWhite;
+        patternStart += counters[0] + counters[1];
+        System.arraycopy(counters, 2, counters, 0, counterPosition - 1);
+        counters[counterPosition - 1] = 0;
+        counters[counterPosition] = 0;
+        counterPosition--;
+      } else {
+        counterPosition++;
       }
+      counters[counterPosition] = row.getRunWidth(run);
     }
     throw NotFoundException.getNotFoundInstance();
   }
@@ -142,9 +142,13 @@ public final class Code93Reader extends OneDReader {
     int patternLength = theCounters.length;
 
     int counterPosition = 0;
-    for (int i = rowOffset; i < width; i++) {
+    int i = rowOffset;
+    while (i < width) {
       if (row.get(i) != isWhite) {
-        theCounters[counterPosition]++;
+        // count the rest of the run at once
+        int next = row.getNextTransition(i);
+        theCounters[counterPosition] += next - i;
+        i = next;
       } else {
         if (counterPosition == patternLength - 1) {
           if (toPattern(theCounters) == ASTERISK_ENCODING) {
@@ -160,6 +164,7 @@ public final class Code93Reader extends OneDReader {
         }
         theCounters[counterPosition] = 1;
         isWhite = !isWhite;
+        i++;
       }
     }
     throw NotFoundException.getNotFoundInstance();
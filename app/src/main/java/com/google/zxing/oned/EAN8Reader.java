@@ -18,7 +18,7 @@ package com.google.zxing.oned;
 
 import com.google.zxing.BarcodeFormat;
 import com.google.zxing.NotFoundException;
-import com.google.zxing.common.BitArray;
+import com.google.zxing.common.RunLengthRow;
 
 /**
  * <p>Implements decoding of the EAN-8 format.</p>
@@ -34,7 +34,7 @@ public final class EAN8Reader extends UPCEANReader {
   }
 
   @Override
-  protected int decodeMiddle(BitArray row,
+  protected int decodeMiddle(RunLengthRow row,
                              int[] startRange,
                              StringBuilder result) throws NotFoundException {
     int[] counters = decodeMiddleCounters;
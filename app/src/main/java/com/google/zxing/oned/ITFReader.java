@@ -24,6 +24,7 @@ import com.google.zxing.Result;
 import com.google.zxing.ResultMetadataType;
 import com.google.zxing.ResultPoint;
 import com.google.zxing.common.BitArray;
+import com.google.zxing.common.RunLengthRow;
 
 import java.util.Map;
 
@@ -58,6 +59,9 @@ public final class ITFReader extends OneDReader {
   // Stores the actual narrow line width of the image being decoded.
   private int narrowLineWidth = -1;
 
+  private final RunLengthRow runs = new RunLengthRow();
+  private final RunLengthRow reversed = new RunLengthRow(); // for finding the end pattern
+
   /**
    * Start/end guard pattern.
    *
@@ -101,6 +105,12 @@ public final class ITFReader extends OneDReader {
   @Override
   public Result decodeRow(int rowNumber, BitArray row, Map<DecodeHintType,?> hints)
       throws FormatException, NotFoundException {
+    return decodeRuns(rowNumber, runs.set(row), hints);
+  }
+
+  @Override
+  public Result decodeRuns(int rowNumber, RunLengthRow row, Map<DecodeHintType,?> hints)
+      throws FormatException, NotFoundException {
 
     // Find out where the Middle section (payload) starts & ends
     int[] startRange = decodeStart(row);
@@ -156,7 +166,7 @@ public final class ITFReader extends OneDReader {
    * @param resultString {@link StringBuilder} to append decoded chars to
    * @throws NotFoundException if decoding could not complete successfully
    */
-  private static void decodeMiddle(BitArray row,
+  private static void decodeMiddle(RunLengthRow row,
                                    int payloadStart,
                                    int payloadEnd,
                                    StringBuilder resultString) throws NotFoundException {
@@ -199,7 +209,7 @@ public final class ITFReader extends OneDReader {
    * @return Array, containing index of start of 'start block' and end of
    *         'start block'
    */
-  private int[] decodeStart(BitArray row) throws NotFoundException {
+  private int[] decodeStart(RunLengthRow row) throws NotFoundException {
     int endStart = skipWhiteSpace(row);
     int[] startPattern = findGuardPattern(row, endStart, START_PATTERN);
 
@@ -224,24 +234,18 @@ public final class ITFReader extends OneDReader {
    *
    * ref: http://www.barcode-1.net/i25code.html
    *
-   * @param row bit array representing the scanned barcode.
+   * @param row runs representing the scanned barcode.
    * @param startPattern index into row of the start or end pattern.
    * @throws NotFoundException if the quiet zone cannot be found
    */
-  private void validateQuietZone(BitArray row, int startPattern) throws NotFoundException {
+  private void validateQuietZone(RunLengthRow row, int startPattern) throws NotFoundException {
 
     int quietCount = this.narrowLineWidth * 10;  // expect to find this many pixels of quiet zone
 
     // if there are not so many pixel at all let's try as many as possible
     quietCount = Math.min(quietCount, startPattern);
 
-    for (int i = startPattern - 1; quietCount > 0 && i >= 0; i--) {
-      if (row.get(i)) {
-        break;
-      }
-      quietCount--;
-    }
-    if (quietCount != 0) {
+    if (!row.isRange(startPattern - quietCount, startPattern, false)) {
       // Unable to find the necessary number of quiet zone pixels.
       throw NotFoundException.getNotFoundInstance();
     }
@@ -254,7 +258,7 @@ public final class ITFReader extends OneDReader {
    * @return index of the first black line.
    * @throws NotFoundException Throws exception if no black lines are found in the row
    */
-  private static int skipWhiteSpace(BitArray row) throws NotFoundException {
+  private static int skipWhiteSpace(RunLengthRow row) throws NotFoundException {
     int width = row.getSize();
     int endStart = row.getNextSet(0);
     if (endStart == width) {
@@ -271,37 +275,32 @@ public final class ITFReader extends OneDReader {
    * @return Array, containing index of start of 'end block' and end of 'end
    *         block'
    */
-  private int[] decodeEnd(BitArray row) throws NotFoundException {
+  private int[] decodeEnd(RunLengthRow row) throws NotFoundException {
 
-    // For convenience, reverse the row and then
-    // search from 'the start' for the end block
-    row.reverse();
+    // For convenience, take a reversed copy of the row (the row may be shared,
+    // so is not reversed in place) and then search from 'the start' for the end block
+    row = row.reverse(reversed);
+    int endStart = skipWhiteSpace(row);
+    int[] endPattern;
     try {
-      int endStart = skipWhiteSpace(row);
-      int[] endPattern;
-      try {
-        endPattern = findGuardPattern(row, endStart, END_PATTERN_REVERSED[0]);
-      } catch (NotFoundException nfe) {
-        endPattern = findGuardPattern(row, endStart, END_PATTERN_REVERSED[1]);
-      }
-
-      // The start & end patterns must be pre/post fixed by a quiet zone. This
-      // zone must be at least 10 times the width of a narrow line.
-      // ref: http://www.barcode-1.net/i25code.html
-      validateQuietZone(row, endPattern[0]);
-
-      // Now recalculate the indices of where the 'endblock' starts & stops to
-      // accommodate
-      // the reversed nature of the search
-      int temp = endPattern[0];
-      endPattern[0] = row.getSize() - endPattern[1];
-      endPattern[1] = row.getSize() - temp;
-
-      return endPattern;
-    } finally {
-      // Put the row back the right way.
-      row.reverse();
+      endPattern = findGuardPattern(row, endStart, END_PATTERN_REVERSED[0]);
+    } catch (NotFoundException nfe) {
+      endPattern = findGuardPattern(row, endStart, END_PATTERN_REVERSED[1]);
     }
+
+    // The start & end patterns must be pre/post fixed by a quiet zone. This
+    // zone must be at least 10 times the width of a narrow line.
+    // ref: http://www.barcode-1.net/i25code.html
+    validateQuietZone(row, endPattern[0]);
+
+    // Now recalculate the indices of where the 'endblock' starts & stops to
+    // accommodate
+    // the reversed nature of the search
+    int temp = endPattern[0];
+    endPattern[0] = row.getSize() - endPattern[1];
+    endPattern[1] = row.getSize() - temp;
+
+    return endPattern;
   }
 
   /**
@@ -313,35 +312,34 @@ public final class ITFReader extends OneDReader {
    *         ints
    * @throws NotFoundException if pattern is not found
    */
-  private static int[] findGuardPattern(BitArray row,
+  private static int[] findGuardPattern(RunLengthRow row,
                                         int rowOffset,
                                         int[] pattern) throws NotFoundException {
     int patternLength = pattern.length;
     int[] counters = new int[patternLength];
-    int width = row.getSize();
-    boolean isWhite = false;
+    int runCount = row.getRunCount();
 
     int counterPosition = 0;
     int patternStart = rowOffset;
-    for (int x = rowOffset; x < width; x++) {
-      if (row.get(x) != isWhite) {
-        counters[counterPosition]++;
-      } else {
-        if (counterPosition == patternLength - 1) {
-          if (patternMatchVariance(counters, pattern, MAX_INDIVIDUAL_VARIANCE) < MAX_AVG_VARIANCE) {
-            return new int[]{patternStart, x};
-          }
-          patternStart += counters[0] + counters[1];
-          System.arraycopy(counters, 2, counters, 0, counterPosition - 1);
-          counters[counterPosition - 1] = 0;
-          counters[counterPosition] = 0;
-          counterPosition--;
-        } else {
-          counterPosition++;
+    int run = row.getRun(rowOffset); // a black run, found by skipWhiteSpace()
+    counters[0] = row.getRunEnd(run) - rowOffset;
+
+    // each run after the first is one step of the search
+    for (run++; run < runCount; run++) {
+      int x = row.getRunStart(run);
+      if (counterPosition == patternLength - 1) {
+        if (patternMatchVariance(counters, pattern, MAX_INDIVIDUAL_VARIANCE) < MAX_AVG_VARIANCE) {
+          return new int[]{patternStart, x};
         }
-        counters[counterPosition] = 1;
-        isWhite = !isWhite;
+        patternStart += counters[0] + counters[1];
+        System.arraycopy(counters, 2, counters, 0, counterPosition - 1);
+        counters[counterPosition - 1] = 0;
+        counters[counterPosition] = 0;
+        counterPosition--;
+      } else {
+        counterPosition++;
       }
+      counters[counterPosition] = row.getRunWidth(run);
     }
     throw NotFoundException.getNotFoundInstance();
   }
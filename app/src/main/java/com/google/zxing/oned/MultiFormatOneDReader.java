@@ -23,6 +23,7 @@ import com.google.zxing.Reader;
 import com.google.zxing.ReaderException;
 import com.google.zxing.Result;
 import com.google.zxing.common.BitArray;
+import com.google.zxing.common.RunLengthRow;
 import com.google.zxing.oned.rss.RSS14Reader;
 import com.google.zxing.oned.rss.expanded.RSSExpandedReader;
 
@@ -39,6 +40,7 @@ public final class MultiFormatOneDReader extends OneDReader {
   private static final OneDReader[] EMPTY_ONED_ARRAY = new OneDReader[0];
 
   private final OneDReader[] readers;
+  private final RunLengthRow runs = new RunLengthRow();
 
   public MultiFormatOneDReader(Map<DecodeHintType,?> hints) {
     @SuppressWarnings("unchecked")
@@ -93,9 +95,17 @@ public final class MultiFormatOneDReader extends OneDReader {
   public Result decodeRow(int rowNumber,
                           BitArray row,
                           Map<DecodeHintType,?> hints) throws NotFoundException {
+    return decodeRuns(rowNumber, runs.set(row), hints);
+  }
+
+  @Override
+  public Result decodeRuns(int rowNumber,
+                           RunLengthRow row,
+                           Map<DecodeHintType,?> hints) throws NotFoundException {
+    // Every reader works from the same runs. Those that still match on bits convert them back.
     for (OneDReader reader : readers) {
       try {
-        return reader.decodeRow(rowNumber, row, hints);
+        return reader.decodeRuns(rowNumber, row, hints);
       } catch (ReaderException re) {
         // continue
       }
@@ -23,6 +23,7 @@ import com.google.zxing.Reader;
 import com.google.zxing.ReaderException;
 import com.google.zxing.Result;
 import com.google.zxing.common.BitArray;
+import com.google.zxing.common.RunLengthRow;
 
 import java.util.ArrayList;
 import java.util.Collection;
@@ -40,6 +41,7 @@ public final class MultiFormatUPCEANReader extends OneDReader {
   private static final UPCEANReader[] EMPTY_READER_ARRAY = new UPCEANReader[0];
 
   private final UPCEANReader[] readers;
+  private final RunLengthRow runs = new RunLengthRow();
 
   public MultiFormatUPCEANReader(Map<DecodeHintType,?> hints) {
     @SuppressWarnings("unchecked")
@@ -72,11 +74,18 @@ public final class MultiFormatUPCEANReader extends OneDReader {
   public Result decodeRow(int rowNumber,
                           BitArray row,
                           Map<DecodeHintType,?> hints) throws NotFoundException {
+    return decodeRuns(rowNumber, runs.set(row), hints);
+  }
+
+  @Override
+  public Result decodeRuns(int rowNumber,
+                           RunLengthRow row,
+                           Map<DecodeHintType,?> hints) throws NotFoundException {
     // Compute this location once and reuse it on multiple implementations
     int[] startGuardPattern = UPCEANReader.findStartGuardPattern(row);
     for (UPCEANReader reader : readers) {
       try {
-        Result result = reader.decodeRow(rowNumber, row, startGuardPattern, hints);
+        Result result = reader.decodeRuns(rowNumber, row, startGuardPattern, hints);
         // Special case: a 12-digit code encoded in UPC-A is identical to a "0"
         // followed by those 12 digits encoded as EAN-13. Each will recognize such a code,
         // UPC-A as a 12-digit string and EAN-13 as a 13-digit string starting with "0".
@@ -27,6 +27,7 @@ import com.google.zxing.Result;
 import com.google.zxing.ResultMetadataType;
 import com.google.zxing.ResultPoint;
 import com.google.zxing.common.BitArray;
+import com.google.zxing.common.RunLengthRow;
 
 import java.util.Arrays;
 import java.util.EnumMap;
@@ -41,6 +42,8 @@ import java.util.Map;
  */
 public abstract class OneDReader implements Reader {
 
+  private BitArray bits; // for readers that still work on bits, see decodeRuns()
+
   @Override
   public Result decode(BinaryBitmap image) throws NotFoundException, FormatException {
     return decode(image, null);
@@ -104,7 +107,8 @@ public abstract class OneDReader implements Reader {
                           Map<DecodeHintType,?> hints) throws NotFoundException {
     int width = image.getWidth();
     int height = image.getHeight();
-    BitArray row = new BitArray(width);
+    RunLengthRow row = new RunLengthRow();
+    RunLengthRow reversed = new RunLengthRow();
 
     boolean tryHarder = hints != null && hints.containsKey(DecodeHintType.TRY_HARDER);
     int rowStep = Math.max(1, height >> (tryHarder ? 8 : 5));
@@ -129,16 +133,16 @@ public abstract class OneDReader implements Reader {
 
       // Estimate black point for this row and load it:
       try {
-        row = image.getBlackRow(rowNumber, row);
+        row = image.getBlackRuns(rowNumber, row);
       } catch (NotFoundException ignored) {
         continue;
       }
 
-      // While we have the image data in a BitArray, it's fairly cheap to reverse it in place to
+      // While we have the image data as runs, it's cheap to reverse it (one step per run) to
       // handle decoding upside down barcodes.
       for (int attempt = 0; attempt < 2; attempt++) {
         if (attempt == 1) { // trying again?
-          row.reverse(); // reverse the row and continue
+          row.reverse(reversed); // reverse the row and continue
           // This means we will only ever draw result points *once* in the life of this method
           // since we want to avoid drawing the wrong points after flipping the row, and,
           // don't want to clutter with noise from every single row scan -- just the scans
@@ -152,7 +156,7 @@ public abstract class OneDReader implements Reader {
         }
         try {
           // Look for a barcode
-          Result result = decodeRow(rowNumber, row, hints);
+          Result result = decodeRuns(rowNumber, attempt == 0 ? row : reversed, hints);
           // We found our barcode
           if (attempt == 1) {
             // But it was upside down, so note that
@@ -196,21 +200,16 @@ public abstract class OneDReader implements Reader {
     if (start >= end) {
       throw NotFoundException.getNotFoundInstance();
     }
-    boolean isWhite = !row.get(start);
     int counterPosition = 0;
     int i = start;
     while (i < end) {
-      if (row.get(i) != isWhite) {
-        counters[counterPosition]++;
-      } else {
-        if (++counterPosition == numCounters) {
-          break;
-        } else {
-          counters[counterPosition] = 1;
-          isWhite = !isWhite;
-        }
+      // count a whole run at once
+      int next = row.getNextTransition(i);
+      counters[counterPosition] = next - i;
+      i = next;
+      if (i < end && ++counterPosition == numCounters) {
+        break;
       }
-      i++;
     }
     // If we read fully the last section of pixels and filled up our counters -- or filled
     // the last counter but ran off the side of the image, OK. Otherwise, a problem.
@@ -219,20 +218,43 @@ public abstract class OneDReader implements Reader {
     }
   }
 
+  /**
+   * As {@link #recordPattern(BitArray, int, int[])}, but reading whole runs from a row of runs.
+   *
+   * @param row row to count from
+   * @param start offset into row to start at
+   * @param counters array into which to record counts
+   * @throws NotFoundException if counters cannot be filled entirely from row before running out
+   *  of pixels
+   */
+  protected static void recordPattern(RunLengthRow row,
+                                      int start,
+                                      int[] counters) throws NotFoundException {
+    int numCounters = counters.length;
+    int runCount = row.getRunCount();
+    if (start >= row.getSize()) {
+      throw NotFoundException.getNotFoundInstance();
+    }
+    int run = row.getRun(start);
+    counters[0] = row.getRunEnd(run) - start;
+    for (int counterPosition = 1; counterPosition < numCounters; counterPosition++) {
+      if (++run == runCount) {
+        // ran off the side of the image before filling the counters
+        throw NotFoundException.getNotFoundInstance();
+      }
+      counters[counterPosition] = row.getRunWidth(run);
+    }
+  }
+
   protected static void recordPatternInReverse(BitArray row, int start, int[] counters)
       throws NotFoundException {
-    // This could be more efficient I guess
-    int numTransitionsLeft = counters.length;
-    boolean last = row.get(start);
-    while (start > 0 && numTransitionsLeft >= 0) {
-      if (row.get(--start) != last) {
-        numTransitionsLeft--;
-        last = !last;
+    // step back a whole run at a time, to the last pixel before the runs to be counted
+    for (int numTransitionsLeft = counters.length; numTransitionsLeft >= 0; numTransitionsLeft--) {
+      start = row.getPreviousTransition(start);
+      if (start < 0) {
+        throw NotFoundException.getNotFoundInstance();
       }
     }
-    if (numTransitionsLeft >= 0) {
-      throw NotFoundException.getNotFoundInstance();
-    }
     recordPattern(row, start + 1, counters);
   }
 
@@ -293,4 +315,26 @@ public abstract class OneDReader implements Reader {
   public abstract Result decodeRow(int rowNumber, BitArray row, Map<DecodeHintType,?> hints)
       throws NotFoundException, ChecksumException, FormatException;
 
+  /**
+   * <p>Attempts to decode a one-dimensional barcode format given a single row of
+   * an image, as runs of black and white pixels. The row may be reversed, and may be shared
+   * with other readers, so it must not be changed.</p>
+   *
+   * <p>This default writes the row out as bits for {@link #decodeRow(int, BitArray, Map)}.
+   * Readers that match their patterns on whole runs should override it.</p>
+   *
+   * @param rowNumber row number from top of the row
+   * @param row the black/white runs of the row
+   * @param hints decode hints
+   * @return {@link Result} containing encoded string and start/end of barcode
+   * @throws NotFoundException if no potential barcode is found
+   * @throws ChecksumException if a potential barcode is found but does not pass its checksum
+   * @throws FormatException if a potential barcode is found but format is invalid
+   */
+  public Result decodeRuns(int rowNumber, RunLengthRow row, Map<DecodeHintType,?> hints)
+      throws NotFoundException, ChecksumException, FormatException {
+    bits = row.toBitArray(bits);
+    return decodeRow(rowNumber, bits, hints);
+  }
+
 }
@@ -23,7 +23,7 @@ import com.google.zxing.DecodeHintType;
 import com.google.zxing.FormatException;
 import com.google.zxing.NotFoundException;
 import com.google.zxing.Result;
-import com.google.zxing.common.BitArray;
+import com.google.zxing.common.RunLengthRow;
 
 import java.util.Map;
 
@@ -38,18 +38,18 @@ public final class UPCAReader extends UPCEANReader {
   private final UPCEANReader ean13Reader = new EAN13Reader();
 
   @Override
-  public Result decodeRow(int rowNumber,
-                          BitArray row,
-                          int[] startGuardRange,
-                          Map<DecodeHintType,?> hints)
+  public Result decodeRuns(int rowNumber,
+                           RunLengthRow row,
+                           int[] startGuardRange,
+                           Map<DecodeHintType,?> hints)
       throws NotFoundException, FormatException, ChecksumException {
-    return maybeReturnResult(ean13Reader.decodeRow(rowNumber, row, startGuardRange, hints));
+    return maybeReturnResult(ean13Reader.decodeRuns(rowNumber, row, startGuardRange, hints));
   }
 
   @Override
-  public Result decodeRow(int rowNumber, BitArray row, Map<DecodeHintType,?> hints)
+  public Result decodeRuns(int rowNumber, RunLengthRow row, Map<DecodeHintType,?> hints)
       throws NotFoundException, FormatException, ChecksumException {
-    return maybeReturnResult(ean13Reader.decodeRow(rowNumber, row, hints));
+    return maybeReturnResult(ean13Reader.decodeRuns(rowNumber, row, hints));
   }
 
   @Override
@@ -69,7 +69,7 @@ public final class UPCAReader extends UPCEANReader {
   }
 
   @Override
-  protected int decodeMiddle(BitArray row, int[] startRange, StringBuilder resultString)
+  protected int decodeMiddle(RunLengthRow row, int[] startRange, StringBuilder resultString)
       throws NotFoundException {
     return ean13Reader.decodeMiddle(row, startRange, resultString);
   }
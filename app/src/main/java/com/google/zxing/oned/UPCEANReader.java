@@ -27,6 +27,7 @@ import com.google.zxing.ResultMetadataType;
 import com.google.zxing.ResultPoint;
 import com.google.zxing.ResultPointCallback;
 import com.google.zxing.common.BitArray;
+import com.google.zxing.common.RunLengthRow;
 
 import java.util.Arrays;
 import java.util.Map;
@@ -97,6 +98,7 @@ public abstract class UPCEANReader extends OneDReader {
   private final StringBuilder decodeRowStringBuffer;
   private final UPCEANExtensionSupport extensionReader;
   private final EANManufacturerOrgSupport eanManSupport;
+  private final RunLengthRow runs = new RunLengthRow();
 
   protected UPCEANReader() {
     decodeRowStringBuffer = new StringBuilder(20);
@@ -104,7 +106,7 @@ public abstract class UPCEANReader extends OneDReader {
     eanManSupport = new EANManufacturerOrgSupport();
   }
 
-  static int[] findStartGuardPattern(BitArray row) throws NotFoundException {
+  static int[] findStartGuardPattern(RunLengthRow row) throws NotFoundException {
     boolean foundStart = false;
     int[] startRange = null;
     int nextStart = 0;
@@ -128,7 +130,13 @@ public abstract class UPCEANReader extends OneDReader {
   @Override
   public Result decodeRow(int rowNumber, BitArray row, Map<DecodeHintType,?> hints)
       throws NotFoundException, ChecksumException, FormatException {
-    return decodeRow(rowNumber, row, findStartGuardPattern(row), hints);
+    return decodeRuns(rowNumber, runs.set(row), hints);
+  }
+
+  @Override
+  public Result decodeRuns(int rowNumber, RunLengthRow row, Map<DecodeHintType,?> hints)
+      throws NotFoundException, ChecksumException, FormatException {
+    return decodeRuns(rowNumber, row, findStartGuardPattern(row), hints);
   }
 
   /**
@@ -150,6 +158,26 @@ public abstract class UPCEANReader extends OneDReader {
                           int[] startGuardRange,
                           Map<DecodeHintType,?> hints)
       throws NotFoundException, ChecksumException, FormatException {
+    return decodeRuns(rowNumber, runs.set(row), startGuardRange, hints);
+  }
+
+  /**
+   * <p>Like {@link #decodeRow(int, BitArray, int[], Map)}, but on a row of runs.</p>
+   *
+   * @param rowNumber row index into the image
+   * @param row black/white runs of the row of the barcode image
+   * @param startGuardRange start/end column where the opening start pattern was found
+   * @param hints optional hints that influence decoding
+   * @return {@link Result} encapsulating the result of decoding a barcode in the row
+   * @throws NotFoundException if no potential barcode is found
+   * @throws ChecksumException if a potential barcode is found but does not pass its checksum
+   * @throws FormatException if a potential barcode is found but format is invalid
+   */
+  public Result decodeRuns(int rowNumber,
+                           RunLengthRow row,
+                           int[] startGuardRange,
+                           Map<DecodeHintType,?> hints)
+      throws NotFoundException, ChecksumException, FormatException {
 
     ResultPointCallback resultPointCallback = hints == null ? null :
         (ResultPointCallback) hints.get(DecodeHintType.NEED_RESULT_POINT_CALLBACK);
@@ -296,11 +324,11 @@ public abstract class UPCEANReader extends OneDReader {
     return (1000 - sum) % 10;
   }
 
-  int[] decodeEnd(BitArray row, int endStart) throws NotFoundException {
+  int[] decodeEnd(RunLengthRow row, int endStart) throws NotFoundException {
     return findGuardPattern(row, endStart, false, START_END_PATTERN);
   }
 
-  static int[] findGuardPattern(BitArray row,
+  static int[] findGuardPattern(RunLengthRow row,
                                 int rowOffset,
                                 boolean whiteFirst,
                                 int[] pattern) throws NotFoundException {
@@ -318,36 +346,39 @@ public abstract class UPCEANReader extends OneDReader {
    * @return start/end horizontal offset of guard pattern, as an array of two ints
    * @throws NotFoundException if pattern is not found
    */
-  private static int[] findGuardPattern(BitArray row,
+  private static int[] findGuardPattern(RunLengthRow row,
                                         int rowOffset,
                                         boolean whiteFirst,
                                         int[] pattern,
                                         int[] counters) throws NotFoundException {
     int width = row.getSize();
     rowOffset = whiteFirst ? row.getNextUnset(rowOffset) : row.getNextSet(rowOffset);
+    if (rowOffset >= width) {
+      throw NotFoundException.getNotFoundInstance();
+    }
+    int runCount = row.getRunCount();
     int counterPosition = 0;
     int patternStart = rowOffset;
     int patternLength = pattern.length;
-    boolean isWhite = whiteFirst;
-    for (int x = rowOffset; x < width; x++) {
-      if (row.get(x) != isWhite) {
-        counters[counterPosition]++;
-      } else {
-        if (counterPosition == patternLength - 1) {
-          if (patternMatchVariance(counters, pattern, MAX_INDIVIDUAL_VARIANCE) < MAX_AVG_VARIANCE) {
-            return new int[]{patternStart, x};
-          }
-          patternStart += counters[0] + counters[1];
-          System.arraycopy(counters, 2, counters, 0, counterPosition - 1);
-          counters[counterPosition - 1] = 0;
-          counters[counterPosition] = 0;
-          counterPosition--;
-        } else {
-          counterPosition++;
+    int run = row.getRun(rowOffset);
+    counters[0] = row.getRunEnd(run) - rowOffset;
+
+    // each run after the first is one step of the search
+    for (run++; run < runCount; run++) {
+      int x = row.getRunStart(run);
+      if (counterPosition == patternLength - 1) {
+        if (patternMatchVariance(counters, pattern, MAX_INDIVIDUAL_VARIANCE) < MAX_AVG_VARIANCE) {
+          return new int[]{patternStart, x};
         }
-        counters[counterPosition] = 1;
-        isWhite = !isWhite;
+        patternStart += counters[0] + counters[1];
+        System.arraycopy(counters, 2, counters, 0, counterPosition - 1);
+        counters[counterPosition - 1] = 0;
+        counters[counterPosition] = 0;
+        counterPosition--;
+      } else {
+        counterPosition++;
       }
+      counters[counterPosition] = row.getRunWidth(run);
     }
     throw NotFoundException.getNotFoundInstance();
   }
@@ -364,7 +395,7 @@ public abstract class UPCEANReader extends OneDReader {
    * @return horizontal offset of first pixel beyond the decoded digit
    * @throws NotFoundException if digit cannot be decoded
    */
-  static int decodeDigit(BitArray row, int[] counters, int rowOffset, int[][] patterns)
+  static int decodeDigit(RunLengthRow row, int[] counters, int rowOffset, int[][] patterns)
       throws NotFoundException {
     recordPattern(row, rowOffset, counters);
     float bestVariance = MAX_AVG_VARIANCE; // worst variance we'll accept
@@ -402,7 +433,7 @@ public abstract class UPCEANReader extends OneDReader {
    * @return horizontal offset of first pixel after the "middle" that was decoded
    * @throws NotFoundException if decoding could not complete successfully
    */
-  protected abstract int decodeMiddle(BitArray row,
+  protected abstract int decodeMiddle(RunLengthRow row,
                                       int[] startRange,
                                       StringBuilder resultString) throws NotFoundException;
 
@@ -19,7 +19,7 @@ package com.google.zxing.oned;
 import com.google.zxing.BarcodeFormat;
 import com.google.zxing.FormatException;
 import com.google.zxing.NotFoundException;
-import com.google.zxing.common.BitArray;
+import com.google.zxing.common.RunLengthRow;
 
 /**
  * <p>Implements decoding of the UPC-E format.</p>
@@ -77,7 +77,7 @@ public final class UPCEReader extends UPCEANReader {
   }
 
   @Override
-  protected int decodeMiddle(BitArray row, int[] startRange, StringBuilder result)
+  protected int decodeMiddle(RunLengthRow row, int[] startRange, StringBuilder result)
       throws NotFoundException {
     int[] counters = decodeMiddleCounters;
     counters[0] = 0;
@@ -106,7 +106,7 @@ public final class UPCEReader extends UPCEANReader {
   }
 
   @Override
-  protected int[] decodeEnd(BitArray row, int endStart) throws NotFoundException {
+  protected int[] decodeEnd(RunLengthRow row, int endStart) throws NotFoundException {
     return findGuardPattern(row, endStart, true, MIDDLE_END_PATTERN);
   }
 
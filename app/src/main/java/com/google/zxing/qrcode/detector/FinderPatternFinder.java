@@ -20,6 +20,7 @@ import com.google.zxing.DecodeHintType;
 import com.google.zxing.NotFoundException;
 import com.google.zxing.ResultPoint;
 import com.google.zxing.ResultPointCallback;
+import com.google.zxing.common.BitArray;
 import com.google.zxing.common.BitMatrix;
 
 import java.io.Serializable;
@@ -94,60 +95,60 @@ public class FinderPatternFinder {
 
     boolean done = false;
     int[] stateCount = new int[5];
+    BitArray row = new BitArray(maxJ);
     for (int i = iSkip - 1; i < maxI && !done; i += iSkip) {
       // Get a row of black/white values
+      row = image.getRow(i, row);
       doClearCounts(stateCount);
       int currentState = 0;
       for (int j = 0; j < maxJ; j++) {
-        if (image.get(j, i)) {
-          // Black pixel
-          if ((currentState & 1) == 1) { // Counting white pixels
-            currentState++;
-          }
-          stateCount[currentState]++;
-        } else { // White pixel
-          if ((currentState & 1) == 0) { // Counting black pixels
-            if (currentState == 4) { // A winner?
-              if (foundPatternCross(stateCount)) { // Yes
-                boolean confirmed = handlePossibleCenter(stateCount, i, j);
-                if (confirmed) {
-                  // Start examining every other line. Checking each line turned out to be too
-                  // expensive and didn't improve performance.
-                  iSkip = 2;
-                  if (hasSkipped) {
-                    done = haveMultiplyConfirmedCenters();
-                  } else {
-                    int rowSkip = findRowSkip();
-                    if (rowSkip > stateCount[2]) {
-                      // Skip rows between row of lower confirmed center
-                      // and top of presumed third confirmed center
-                      // but back up a bit to get a full chance of detecting
-                      // it, entire width of center of finder pattern
-
-                      // Skip by rowSkip, but back off by stateCount[2] (size of last center
-                      // of pattern we saw) to be conservative, and also back off by iSkip which
-                      // is about to be re-added
-                      i += rowSkip - stateCount[2] - iSkip;
-                      j = maxJ - 1;
-                    }
-                  }
+        boolean black = row.get(j);
+        if (black == ((currentState & 1) == 0)) {
+          // Still in the run being counted, so count the rest of it at once
+          int next = row.getNextTransition(j);
+          stateCount[currentState] += next - j;
+          j = next - 1;
+        } else if (black) { // Black pixel after a white run
+          stateCount[++currentState]++;
+        } else { // White pixel after a black run
+          if (currentState == 4) { // A winner?
+            if (foundPatternCross(stateCount)) { // Yes
+              boolean confirmed = handlePossibleCenter(stateCount, i, j);
+              if (confirmed) {
+                // Start examining every other line. Checking each line turned out to be too
+                // expensive and didn't improve performance.
+                iSkip = 2;
+                if (hasSkipped) {
+                  done = haveMultiplyConfirmedCenters();
                 } else {
-                  doShiftCounts2(stateCount);
-                  currentState = 3;
-                  continue;
+                  int rowSkip = findRowSkip();
+                  if (rowSkip > stateCount[2]) {
+                    // Skip rows between row of lower confirmed center
+                    // and top of presumed third confirmed center
+                    // but back up a bit to get a full chance of detecting
+                    // it, entire width of center of finder pattern
+
+                    // Skip by rowSkip, but back off by stateCount[2] (size of last center
+                    // of pattern we saw) to be conservative, and also back off by iSkip which
+                    // is about to be re-added
+                    i += rowSkip - stateCount[2] - iSkip;
+                    j = maxJ - 1;
+                  }
                 }
-                // Clear state to start looking again
-                currentState = 0;
-                doClearCounts(stateCount);
-              } else { // No, shift counts back by two
+              } else {
                 doShiftCounts2(stateCount);
                 currentState = 3;
+                continue;
               }
-            } else {
-              stateCount[++currentState]++;
+              // Clear state to start looking again
+              currentState = 0;
+              doClearCounts(stateCount);
+            } else { // No, shift counts back by two
+              doShiftCounts2(stateCount);
+              currentState = 3;
             }
-          } else { // Counting white pixels
-            stateCount[currentState]++;
+          } else {
+            stateCount[++currentState]++;
           }
         }
       }
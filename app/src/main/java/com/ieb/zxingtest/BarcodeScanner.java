@@ -1,24 +1,17 @@
 package com.ieb.zxingtest;
 
-import android.annotation.SuppressLint;
 import android.app.Activity;
-import android.graphics.Bitmap;
+import android.content.Context;
 import android.graphics.Rect;
 import android.util.Log;
 import android.widget.ImageView;
 
-import com.google.zxing.BarcodeFormat;
-import com.google.zxing.Binarizer;
 import com.google.zxing.BinaryBitmap;
-import com.google.zxing.LuminanceSource;
 import com.google.zxing.NotFoundException;
-import com.google.zxing.PlanarYUVLuminanceSource;
-import com.google.zxing.PresetListReader;
 import com.google.zxing.Result;
+import com.google.zxing.ResultPoint;
+import com.google.zxing.qrcode.detector.FinderPattern;
 
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
 import java.util.function.Consumer;
 
 /** @noinspection unused*/
@@ -26,38 +19,74 @@ public class BarcodeScanner {
     private final String TAG = "BarcodeScanner";
     private final Activity act;
 
-    private final CameraFeedController camControl;
-    private final PresetListReader zxingReader;
+    private final FrameSource camControl;
+    private final FrameDecoder decoder;
 
     private Consumer<Result> resultCallback;
     private Consumer<String> errorMessageCallback;
+    private Consumer<ScanAttempt> scanAttemptCallback;
 
     private ImageView previewOutput;
     private ImageView diagnosticOutput;
     private boolean constantDiagnostics = false;
     private boolean showMatchBox;
 
-    private volatile boolean updateInProgress; // try to reduce overlapping scans on slow devices
-
-    // Search range. Expand for slower but more extensive checks
-    private static final int SCALE_MAX = 7; // 128-pixel spans
-    private static final int SCALE_MIN = 4; // 16-pixel spans
-    private static final int EXPOSURE_MAX = 12; // darkest exposure test (we assume codes are more likely to be faded than too dark)
-    private static final int EXPOSURE_MIN = -4; // lightest exposure test
+    // Frames go: frame source thread -> framePool -> decode thread -> UI thread (previews only)
+    private static final int DEFAULT_POOL_DEPTH = 1; // frames waiting to decode. More only adds latency.
+    private final FramePool framePool;
+    private final Object decodeLock = new Object(); // start() and pause() can come from the UI thread or a callback
+    private volatile Thread decodeThread; // the decode loop runs while this is its own thread
+    private Thread lastDecodeThread; // may still be finishing a frame after being stopped from a callback
+    private final PreviewRenderer.Output previewBitmaps;
+    private final PreviewRenderer.Output diagnosticBitmaps;
+    private volatile int previewRate; // if more than zero, previews are drawn on their own thread at up to this rate
+    private volatile PreviewRenderer previewRenderer;
+    private volatile DecodeMetrics metrics; // if not null, stage timings and reader counts are recorded
+
+    private static final String PREFS_NAME = "BarcodeScanner";
+    private static final String PREF_SCHEDULER = "thresholdScheduler";
+
+    // Resolution escalation: switch the frame source to a larger size while codes are seen but too small to read
+    private static final float SMALL_MODULE_SIZE = 2.5f; // QR finder modules smaller than this (in pixels) are hard to read
+    private static final int ESCALATION_FINDERS = 3; // finder patterns seen in a frame to count as a sighting
+    private static final int ESCALATION_HOLD = 30; // frames with no sighting before going back to normal size
+    private volatile boolean resolutionEscalation;
+    private boolean escalated;
+    private int findersSeen;
+    private int smallFindersSeen;
+    private int framesSinceSighting;
 
     public BarcodeScanner(Activity act) {
+        this(act, (pool, update, error) -> new CameraFeedController(act, 1024, 768, 32, 256, pool, update, error));
+    }
+
+    /**
+     * Create a scanner that reads from something other than the camera.
+     * `act` may be null if no preview or diagnostic views are added.
+     */
+    public BarcodeScanner(Activity act, FrameSource.Factory frameSource) {
+        this(act, frameSource, DEFAULT_POOL_DEPTH);
+    }
+
+    /**
+     * Create a scanner that reads from something other than the camera.
+     * `act` may be null if no preview or diagnostic views are added.
+     * `framePoolDepth` is the number of captured frames that can wait to be decoded.
+     * More can smooth out uneven decode times, but adds latency.
+     */
+    public BarcodeScanner(Activity act, FrameSource.Factory frameSource, int framePoolDepth) {
         this.act = act;
+        previewBitmaps = new PreviewRenderer.Output(act);
+        diagnosticBitmaps = new PreviewRenderer.Output(act);
 
-        // Set up ZX-ing reader
-        zxingReader = new PresetListReader();
-        zxingReader.setTryHarder(true);
-        zxingReader.add(BarcodeFormat.QR_CODE);
-        zxingReader.add(BarcodeFormat.CODE_128);
-        zxingReader.add(BarcodeFormat.ITF);
-        zxingReader.add(BarcodeFormat.DATA_MATRIX);
+        // Set up the decoder. Finder patterns it sees are counted for resolution escalation.
+        decoder = new FrameDecoder();
+        decoder.setWarningTrigger(msg -> Log.w(TAG, msg));
+        decoder.setResultPointCallback(this::onPossibleResultPoint);
 
-        // Set up camera-to-bitmap feed
-        camControl = new CameraFeedController(act, 1024, 768, 32, 256, this::updateReading, this::onScannerError);
+        // Set up camera-to-bitmap feed. The source writes straight into pooled frames.
+        framePool = new FramePool(framePoolDepth);
+        camControl = frameSource.create(framePool, this::onFrameCaptured, this::onScannerError);
     }
 
 
@@ -69,12 +98,107 @@ public class BarcodeScanner {
 
     /** Start reading camera and scanning for barcodes */
     public void start() {
+        startDecodeThread();
         camControl.onResume();
     }
 
-    /** Pause reading camera */
+    /** Pause reading camera. This can be called from a scanner callback, to stop after a capture. */
     public void pause() {
         camControl.onPause();
+        stopDecodeThread();
+        saveSchedulerState();
+        decoder.reset();
+    }
+
+    private void startDecodeThread() {
+        synchronized (decodeLock) {
+            if (decodeThread != null) return;
+
+            var rate = previewRate;
+            if (rate > 0 && (previewOutput != null || diagnosticOutput != null)) {
+                previewRenderer = new PreviewRenderer(act, previewOutput, diagnosticOutput, rate);
+                previewRenderer.start();
+            }
+
+            // If the last decode thread was stopped from one of its own callbacks, it may still be
+            // finishing that frame. The new one waits for it, so frames are never decoded on both.
+            var previous = lastDecodeThread;
+            var thread = new Thread(() -> decodeLoop(previous), "BarcodeDecode");
+            decodeThread = thread;
+            lastDecodeThread = thread;
+            thread.start();
+        }
+    }
+
+    private void stopDecodeThread() {
+        Thread thread;
+        PreviewRenderer renderer;
+        synchronized (decodeLock) {
+            thread = decodeThread;
+            if (thread == null) return;
+            decodeThread = null;
+            renderer = previewRenderer;
+            previewRenderer = null;
+        }
+
+        // Called from a callback on the decode thread, which can't wait for itself.
+        // The loop stops once this frame is finished.
+        if (thread != Thread.currentThread()) {
+            thread.interrupt();
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        framePool.drain();
+
+        if (renderer != null) renderer.stop();
+    }
+
+    /**
+     * Capture stage. This runs on the frame source's thread (the camera background thread),
+     * so it only queues the pooled frame for the decode thread.
+     * If the decoder hasn't picked up the previous frame yet, that frame is dropped.
+     */
+    private void onFrameCaptured(ByteImage frame) {
+        if (camControl.isRealTime()) {
+            if (framePool.offer(frame)) Log.i(TAG, "Barcode scanner is running slower than camera");
+        } else {
+            try {
+                framePool.put(frame);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /** Decode stage. Runs on its own thread, taking the latest frame each time, until replaced or stopped */
+    private void decodeLoop(Thread previous) {
+        if (previous != null) {
+            try {
+                previous.join();
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+
+        var self = Thread.currentThread();
+        while (decodeThread == self) {
+            ByteImage frame;
+            try {
+                frame = framePool.take(100);
+            } catch (InterruptedException e) {
+                break;
+            }
+            if (frame == null) continue;
+
+            try {
+                updateReading(frame);
+            } finally {
+                framePool.release(frame);
+            }
+        }
     }
 
     /** (Optional) Add an image view that is updated for each captured frame */
@@ -100,172 +224,314 @@ public class BarcodeScanner {
         constantDiagnostics = setting;
     }
 
-    /** Set callback that is triggered when a barcode is detected */
+    /** Set callback that is triggered when a barcode is detected.
+     * This is called on the decode thread, not the UI thread. */
     public void onCodeFound(Consumer<Result> codeFound) {
         resultCallback = codeFound;
     }
 
-    /** Set a callback that is triggered when a camera fault is raised */
+    /** Set a callback that is triggered when a camera fault is raised.
+     * This is called on the frame source's thread (for the camera, its background thread), not the UI thread. */
     public void onErrorMessage(Consumer<String> onError){
         errorMessageCallback = onError;
     }
 
-    private static boolean invert = false;
-    private static int morphScale = 0;
-    private static int fourierScale = 0;
-    private static int testScale = SCALE_MAX;
-    private static int testExposure = EXPOSURE_MAX;
-    private Bitmap prevLumBitmap = null;
+    /** (Optional) Set a callback that is triggered after every scanned frame, hit or miss,
+     * with the time taken and the threshold settings used. See {@link ReplayStatistics}.
+     * This is called on the decode thread, not the UI thread. */
+    public void onFrameScanned(Consumer<ScanAttempt> onScanned){
+        scanAttemptCallback = onScanned;
+    }
+
     private static int[] lumTemp;
-    private Bitmap threshBitmap = null;
+    private int[] threshTemp;
+
+    public void setFourierScale(int scale) {
+        decoder.setFourierScale(scale);
+    }
+
+    /** Manually set threshold exposure */
+    public void setExposure(int exposure) {
+        decoder.setExposure(exposure);
+    }
+
+    /** Manually set threshold scale */
+    public void setThresholdScale(int scale) {
+        decoder.setThresholdScale(scale);
+    }
+
+    public void setMorphScale(int scale) {
+        decoder.setMorphScale(scale);
+    }
 
-    @SuppressLint("SetTextI18n")
-    private Result tryToFindBarCodeInBitmap(BinaryBitmap binMap) {
-        if (binMap == null) {
-            Log.w(TAG, "Invalid binMap");
-            return null;
+    /**
+     * Set the number of threads used to try many threshold settings on each frame.
+     * Each frame is tried with every scale and exposure in the search range, normal and inverted,
+     * starting with the manually set scale and exposure. The first successful decode stops the rest.
+     * Zero (the default) tries one setting per frame.
+     */
+    public void setParallelSweep(int threads) {
+        decoder.setParallelSweep(threads);
+    }
+
+    /**
+     * If `true`, threshold settings are picked by how often they have been finding codes recently,
+     * instead of using the manual scale and exposure. This works with or without the parallel sweep.
+     * What is learned is kept between app launches.
+     * Default is `false`
+     */
+    public void setAdaptiveScheduling(boolean enabled) {
+        if (!enabled) {
+            saveSchedulerState();
+            decoder.setAdaptiveScheduling(false);
+            return;
         }
+        if (decoder.getScheduler() != null) return;
 
-        try {
-            zxingReader.reset();
-            return zxingReader.decode(binMap);
-        } catch (com.google.zxing.NotFoundException nf) {
-            // No code found. This is fine
-        } catch (Exception e) {
-            // If the capture is blurry or not at a good angle, we probably get a checksum error here.
-            Log.w(TAG, "Could not read bar-code: " + e);
+        decoder.setAdaptiveScheduling(true);
+        var learner = decoder.getScheduler();
+        if (act != null && learner != null) {
+            var prefs = act.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+            learner.loadState(prefs.getString(PREF_SCHEDULER, null));
         }
-        return null;
+    }
+
+    private void saveSchedulerState() {
+        var learner = decoder.getScheduler();
+        if (learner == null || act == null) return;
+
+        act.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
+                .edit()
+                .putString(PREF_SCHEDULER, learner.saveState())
+                .apply();
     }
 
     /**
-     * Continually cycle through the various settings of UnsharpMaskBinarizer
+     * If `true`, each frame is thresholded at every exposure in the search range, normal and
+     * inverted, in one pass that works out the local mean once. Readers try each in turn,
+     * starting with the exposure that would have been picked for this frame, so an exposure
+     * that works is found in one frame instead of several. Misses take longer, as every
+     * output is read. Not used with the parallel sweep, which has its own search.
+     * Default is `false`
      */
-    private Binarizer pickThresholdParameters(LuminanceSource lum) {
-        // Set the parameters beforehand, so the preview is accurate
-        invert = !invert; // Alternate inverted and not
+    public void setExposureBatch(boolean enabled) {
+        decoder.setExposureBatch(enabled);
+    }
 
-        // UMB thresholder
-        return new UnsharpMaskBinarizer(lum, invert, testScale, testExposure, morphScale);
+    /**
+     * If `true`, the 1D readers (Code 128 and ITF) share the work of each scan line, rather than
+     * each going over the whole frame in turn. Frames with no 1D code are quicker to miss,
+     * which is most frames when scanning 2D codes. A frame with codes of both 1D formats may give either.
+     * Default is `false`
+     */
+    public void setSharedOneDRows(boolean enabled) {
+        decoder.setSharedOneDRows(enabled);
     }
 
-    public void setFourierScale(int scale) {
-        fourierScale = scale;
+    /**
+     * Set a local variance formula to alternate with the unsharp mask in the manual threshold cycle.
+     * This thresholds against the mean and standard deviation around each pixel, rather than the
+     * mean and a fixed exposure, which copes better with glare or shadow across part of a code.
+     * Not used by adaptive scheduling, the parallel sweep or exposure batching, which only try
+     * unsharp mask settings. Null (the default) only uses the unsharp mask.
+     */
+    public void setVarianceThreshold(LocalVarianceBinarizer.Method method) {
+        decoder.setVarianceThreshold(method);
     }
 
-    /** Manually set threshold exposure */
-    public void setExposure(int exposure) {
-        testExposure = exposure;
+    /**
+     * If `true`, a frame that misses with its threshold settings is thresholded again by
+     * ZXing's HybridBinarizer, which has no settings to get wrong, and read once more.
+     * This helps while the manual or learned settings are far from what the code needs.
+     * Not used with the parallel sweep, which has its own search.
+     * Default is `false`
+     */
+    public void setHybridFallback(boolean enabled) {
+        decoder.setHybridFallback(enabled);
     }
 
-    /** Manually set threshold scale */
-    public void setThresholdScale(int scale) {
-        testScale = scale;
+    /**
+     * Set the number of frames in a row that can miss around the last detected code
+     * before scanning the whole frame again. After a code is found (or partly found),
+     * following frames only scan a padded region around it, which is much faster.
+     * Zero (the default) always scans the whole frame.
+     */
+    public void setRegionTracking(int missLimit) {
+        decoder.setRegionTracking(missLimit);
     }
 
-    public void setMorphScale(int scale) {
-        morphScale = scale;
+    /**
+     * Set the number of recent frames averaged together before thresholding.
+     * This cuts sensor noise on faint codes, at the cost of some memory and blur if the camera drifts.
+     * If the picture changes too much between frames, the average starts again.
+     * Zero or one (the default) scans each frame on its own.
+     */
+    public void setFrameFusion(int frames) {
+        decoder.setFrameFusion(frames);
     }
 
-    private void onScannerError(String msg) {
-        Log.w(TAG, msg);
-        if (errorMessageCallback != null) errorMessageCallback.accept(msg);
+    /**
+     * If `true`, each frame is given a quick sharpness and contrast score before decoding,
+     * and frames much blurrier than recent ones (like those taken while the camera is
+     * focusing) or with almost no contrast are skipped. Skipped frames are still shown in
+     * the preview, and reported to {@link #onFrameScanned(Consumer)} as rejected.
+     * Default is `false`
+     */
+    public void setQualityGate(boolean enabled) {
+        decoder.setQualityGate(enabled);
     }
 
-    private static int log2(int N) {return (int)(Math.log(N) / Math.log(2));}
-    private static int nextPower2(int v){v--;v |= v >> 1;v |= v >> 2;v |= v >> 4;v |= v >> 8;v |= v >> 16;v++;return v;}
-    private double[] _re = null;
-    private double[] _im = null;
+    /**
+     * Set the most previews drawn each second. If more than zero, the preview and diagnostic
+     * views are drawn on a thread of their own, from greyscale bitmaps, and frames that arrive
+     * faster than this are not shown. Frames that decode are always shown.
+     * Zero (the default) draws every frame on the decode thread, into bitmaps that are not on
+     * screen, which are then shown on the UI thread.
+     * Takes effect when the scanner is next started.
+     */
+    public void setPreviewRate(int framesPerSecond) {
+        previewRate = Math.max(framesPerSecond, 0);
+    }
 
     /**
-     * Try to read a QR code from the current texture
+     * If `true`, the time taken by each stage of scanning and by each reader is recorded,
+     * along with how often each reader succeeds or finds a code it can't read.
+     * Turning this on again starts a fresh set of figures. Default is `false`
      */
-    private void updateReading(ByteImage image) {
-        if (updateInProgress) {
-            Log.i(TAG, "Barcode scanner is running slower than camera");
-            return; // QR scanner is not keeping up with camera preview rate. Not really a problem.
+    public void setMetrics(boolean enabled) {
+        var m = enabled ? new DecodeMetrics() : null;
+        decoder.setMetrics(m);
+        metrics = m;
+    }
+
+    /**
+     * Copy of the timings and counts recorded since metrics were turned on,
+     * including frames lost before they reached the scanner.
+     * Returns null if metrics are off. Can be called from any thread.
+     */
+    public DecodeMetrics.Snapshot getMetrics() {
+        var m = metrics;
+        return m == null ? null : m.snapshot(framePool, camControl);
+    }
+
+    /**
+     * If `true`, frames scanned with the larger threshold scales (6 and 7) are first searched
+     * at half or quarter size. If a code is found there, the region around it is thresholded
+     * and decoded at full size first. If not, or the region doesn't decode, the whole frame is
+     * scanned as normal.
+     * Not used with the parallel sweep, which tries every scale at once.
+     * Default is `false`
+     */
+    public void setPyramidDetection(boolean enabled) {
+        decoder.setPyramidDetection(enabled);
+    }
+
+    /**
+     * If `true`, the camera captures at its normal size until QR finder patterns are seen that
+     * are too small to decode reliably, then switches to a higher resolution until codes
+     * have been out of view for a while. Default is `false`
+     */
+    public void setResolutionEscalation(boolean enabled) {
+        resolutionEscalation = enabled;
+    }
+
+    /** Readers report possible parts of codes here, during decoding */
+    private void onPossibleResultPoint(ResultPoint point) {
+        if (point instanceof FinderPattern) {
+            findersSeen++;
+            if (((FinderPattern) point).getEstimatedModuleSize() < SMALL_MODULE_SIZE) smallFindersSeen++;
         }
-        updateInProgress = true;
+    }
 
-        try {
-            if (fourierScale > 0){
-                lowpassByteImage(image);
-            }
+    /** Called after each frame on the decode thread. Move the frame source up or down in resolution. */
+    private void updateEscalation(boolean found) {
+        var small = !found && smallFindersSeen >= ESCALATION_FINDERS;
+        var sighting = found || findersSeen >= ESCALATION_FINDERS;
+        findersSeen = 0;
+        smallFindersSeen = 0;
 
-            LuminanceSource lum = new PlanarYUVLuminanceSource(
-                    image.image, image.width, image.height,
-                    0, 0, image.width, image.height, false);
+        framesSinceSighting = sighting ? 0 : framesSinceSighting + 1;
 
-            // Rotate around a set of different image transforms.
-            // Hopefully at least one of them will capture correctly.
-            Binarizer thresholder = pickThresholdParameters(lum);
+        var escalate = resolutionEscalation && (escalated ? framesSinceSighting <= ESCALATION_HOLD : small);
+        if (escalate == escalated) return;
 
-            // Convert greyscale to B&W
-            var binMap = new BinaryBitmap(thresholder);
+        escalated = escalate;
+        camControl.setEscalated(escalate);
+    }
 
-            // Scan for codes
-            var result = tryToFindBarCodeInBitmap(binMap);
+    private void onScannerError(String msg) {
+        Log.w(TAG, msg);
+        if (errorMessageCallback != null) errorMessageCallback.accept(msg);
+    }
+
+    /**
+     * Try to read a QR code from the current texture
+     */
+    private void updateReading(ByteImage image) {
+        try {
+            var startTime = System.nanoTime();
+            var stats = metrics;
+
+            var attempt = decoder.decode(image);
+            var mark = System.nanoTime(); // start of the preview stage, for metrics
+            if (attempt.rejected) {
+                // Skipped by the quality gate. Still show it, so the preview keeps moving.
+                var renderer = previewRenderer;
+                if (renderer != null) {
+                    renderer.submit(image, null, false, null, false);
+                    lap(stats, DecodeMetrics.Stage.PREVIEW, mark);
+                } else if (previewOutput != null) {
+                    updateVideoPreview(image.image, null, image.width, image.height);
+                    lap(stats, DecodeMetrics.Stage.PREVIEW, mark);
+                }
+                if (scanAttemptCallback != null) scanAttemptCallback.accept(attempt);
+                if (stats != null) {
+                    stats.countFrame(true);
+                    stats.record(DecodeMetrics.Stage.FRAME, System.nanoTime() - startTime);
+                }
+                return;
+            }
 
-            if (previewOutput != null) updateVideoPreview(image.image, result, image.width, image.height);
+            var result = attempt.result;
+            var binMap = decoder.getLastBitmap();
+            updateEscalation(result != null);
+
+            var drawn = false;
+            var renderer = previewRenderer;
+            if (renderer != null) {
+                // Hand over to the preview thread. Frames are skipped if it's busy or not due.
+                var showThreshold = constantDiagnostics || result != null;
+                var match = showMatchBox && result != null ? resultToRect(result, image.width, image.height) : null;
+                renderer.submit(image, showThreshold ? binMap : null, attempt.invert, match, result != null);
+                drawn = true;
+            } else if (previewOutput != null) {
+                updateVideoPreview(image.image, result, image.width, image.height);
+                drawn = true;
+            }
 
-            if (constantDiagnostics || result != null) {
+            if (renderer == null && (constantDiagnostics || result != null)) {
                 // Show a snapshot of the thresholded image that worked
-                if (diagnosticOutput != null) updateThresholdPreview(binMap, invert);
+                if (diagnosticOutput != null) {
+                    updateThresholdPreview(binMap, attempt.invert);
+                    drawn = true;
+                }
             }
+            if (drawn) lap(stats, DecodeMetrics.Stage.PREVIEW, mark);
 
+            if (scanAttemptCallback != null) scanAttemptCallback.accept(attempt);
             if (result != null && resultCallback != null) resultCallback.accept(result);
+            if (stats != null) {
+                stats.countFrame(false);
+                stats.record(DecodeMetrics.Stage.FRAME, System.nanoTime() - startTime);
+            }
         } catch (Throwable t) {
             Log.e(TAG, "Failed to scan image: " + t);
-        } finally {
-            updateInProgress = false;
         }
     }
 
-    private void lowpassByteImage(ByteImage image) {
-        var size = image.width * image.height;
-
-        var fft = FFT.ForSize(size);
-        if (_re == null || _re.length < size) _re = new double[size];
-        if (_im == null || _im.length < size) _im = new double[size];
-
-        // copy image into buffer
-        for(int i = 0; i < size; i++){
-            _re[i] = image.image[i] & 0xFF;
-        }
-        Arrays.fill(_im, 0.0);
-
-        // Cut off high-frequency co-efficients
-        fft.SpaceToFrequency(_re,_im);
-        for (int i = _re.length / fourierScale; i < _re.length; i++)
-        {
-            _re[i] = 0.0;
-            _im[i] = 0.0;
-        }
-        fft.FrequencyToSpace(_re, _im);
-
-        // Reset phases
-        Arrays.fill(_im, 0.0);
-
-        // Transpose and process again
-        _re = FFT.Transpose(_re, image.height, image.width);
-
-        // Cut off high-frequency co-efficients
-        fft.SpaceToFrequency(_re,_im);
-        for (int i = _re.length / fourierScale; i < _re.length; i++)
-        {
-            _re[i] = 0.0;
-            _im[i] = 0.0;
-        }
-        fft.FrequencyToSpace(_re, _im);
-
-        // Undo transposition
-        _re = FFT.Transpose(_re, image.width, image.height);
-        FFT.Normalise(_re, 255);
-
-        // Copy back to byte image
-        for(int i = 0; i < size; i++){
-            image.image[i] = (byte)_re[i];
-        }
+    /** Record the time since `start` against a stage, if metrics are on. Returns the start of the next stage. */
+    private static long lap(DecodeMetrics stats, DecodeMetrics.Stage stage, long start) {
+        return stats == null ? start : stats.lap(stage, start);
     }
 
     /** Create a rectangle matching the position of a detected code.
@@ -313,13 +579,10 @@ public class BarcodeScanner {
 
         if (showMatchBox && result != null) {
             var rect = resultToRect(result, width, height);
-            prevLumBitmap = copyColorIntsToBitmapWithBox(prevLumBitmap, lumTemp, rect, width, height);
+            showColorIntsWithBox(previewBitmaps, previewOutput, lumTemp, rect, width, height);
         } else {
-            prevLumBitmap = copyColorIntsToBitmap(prevLumBitmap, lumTemp, width, height);
+            showColorInts(previewBitmaps, previewOutput, lumTemp, width, height);
         }
-
-        Bitmap finalBitmap = prevLumBitmap;
-        act.runOnUiThread(() -> previewOutput.setImageBitmap(finalBitmap));
     }
 
     /**
@@ -334,13 +597,11 @@ public class BarcodeScanner {
             if (width < 10 || height < 10) return;
 
             // render feedback image
-            var pixels = binMap.getBlackMatrix().toColorInts(inverted);
-
-            threshBitmap = copyColorIntsToBitmap(threshBitmap, pixels, width, height);
+            threshTemp = binMap.getBlackMatrix().toColorInts(inverted, threshTemp);
+            var pixels = threshTemp;
 
             // Draw on screen
-            Bitmap finalBitmap = threshBitmap;
-            act.runOnUiThread(() -> diagnosticOutput.setImageBitmap(finalBitmap));
+            showColorInts(diagnosticBitmaps, diagnosticOutput, pixels, width, height);
         } catch (NotFoundException e) {
             Log.e(TAG, "Failure in bin-map preview", e);
         }
@@ -348,37 +609,21 @@ public class BarcodeScanner {
 
 
 
-    private final List<Bitmap> waitingToRecycle = new ArrayList<>();
-
     /**
-     * Copy "ColorInt" pixel to a bitmap. The bitmap is re-created if null or the wrong size
+     * Preview stage: copy "ColorInt" pixels to a bitmap and show it on the UI thread.
+     * The bitmap written is never the one on screen or the one waiting to go on screen,
+     * so the view doesn't draw a frame while it is being overwritten.
      */
-    private Bitmap copyColorIntsToBitmap(Bitmap target, int[] pixels, int width, int height) {
-        Bitmap.Config config = Bitmap.Config.ARGB_8888;
-
-        if (waitingToRecycle.size() > 1) { // This prevents Android crashing if it tries to draw the old bitmap
-            waitingToRecycle.remove(0).recycle();
-        }
-
-        if (target == null) {
-            var tmp = Bitmap.createBitmap(pixels, width, height, config);
-            target = tmp.copy(Bitmap.Config.ARGB_8888, true);
-            tmp.recycle();
-        } else if (differentSize(target, width, height)) {
-            waitingToRecycle.add(target);
-            var tmp = Bitmap.createBitmap(pixels, width, height, config);
-            target = tmp.copy(Bitmap.Config.ARGB_8888, true);
-            tmp.recycle();
-        } else {
-            target.setPixels(pixels, 0, width, 0, 0, width, height);
-        }
-        return target;
+    private void showColorInts(PreviewRenderer.Output output, ImageView view, int[] pixels, int width, int height) {
+        var target = output.next(width, height);
+        target.setPixels(pixels, 0, width, 0, 0, width, height);
+        output.show(view, target);
     }
 
     /**
-     * Copy "ColorInt" pixel to a bitmap with an overlay box. The bitmap is re-created if null or the wrong size
+     * Show "ColorInt" pixels with an overlay box
      */
-    private Bitmap copyColorIntsToBitmapWithBox(Bitmap target, int[] pixels, Rect box, int width, int height) {
+    private void showColorIntsWithBox(PreviewRenderer.Output output, ImageView view, int[] pixels, Rect box, int width, int height) {
         // Update pixels to make the box green
         for (int y = box.top; y < box.bottom; y++) {
             var yOff = y * width;
@@ -389,10 +634,6 @@ public class BarcodeScanner {
         }
 
         // Copy modified pixels into bitmap
-        return copyColorIntsToBitmap(target, pixels, width, height);
-    }
-
-    private boolean differentSize(Bitmap bitmap, int requiredWidth, int requiredHeight) {
-        return bitmap.getWidth() != requiredWidth || bitmap.getHeight() != requiredHeight;
+        showColorInts(output, view, pixels, width, height);
     }
 }
@@ -20,6 +20,7 @@ import android.media.ImageReader;
 import android.os.Handler;
 import android.os.HandlerThread;
 import android.util.Log;
+import android.util.Size;
 import android.view.Surface;
 
 import java.util.List;
@@ -30,11 +31,13 @@ import java.util.function.Consumer;
 /**
  * A camera controller for live processing of a feed of images
  * @noinspection NullableProblems*/
-public class CameraFeedController implements ImageReader.OnImageAvailableListener {
+public class CameraFeedController implements FrameSource, ImageReader.OnImageAvailableListener {
     private final Activity activity;
     private final Consumer<String> errorTrigger;
-    private final int insetX;
-    private final int insetY;
+    private final int requestedWidth;
+    private final int requestedHeight;
+    private final int baseInsetX; // insets at the requested size. Scaled to match the size actually captured.
+    private final int baseInsetY;
 
     private volatile int capturePlane = 0;
     ImageReader imageReader;
@@ -42,36 +45,44 @@ public class CameraFeedController implements ImageReader.OnImageAvailableListene
     /**
      * Set up camera control
      * @param main Hosting activity
-     * @param captureWidth Width of image to capture (must be 1920 or less, must be supported by camera)
-     * @param captureHeight Height of image to capture (must be 1080 or less, must be supported by camera)
+     * @param captureWidth Width of image to capture (must be 1920 or less).
+     *                     The nearest size the camera supports is used. See {@link #getCaptureWidth()}
+     * @param captureHeight Height of image to capture (must be 1080 or less)
      * @param insetX Area to crop on left and right of captured image before passing to updateTrigger.
      *               Must be less than half of captureWidth.
      * @param insetY Area to crop on top and bottom of captured image before passing to updateTrigger.
      *               Must be less than half of captureHeight
+     * @param framePool Frames to capture into. Each captured frame is passed to updateTrigger,
+     *                  which must release it back to the pool when done.
      * @param updateTrigger Trigger to call when a frame is captured
      */
     public CameraFeedController(Activity main,
                                 int captureWidth, int captureHeight,
                                 int insetX, int insetY,
+                                FramePool framePool,
                                 Consumer<ByteImage> updateTrigger,
                                 Consumer<String> errorTrigger) {
         activity = main;
 
-        if (captureWidth > 0 && captureWidth < 1920) CAPTURE_WIDTH = captureWidth;
-        if (captureHeight > 0 && captureHeight < 1080) CAPTURE_HEIGHT = captureHeight;
+        requestedWidth = captureWidth > 0 && captureWidth <= MAX_CAPTURE_WIDTH ? captureWidth : DEFAULT_CAPTURE_WIDTH;
+        requestedHeight = captureHeight > 0 && captureHeight <= MAX_CAPTURE_HEIGHT ? captureHeight : DEFAULT_CAPTURE_HEIGHT;
+        this.captureWidth = requestedWidth;
+        this.captureHeight = requestedHeight;
 
-        var maxInsetX = CAPTURE_WIDTH / 2;
-        var maxInsetY = CAPTURE_HEIGHT / 2;
+        var maxInsetX = requestedWidth / 2;
+        var maxInsetY = requestedHeight / 2;
 
-        this.insetX = insetX >= maxInsetX ? 0 : insetX;
-        this.insetY = insetY >= maxInsetY ? 0 : insetY;
+        this.baseInsetX = insetX >= maxInsetX ? 0 : insetX;
+        this.baseInsetY = insetY >= maxInsetY ? 0 : insetY;
 
         this.errorTrigger = errorTrigger;
+        this.framePool = framePool;
         this.updateTrigger = updateTrigger;
     }
 
     /** Set the capture plane returned. Defaults to the Y (luminance) plane.
      * Plane 0=Y (Luminance); Plane 1=U (Blue/Yellow); Plane 2=V (Red/Green) */
+    @Override
     public void setCapturePlane(int plane){
         if (plane < 0 || plane > 2) return;
         capturePlane = plane;
@@ -87,12 +98,35 @@ public class CameraFeedController implements ImageReader.OnImageAvailableListene
     /**
      * Max preview width that is guaranteed by Camera2 API is 1920
      */
-    public static int CAPTURE_WIDTH = 800;//1920;
+    public static final int MAX_CAPTURE_WIDTH = 1920;
 
     /**
      * Max preview height that is guaranteed by Camera2 API is 1080
      */
-    public static int CAPTURE_HEIGHT = 600;//1080;
+    public static final int MAX_CAPTURE_HEIGHT = 1080;
+
+    private static final int DEFAULT_CAPTURE_WIDTH = 800;
+    private static final int DEFAULT_CAPTURE_HEIGHT = 600;
+
+    /**
+     * Size increase on each side when escalating to a higher resolution
+     */
+    private static final double ESCALATION_FACTOR = 2.0;
+
+    /**
+     * Sizes the camera supports for YUV output, and the ones picked for normal and escalated capture.
+     * Only touched on the background thread once the camera is open.
+     */
+    private CaptureSizeSelector captureSizes;
+    private int normalSize = -1;
+    private int escalatedSize = -1;
+    private volatile boolean escalated;
+
+    /**
+     * Size of the image reader. Frames are this size before cropping and rotation.
+     */
+    private volatile int captureWidth;
+    private volatile int captureHeight;
 
     /**
      * ID of the current {@link CameraDevice}.
@@ -103,6 +137,7 @@ public class CameraFeedController implements ImageReader.OnImageAvailableListene
      * An  AutoFitTextureView for camera preview.
      */
     private final Consumer<ByteImage> updateTrigger;
+    private final FramePool framePool;
 
     /**
      * A {@link CameraCaptureSession } for camera preview.
@@ -154,7 +189,7 @@ public class CameraFeedController implements ImageReader.OnImageAvailableListene
     /**
      * A {@link Handler} for running tasks in the background.
      */
-    private Handler mBackgroundHandler;
+    private volatile Handler mBackgroundHandler;
 
     /**
      * {@link CaptureRequest.Builder} for the camera preview
@@ -193,6 +228,7 @@ public class CameraFeedController implements ImageReader.OnImageAvailableListene
     };
 
     /** Call this when hosting activity is resumed (or when starting camera control) */
+    @Override
     public void onResume() {
         startBackgroundThread();
 
@@ -204,6 +240,7 @@ public class CameraFeedController implements ImageReader.OnImageAvailableListene
     }
 
     /** Call this when hosting activity is paused (or when ending camera control) */
+    @Override
     public void onPause() {
         closeCamera();
         stopBackgroundThread();
@@ -240,6 +277,7 @@ public class CameraFeedController implements ImageReader.OnImageAvailableListene
                 if (map == null) {
                     continue;
                 }
+                chooseCaptureSizes(map.getOutputSizes(ImageFormat.YUV_420_888));
 
                 // Find out if we need to swap dimension to get the preview size relative to sensor
                 // coordinate.
@@ -268,6 +306,104 @@ public class CameraFeedController implements ImageReader.OnImageAvailableListene
         }
     }
 
+    /**
+     * Pick the supported sizes nearest the requested size, and the escalated size.
+     * If the camera doesn't list any, we ask for the requested size and hope.
+     */
+    private void chooseCaptureSizes(Size[] sizes) {
+        if (sizes == null || sizes.length < 1) {
+            Log.w(TAG, "Camera did not list any YUV output sizes");
+            captureSizes = null;
+            return;
+        }
+
+        var widths = new int[sizes.length];
+        var heights = new int[sizes.length];
+        for (int i = 0; i < sizes.length; i++) {
+            widths[i] = sizes[i].getWidth();
+            heights[i] = sizes[i].getHeight();
+        }
+
+        captureSizes = new CaptureSizeSelector(widths, heights);
+        normalSize = captureSizes.nearest(requestedWidth, requestedHeight, MAX_CAPTURE_WIDTH, MAX_CAPTURE_HEIGHT);
+        escalatedSize = captureSizes.escalate(normalSize, ESCALATION_FACTOR, MAX_CAPTURE_WIDTH, MAX_CAPTURE_HEIGHT);
+        applyCaptureSize();
+
+        Log.i(TAG, "Capture size " + captureSizes.width(normalSize) + "x" + captureSizes.height(normalSize)
+                + " for " + requestedWidth + "x" + requestedHeight + " requested, escalating to "
+                + captureSizes.width(escalatedSize) + "x" + captureSizes.height(escalatedSize));
+    }
+
+    /** Set the capture size from the normal or escalated choice. Returns true if it changed. */
+    private boolean applyCaptureSize() {
+        var sizes = captureSizes;
+        var index = escalated ? escalatedSize : normalSize;
+        if (sizes == null || index < 0) return false;
+
+        var width = sizes.width(index);
+        var height = sizes.height(index);
+        if (width == captureWidth && height == captureHeight) return false;
+
+        captureWidth = width;
+        captureHeight = height;
+        return true;
+    }
+
+    /** Width of the frames being captured, before cropping and rotation. This is the nearest the camera supports to the size asked for. */
+    public int getCaptureWidth() {
+        return captureWidth;
+    }
+
+    /** Height of the frames being captured, before cropping and rotation */
+    public int getCaptureHeight() {
+        return captureHeight;
+    }
+
+    /**
+     * Switch between the normal capture size, and a larger one for reading small codes.
+     * The capture session is restarted on the background thread if the size changes.
+     */
+    @Override
+    public void setEscalated(boolean escalate) {
+        if (escalated == escalate) return;
+        escalated = escalate;
+
+        var handler = mBackgroundHandler;
+        if (handler != null) handler.post(this::restartCapture);
+    }
+
+    /** Rebuild the image reader and capture session at the current capture size */
+    private void restartCapture() {
+        // The camera may be opening, and that only finishes on this thread. Don't block: try again shortly.
+        if (!mCameraOpenCloseLock.tryAcquire()) {
+            var handler = mBackgroundHandler;
+            if (handler != null) handler.postDelayed(this::restartCapture, 100);
+            return;
+        }
+
+        try {
+            if (mCameraDevice == null || !applyCaptureSize()) return;
+
+            Log.i(TAG, "Capture size changed to " + captureWidth + "x" + captureHeight);
+            if (null != mCaptureSession) {
+                mCaptureSession.close();
+                mCaptureSession = null;
+            }
+            if (null != imageReader) {
+                imageReader.close();
+                imageReader = null;
+            }
+            createCameraPreviewSession();
+        } finally {
+            mCameraOpenCloseLock.release();
+        }
+    }
+
+    /** Scale an inset given for the requested size to the size being captured */
+    private int scaledInset(int inset, int sourceWidth) {
+        return (int) ((long) inset * sourceWidth / requestedWidth);
+    }
+
     /**
      * Opens the camera specified by mCameraId.
      */
@@ -353,10 +489,11 @@ public class CameraFeedController implements ImageReader.OnImageAvailableListene
                 // NOTE: ImageFormat.PRIVATE always works, but refuses to supply data.
                 //       Docs claim that ImageFormat.JPEG always works, but this is not true.
                 // ImageFormat.YUV_420_888 seems to be most reliable.
-                imageReader = ImageReader.newInstance(CAPTURE_WIDTH, CAPTURE_HEIGHT,
+                imageReader = ImageReader.newInstance(captureWidth, captureHeight,
                     ImageFormat.YUV_420_888,
                     2); // 2 images to allow us to scan through the capture.
-                imageReader.setOnImageAvailableListener(this, null);
+                // Frames are converted on the background thread, not the UI thread
+                imageReader.setOnImageAvailableListener(this, mBackgroundHandler);
             }
 
             // This is the output Surface we need to start preview.
@@ -417,7 +554,11 @@ public class CameraFeedController implements ImageReader.OnImageAvailableListene
 
 
     private byte[] imageTmp;
-    private byte[] imageSrc;
+    private byte[] imageRow; // one scan line, for flipping
+    private byte[] imageBand; // a band of scan lines, for rotating
+
+    /** Source rows read at a time when rotating. Around 64KB of band for a 1024 pixel image */
+    private static final int TRANSPOSE_BAND = 64;
 
     /** Pick one of the planes out of a YUV image.
      * This assumes a 4:2:0 layout, but will handle interleaved or planar UV data */
@@ -430,7 +571,10 @@ public class CameraFeedController implements ImageReader.OnImageAvailableListene
                 Image next = reader.acquireNextImage();
 
                 if (next == null) break;
-                if (image != null) image.close();
+                if (image != null) {
+                    image.close();
+                    skippedFrames++;
+                }
                 image = next;
             }
         } catch (Exception e) {
@@ -439,46 +583,53 @@ public class CameraFeedController implements ImageReader.OnImageAvailableListene
         }
         if (image == null) return null; // no frames available
 
+        var frame = framePool.acquire();
+        if (frame == null) { // every frame is still being scanned
+            image.close();
+            return null;
+        }
+
+        ByteImage result = null;
         try { //<- this doesn't seem to improve lag
             var planes = image.getPlanes();
 
-            if (plane == 0) return imageToBytes_YPlane(planes, image);
-
-            // For some reason, Android still gives us 3 planes even when there are only really 2.
-            // The third plane seems to be the second with a one byte offset?
-            // So we check the stride on the second plane.
-            if (planes[1].getPixelStride() > 1) {
-                return imageToBytes_UvInterleaved(planes, image, plane - 1);
+            if (plane == 0) {
+                result = imageToBytes_YPlane(planes, image, frame);
+            } else if (planes[1].getPixelStride() > 1) {
+                // For some reason, Android still gives us 3 planes even when there are only really 2.
+                // The third plane seems to be the second with a one byte offset?
+                // So we check the stride on the second plane.
+                result = imageToBytes_UvInterleaved(planes, image, plane - 1, frame);
+            } else {
+                result = imageToBytes_UvSeparated(planes, image, plane - 1, frame);
             }
-
-            return imageToBytes_UvSeparated(planes, image, plane - 1);
+            return result;
         } catch (Exception e) {
             Log.e(TAG, "Failed to process camera frame: " + e);
             return null;
         } finally {
             image.close();
+            if (result == null) framePool.release(frame);
         }
     }
 
-    /** read luminance into a byte array, correcting for relative sensor rotation */
-    private ByteImage imageToBytes_YPlane(Image.Plane[] planes, Image image) {
+    /** read luminance into a byte array, correcting for relative sensor rotation.
+     * Rows are read straight out of the plane buffer, so only the cropped area is copied, and only once. */
+    private ByteImage imageToBytes_YPlane(Image.Plane[] planes, Image image, ByteImage pkg) {
         if (planes == null || planes.length < 1) {
             Log.w(TAG, "Invalid image planes");
             return null;
         }
 
-        // Read plane into temp buffer
+        // Get parameters of the plane
         var yPlane = planes[0];
         var buffer = yPlane.getBuffer();
-        var bufferSize = buffer.remaining();
-        if (imageTmp == null || imageTmp.length < bufferSize) imageTmp = new byte[bufferSize];
-        var data = imageTmp;
-        buffer.get(data);
-
-        // Get parameters of the plane
+        var base = buffer.position();
         var srcWidth = image.getWidth();
         var srcHeight = image.getHeight();
         var dataWidth = yPlane.getRowStride();
+        var insetX = scaledInset(baseInsetX, srcWidth);
+        var insetY = scaledInset(baseInsetY, srcWidth);
 
         // Get parameter of output
         var rot = mSensorOrientation;
@@ -495,11 +646,10 @@ public class CameraFeedController implements ImageReader.OnImageAvailableListene
 
         // Ensure the final output is ready
         var requiredSize = srcWidth * srcHeight;
-        if (imageSrc == null || imageSrc.length < requiredSize) {
-            imageSrc = new byte[requiredSize];
+        if (pkg.image == null || pkg.image.length < requiredSize) {
+            pkg.image = new byte[requiredSize];
         }
-        var pkg = new ByteImage();
-        pkg.image = imageSrc;
+        var imageSrc = pkg.image;
         pkg.width = dstWidth;
         pkg.height = dstHeight;
 
@@ -507,48 +657,46 @@ public class CameraFeedController implements ImageReader.OnImageAvailableListene
         // taking into account margins and rotations
 
         if (rot == 0) { // no flips
-            int outp = 0;
             for (int y = 0; y < dstHeight; y++) {
-                var yOff = dataWidth * (y + insetY);
-
                 // Copy a scan line
-                for (int x = 0; x < dstWidth; x++) {
-                    var idx = yOff + x + insetX;
-                    imageSrc[outp++] = data[idx];
-                }
+                buffer.position(base + dataWidth * (y + insetY) + insetX);
+                buffer.get(imageSrc, y * dstWidth, dstWidth);
             }
         } else if (rot == 180) { // Flip horz and vert
+            if (imageRow == null || imageRow.length < dstWidth) imageRow = new byte[dstWidth];
+            var row = imageRow;
             int outp = 0;
             for (int y = dstHeight - 1; y >= 0; y--) {
-                var yOff = dataWidth * (y + insetY);
+                buffer.position(base + dataWidth * (y + insetY) + insetX);
+                buffer.get(row, 0, dstWidth);
 
                 // Copy a scan line
                 for (int x = dstWidth - 1; x >= 0; x--) {
-                    var idx = yOff + x + insetX;
-                    imageSrc[outp++] = data[idx];
+                    imageSrc[outp++] = row[x];
                 }
             }
-        } else if (rot == 90) { // copy columns into rows, and flip y
-            int outp = 0;
-            for (int x = 0; x < dstHeight; x++) {
-
-                // Copy a scan line
-                for (int y = dstWidth - 1; y >= 0; y--) {
-                    var yy = y + insetX;
-                    var yOff = dataWidth * (yy);
-                    var idx = yOff + x + insetY;
-                    imageSrc[outp++] = data[idx];
+        } else if (rot == 90 || rot == 270) { // copy columns into rows (and flip y for 90)
+            // Source rows become output columns. Read a band of source rows at a time,
+            // small enough to stay in cache, then write it out tile by tile.
+            if (imageBand == null || imageBand.length < TRANSPOSE_BAND * dstHeight) imageBand = new byte[TRANSPOSE_BAND * dstHeight];
+            var band = imageBand;
+            var flip = rot == 90;
+
+            for (int c0 = 0; c0 < dstWidth; c0 += TRANSPOSE_BAND) {
+                var rows = Math.min(TRANSPOSE_BAND, dstWidth - c0);
+                for (int i = 0; i < rows; i++) {
+                    buffer.position(base + dataWidth * (c0 + i + insetX) + insetY);
+                    buffer.get(band, i * dstHeight, dstHeight);
                 }
-            }
-        } else if (rot == 270) { // copy columns into rows
-            int outp = 0;
-            for (int x = 0; x < dstHeight; x++) {
 
-                // Copy a scan line
-                for (int y = 0; y < dstWidth; y++) {
-                    var yOff = dataWidth * (y + insetX);
-                    var idx = yOff + x + insetY;
-                    imageSrc[outp++] = data[idx];
+                // Transpose the band in square tiles, so reads and writes both stay in a few cache lines
+                for (int x0 = 0; x0 < dstHeight; x0 += TRANSPOSE_BAND) {
+                    var x1 = Math.min(x0 + TRANSPOSE_BAND, dstHeight);
+                    for (int i = 0; i < rows; i++) {
+                        var inp = i * dstHeight;
+                        var col = flip ? dstWidth - 1 - c0 - i : c0 + i;
+                        for (int x = x0; x < x1; x++) imageSrc[x * dstWidth + col] = band[inp + x];
+                    }
                 }
             }
         }
@@ -557,7 +705,7 @@ public class CameraFeedController implements ImageReader.OnImageAvailableListene
     }
 
     /** read colors into a byte array, correcting for relative sensor rotation */
-    private ByteImage imageToBytes_UvInterleaved(Image.Plane[] planes, Image image, int chroma) {
+    private ByteImage imageToBytes_UvInterleaved(Image.Plane[] planes, Image image, int chroma, ByteImage pkg) {
         if (planes == null || planes.length < 2) {
             Log.w(TAG, "Invalid image plane selection");
             return null;
@@ -598,19 +746,18 @@ public class CameraFeedController implements ImageReader.OnImageAvailableListene
             dstHeight = srcWidth;
         }
 
-        var insetX2 = insetX / 2;
-        var insetY2 = insetY / 2;
+        var insetX2 = scaledInset(baseInsetX, srcWidth) / 2;
+        var insetY2 = scaledInset(baseInsetY, srcWidth) / 2;
 
         dstWidth -= insetX2 * 2;
         dstHeight -= insetY2 * 2;
 
         // Ensure the final output is ready
         var requiredSize = srcWidth * srcHeight;
-        if (imageSrc == null || imageSrc.length < requiredSize) {
-            imageSrc = new byte[requiredSize];
+        if (pkg.image == null || pkg.image.length < requiredSize) {
+            pkg.image = new byte[requiredSize];
         }
-        var pkg = new ByteImage();
-        pkg.image = imageSrc;
+        var imageSrc = pkg.image;
         pkg.width = dstWidth;
         pkg.height = dstHeight;
 
@@ -668,7 +815,7 @@ public class CameraFeedController implements ImageReader.OnImageAvailableListene
     }
 
     /** read colors into a byte array, correcting for relative sensor rotation */
-    private ByteImage imageToBytes_UvSeparated(Image.Plane[] planes, Image image, int chroma) {
+    private ByteImage imageToBytes_UvSeparated(Image.Plane[] planes, Image image, int chroma, ByteImage pkg) {
         if (planes == null || planes.length < chroma) {
             Log.w(TAG, "Invalid image plane selection");
             return null;
@@ -698,19 +845,18 @@ public class CameraFeedController implements ImageReader.OnImageAvailableListene
             dstHeight = srcWidth;
         }
 
-        var insetX2 = insetX / 2;
-        var insetY2 = insetY / 2;
+        var insetX2 = scaledInset(baseInsetX, srcWidth) / 2;
+        var insetY2 = scaledInset(baseInsetY, srcWidth) / 2;
 
         dstWidth -= insetX2 * 2;
         dstHeight -= insetY2 * 2;
 
         // Ensure the final output is ready
         var requiredSize = srcWidth * srcHeight;
-        if (imageSrc == null || imageSrc.length < requiredSize) {
-            imageSrc = new byte[requiredSize];
+        if (pkg.image == null || pkg.image.length < requiredSize) {
+            pkg.image = new byte[requiredSize];
         }
-        var pkg = new ByteImage();
-        pkg.image = imageSrc;
+        var imageSrc = pkg.image;
         pkg.width = dstWidth;
         pkg.height = dstHeight;
 
@@ -767,18 +913,22 @@ public class CameraFeedController implements ImageReader.OnImageAvailableListene
         return pkg;
     }
 
-    private volatile boolean updateActive = false;
+    private volatile long skippedFrames; // only written on the camera background thread
 
+    /** Frames thrown away because a newer one was waiting.
+     * Frames lost to a slow scanner are counted by the {@link FramePool}. */
     @Override
-    public void onImageAvailable(ImageReader reader) {
-        if (updateActive) return; // consumer is not running fast enough
+    public long getSkippedFrames() {
+        return skippedFrames;
+    }
 
-        try {
-            updateActive = true;
-            var image = imageToBytes_normalised(reader, capturePlane);
-            if (image != null) updateTrigger.accept(image);
-        } finally {
-            updateActive = false;
-        }
+    /**
+     * Runs on the camera background thread, as does all the frame copying, so calls never overlap.
+     * The update trigger should hand the frame off quickly.
+     */
+    @Override
+    public void onImageAvailable(ImageReader reader) {
+        var image = imageToBytes_normalised(reader, capturePlane);
+        if (image != null) updateTrigger.accept(image);
     }
 }
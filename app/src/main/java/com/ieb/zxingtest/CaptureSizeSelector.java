@@ -0,0 +1,88 @@
+package com.ieb.zxingtest;
+
+/**
+ * Picks a capture resolution from the sizes a camera says it supports.
+ * <p>
+ * Sizes are compared by the ratio between them in each direction, so a size that is 10% too
+ * wide counts the same as one 10% too narrow, and a wrong aspect ratio counts against a size
+ * as much as a wrong scale. This has no Android types in it, so it can be checked off-device.
+ */
+public class CaptureSizeSelector {
+    private final int[] widths;
+    private final int[] heights;
+
+    /**
+     * @param widths  width of each supported size
+     * @param heights height of each supported size, in the same order as `widths`
+     */
+    public CaptureSizeSelector(int[] widths, int[] heights) {
+        if (widths.length != heights.length) throw new IllegalArgumentException("Size lists must be the same length");
+        this.widths = widths.clone();
+        this.heights = heights.clone();
+    }
+
+    /** Number of supported sizes */
+    public int count() {
+        return widths.length;
+    }
+
+    /** Width of a supported size, by index */
+    public int width(int index) {
+        return widths[index];
+    }
+
+    /** Height of a supported size, by index */
+    public int height(int index) {
+        return heights[index];
+    }
+
+    /**
+     * Index of the supported size closest to the target.
+     * Sizes larger than the maximum are only picked if there is nothing else.
+     * Returns -1 if there are no sizes.
+     */
+    public int nearest(int targetWidth, int targetHeight, int maxWidth, int maxHeight) {
+        targetWidth = Math.max(targetWidth, 1);
+        targetHeight = Math.max(targetHeight, 1);
+
+        int best = -1;
+        boolean bestFits = false;
+        double bestScore = Double.MAX_VALUE;
+        for (int i = 0; i < widths.length; i++) {
+            if (widths[i] < 1 || heights[i] < 1) continue;
+
+            var fits = widths[i] <= maxWidth && heights[i] <= maxHeight;
+            if (bestFits && !fits) continue;
+
+            var score = Math.abs(Math.log((double) widths[i] / targetWidth))
+                    + Math.abs(Math.log((double) heights[i] / targetHeight));
+
+            // On a tie, take the bigger size. More pixels never hurts the decode.
+            var better = (fits && !bestFits) || score < bestScore
+                    || (score == bestScore && widths[i] * heights[i] > widths[best] * heights[best]);
+            if (better) {
+                best = i;
+                bestFits = fits;
+                bestScore = score;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Index of the size to switch to when codes are too small to read at the `current` size:
+     * the closest to `factor` times larger on each side, within the maximum.
+     * Returns `current` if there is nothing bigger.
+     */
+    public int escalate(int current, double factor, int maxWidth, int maxHeight) {
+        if (current < 0 || current >= widths.length) return current;
+
+        var next = nearest((int) Math.round(widths[current] * factor), (int) Math.round(heights[current] * factor),
+                maxWidth, maxHeight);
+        if (next < 0) return current;
+
+        var bigger = (long) widths[next] * heights[next] > (long) widths[current] * heights[current];
+        var fits = widths[next] <= maxWidth && heights[next] <= maxHeight;
+        return bigger && fits ? next : current;
+    }
+}
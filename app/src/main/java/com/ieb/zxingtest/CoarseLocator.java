@@ -0,0 +1,162 @@
+package com.ieb.zxingtest;
+
+import com.google.zxing.Binarizer;
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.PresetListReader;
+import com.google.zxing.Result;
+import com.google.zxing.ResultPoint;
+import com.google.zxing.ResultPointCallback;
+
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Finds where a large code is by scanning a shrunk copy of the frame from a {@link LuminancePyramid}.
+ * <p>
+ * Thresholding and finder searches are most of the cost of a scan, and at quarter size they
+ * only touch a sixteenth of the pixels. The full size frame is then only thresholded and
+ * decoded in the region found here, so the grid is still sampled at full resolution.
+ * <p>
+ * A decode at the coarse level counts as a sighting, as do three or more possible result points
+ * (like QR finder patterns) that didn't decode. An instance should only be used by one thread at a time.
+ */
+public class CoarseLocator implements ResultPointCallback {
+    private static final int MIN_PADDING = 32; // full size pixels around what was found
+    private static final int MIN_SIZE = 256; // smallest region returned, so the thresholder has some context
+    private static final int PARTIAL_POINTS = 3;
+    private static final int MAX_POINTS = 16;
+
+    private final PresetListReader reader;
+    private final LuminancePyramid pyramid = new LuminancePyramid();
+
+    // Possible points reported during the coarse scan, in level coordinates
+    private final float[] pointX = new float[MAX_POINTS];
+    private final float[] pointY = new float[MAX_POINTS];
+    private int pointCount;
+
+    // Region found, in frame coordinates
+    private int left, top, width, height;
+
+    /**
+     * @param readerFactory creates the reader used on shrunk frames.
+     *                      It is kept separate from the main reader, so coarse points don't get mixed up with full size ones.
+     */
+    public CoarseLocator(Supplier<PresetListReader> readerFactory) {
+        reader = readerFactory.get();
+        reader.setResultPointCallback(this);
+    }
+
+    /**
+     * Look for a code in a shrunk copy of the frame.
+     * Returns true if something was found, in which case {@link #left()}, {@link #top()},
+     * {@link #width()} and {@link #height()} give a padded region of the frame to decode.
+     *
+     * @param frame     full size luminance
+     * @param level     pyramid level to search. 1 is half size, 2 is quarter size.
+     * @param binarizer thresholder for the shrunk frame
+     * @param minSize   smallest width and height of the region, so the full size thresholder's window fits in it.
+     *                  Regions are never smaller than 256 pixels a side, or the frame if that is smaller.
+     */
+    public boolean locate(LuminanceSource frame, int level, Function<LuminanceSource, Binarizer> binarizer, int minSize) {
+        if (level < 1) return false;
+        pyramid.build(frame, level);
+        level = Math.min(level, pyramid.getLevelCount() - 1);
+        if (level < 1) return false;
+
+        pointCount = 0;
+        Result result = null;
+        try {
+            reader.reset();
+            result = reader.decode(new BinaryBitmap(binarizer.apply(pyramid.level(level))));
+        } catch (Exception e) {
+            // Nothing decoded. Partial points may still have been found.
+        }
+
+        var points = result == null ? null : result.getResultPoints();
+        if (points != null && points.length > 0) {
+            pointCount = 0;
+            for (ResultPoint point : points) foundPossibleResultPoint(point);
+        }
+        if (pointCount < 1 || (result == null && pointCount < PARTIAL_POINTS)) return false;
+
+        return setRegion(LuminancePyramid.factor(level), Math.max(MIN_SIZE, minSize), frame.getWidth(), frame.getHeight());
+    }
+
+    /** Left edge of the region found, in frame pixels */
+    public int left() {
+        return left;
+    }
+
+    /** Top edge of the region found, in frame pixels */
+    public int top() {
+        return top;
+    }
+
+    /** Width of the region found */
+    public int width() {
+        return width;
+    }
+
+    /** Height of the region found */
+    public int height() {
+        return height;
+    }
+
+    /** Called by the coarse reader as it finds possible parts of a code */
+    @Override
+    public void foundPossibleResultPoint(ResultPoint point) {
+        if (point == null || pointCount >= MAX_POINTS) return;
+        pointX[pointCount] = point.getX();
+        pointY[pointCount] = point.getY();
+        pointCount++;
+    }
+
+    /** Scale the points up to frame coordinates, and pad them out to a region. False if it's the whole frame anyway. */
+    private boolean setRegion(int factor, int minSize, int frameWidth, int frameHeight) {
+        float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE;
+        float maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE;
+        for (int i = 0; i < pointCount; i++) {
+            minX = Math.min(minX, pointX[i]);
+            maxX = Math.max(maxX, pointX[i]);
+            minY = Math.min(minY, pointY[i]);
+            maxY = Math.max(maxY, pointY[i]);
+        }
+
+        // Points are inside the code (finder centres, 1D start and end). Pad by half the
+        // code size to take in the rest of it and its quiet zone. 1D codes come back as a line.
+        var size = Math.max(maxX - minX, maxY - minY) * factor;
+        var pad = Math.max(MIN_PADDING, (int) (size / 2)) + factor;
+        var x0 = (int) (minX * factor) - pad;
+        var y0 = (int) (minY * factor) - pad;
+        var x1 = (int) Math.ceil(maxX * factor) + pad;
+        var y1 = (int) Math.ceil(maxY * factor) + pad;
+
+        // Grow small regions around their centre, as RegionTracker does.
+        // A few close points, or a region clipped at the frame edge, would otherwise be too small to threshold.
+        var minW = Math.min(minSize, frameWidth);
+        var minH = Math.min(minSize, frameHeight);
+        if (x1 - x0 < minW) {
+            x0 = (x0 + x1 - minW) / 2;
+            x1 = x0 + minW;
+        }
+        if (y1 - y0 < minH) {
+            y0 = (y0 + y1 - minH) / 2;
+            y1 = y0 + minH;
+        }
+
+        // Slide back inside the frame, then clip
+        if (x0 < 0) { x1 -= x0; x0 = 0; }
+        if (y0 < 0) { y1 -= y0; y0 = 0; }
+        if (x1 > frameWidth) { x0 = Math.max(0, x0 - (x1 - frameWidth)); x1 = frameWidth; }
+        if (y1 > frameHeight) { y0 = Math.max(0, y0 - (y1 - frameHeight)); y1 = frameHeight; }
+
+        if (x0 == 0 && y0 == 0 && x1 == frameWidth && y1 == frameHeight) return false;
+
+        left = x0;
+        top = y0;
+        width = x1 - x0;
+        height = y1 - y0;
+        return true;
+    }
+}
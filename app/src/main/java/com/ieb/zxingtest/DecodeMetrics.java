@@ -0,0 +1,223 @@
+package com.ieb.zxingtest;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.ChecksumException;
+import com.google.zxing.FormatException;
+import com.google.zxing.PresetListReader;
+import com.google.zxing.Result;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Timings for each stage of a scan, and counts of how each barcode reader got on.
+ * <p>
+ * All buckets and counters are set up when this is created, so recording costs a lock that is
+ * almost never contended and a few increments, with no allocation. Use {@link #snapshot} to
+ * copy everything out for logging or telemetry. Safe to use from any thread.
+ */
+public class DecodeMetrics implements PresetListReader.DecodeListener {
+    /** Parts of a scan that are timed */
+    public enum Stage {
+        /** Averaging with recent frames */
+        FUSION,
+        /** Sharpness and contrast scoring */
+        QUALITY,
+        /** Low pass filter */
+        FOURIER,
+        /** Finding a code on a shrunk copy of the frame */
+        PYRAMID,
+        /** Converting greyscale to black and white */
+        THRESHOLD,
+        /** Running all the readers (or the whole parameter sweep, when it's on) */
+        DECODE,
+        /** Drawing the preview and diagnostic images */
+        PREVIEW,
+        /** The whole scan, from taking the frame to reporting the result */
+        FRAME
+    }
+
+    private static final BarcodeFormat[] FORMATS = BarcodeFormat.values();
+
+    private final LatencyHistogram[] stages = new LatencyHistogram[Stage.values().length];
+    private final LatencyHistogram[] readerTimes = new LatencyHistogram[FORMATS.length];
+    private final long[] attempts = new long[FORMATS.length];
+    private final long[] hits = new long[FORMATS.length];
+    private final long[] checksumFailures = new long[FORMATS.length];
+    private final long[] formatFailures = new long[FORMATS.length];
+    private long frames;
+    private long rejectedFrames;
+
+    public DecodeMetrics() {
+        for (int i = 0; i < stages.length; i++) stages[i] = new LatencyHistogram();
+        for (int i = 0; i < readerTimes.length; i++) readerTimes[i] = new LatencyHistogram();
+    }
+
+    /** Record the time a stage took */
+    public synchronized void record(Stage stage, long nanos) {
+        stages[stage.ordinal()].record(nanos);
+    }
+
+    /**
+     * Record the time since `start` against a stage, and return the current time.
+     * Chain calls to time stages that follow one after another.
+     */
+    public long lap(Stage stage, long start) {
+        var now = System.nanoTime();
+        record(stage, now - start);
+        return now;
+    }
+
+    /** Count a frame taken for scanning, and whether it was skipped by the quality gate */
+    public synchronized void countFrame(boolean rejected) {
+        frames++;
+        if (rejected) rejectedFrames++;
+    }
+
+    /** Called by the reader after each format is tried */
+    @Override
+    public synchronized void readerFinished(BarcodeFormat format, long nanos, Result result, Exception error) {
+        var i = format.ordinal();
+        readerTimes[i].record(nanos);
+        attempts[i]++;
+        if (result != null) hits[i]++;
+        if (error instanceof ChecksumException) checksumFailures[i]++;
+        else if (error instanceof FormatException) formatFailures[i]++;
+    }
+
+    /** Clear all timings and counts */
+    public synchronized void clear() {
+        for (LatencyHistogram h : stages) h.clear();
+        for (LatencyHistogram h : readerTimes) h.clear();
+        for (int i = 0; i < FORMATS.length; i++) {
+            attempts[i] = 0;
+            hits[i] = 0;
+            checksumFailures[i] = 0;
+            formatFailures[i] = 0;
+        }
+        frames = 0;
+        rejectedFrames = 0;
+    }
+
+    /**
+     * Copy out the current timings and counts.
+     * Frames lost before scanning are counted by the pool and source, so are read from them here.
+     */
+    public Snapshot snapshot(FramePool pool, FrameSource source) {
+        var snapshot = new Snapshot();
+        snapshot.droppedFrames = pool.getDroppedFrames();
+        snapshot.starvedFrames = pool.getStarvedFrames();
+        snapshot.skippedFrames = source.getSkippedFrames();
+
+        synchronized (this) {
+            snapshot.frames = frames;
+            snapshot.rejectedFrames = rejectedFrames;
+            for (Stage stage : Stage.values()) {
+                var h = stages[stage.ordinal()];
+                if (h.count() > 0) snapshot.stages.put(stage, new Timing(h));
+            }
+            for (int i = 0; i < FORMATS.length; i++) {
+                if (attempts[i] < 1) continue;
+                snapshot.formats.put(FORMATS[i], new FormatCounts(attempts[i], hits[i],
+                        checksumFailures[i], formatFailures[i], new Timing(readerTimes[i])));
+            }
+        }
+        return snapshot;
+    }
+
+    /** Summary of one histogram. All times are in nanoseconds. */
+    public static class Timing {
+        public final long count;
+        public final long mean;
+        public final long p50;
+        public final long p90;
+        public final long p99;
+        public final long max;
+
+        Timing(LatencyHistogram h) {
+            count = h.count();
+            mean = h.mean();
+            p50 = h.percentile(50);
+            p90 = h.percentile(90);
+            p99 = h.percentile(99);
+            max = h.max();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("n=%d mean=%.2fms p50=%.2fms p90=%.2fms p99=%.2fms max=%.2fms",
+                    count, mean / 1e6, p50 / 1e6, p90 / 1e6, p99 / 1e6, max / 1e6);
+        }
+    }
+
+    /** How one reader got on */
+    public static class FormatCounts {
+        /** Images the reader was tried on */
+        public final long attempts;
+        /** Images it decoded */
+        public final long hits;
+        /** Codes found but failing their checksum or error correction */
+        public final long checksumFailures;
+        /** Codes found but not making sense once read */
+        public final long formatFailures;
+        /** Time the reader took on each image */
+        public final Timing timing;
+
+        FormatCounts(long attempts, long hits, long checksumFailures, long formatFailures, Timing timing) {
+            this.attempts = attempts;
+            this.hits = hits;
+            this.checksumFailures = checksumFailures;
+            this.formatFailures = formatFailures;
+            this.timing = timing;
+        }
+
+        @Override
+        public String toString() {
+            return "attempts=" + attempts + " hits=" + hits + " checksum=" + checksumFailures
+                    + " format=" + formatFailures + " " + timing;
+        }
+    }
+
+    /** Timings and counts at one moment. Only stages and formats that have been used are included. */
+    public static class Snapshot {
+        /** Frames scanned, including those skipped by the quality gate */
+        public long frames;
+        /** Frames skipped by the quality gate */
+        public long rejectedFrames;
+        /** Frames captured but replaced by newer ones before the scanner took them */
+        public long droppedFrames;
+        /** Frames the source couldn't capture because every pooled frame was in use */
+        public long starvedFrames;
+        /** Frames the source threw away itself, because it was still busy with an earlier one */
+        public long skippedFrames;
+
+        private final Map<Stage, Timing> stages = new EnumMap<>(Stage.class);
+        private final Map<BarcodeFormat, FormatCounts> formats = new EnumMap<>(BarcodeFormat.class);
+
+        /** Time taken by each stage that has run */
+        public Map<Stage, Timing> getStages() {
+            return Collections.unmodifiableMap(stages);
+        }
+
+        /** Counts for each format that has been tried */
+        public Map<BarcodeFormat, FormatCounts> getFormats() {
+            return Collections.unmodifiableMap(formats);
+        }
+
+        @Override
+        public String toString() {
+            var sb = new StringBuilder();
+            sb.append("Frames: ").append(frames).append(", rejected: ").append(rejectedFrames)
+                    .append(", dropped: ").append(droppedFrames).append(", starved: ").append(starvedFrames)
+                    .append(", skipped: ").append(skippedFrames).append(System.lineSeparator());
+            for (Map.Entry<Stage, Timing> e : stages.entrySet()) {
+                sb.append("  ").append(e.getKey()).append(": ").append(e.getValue()).append(System.lineSeparator());
+            }
+            for (Map.Entry<BarcodeFormat, FormatCounts> e : formats.entrySet()) {
+                sb.append("  ").append(e.getKey()).append(": ").append(e.getValue()).append(System.lineSeparator());
+            }
+            return sb.toString();
+        }
+    }
+}
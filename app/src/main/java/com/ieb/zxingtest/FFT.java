@@ -28,29 +28,51 @@ package com.ieb.zxingtest;
  * IN THE SOFTWARE.
  */
 
-import android.util.Log;
-
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 /**
  * Performs an in-place complex FFT.
+ * <p>
+ * Plans are immutable once built, and can be shared between threads.
+ * Each thread gets its own working buffers.
  */
 public class FFT
 {
-    private final double[] _re; // Real components
-    private final double[] _im; // Imaginary components
     private final int[]    _revTgt; // Target position post bit-reversal
+    private final double[] _cos; // cos(pi * k / n) for k in 0..n-1
+    private final double[] _sin; // sin(pi * k / n) for k in 0..n-1
 
     private final int _logN; // log2 of FFT size
     private final int _n; // FFT size
 
-    private static int Log2(int n) {return (int)(Math.log(n) / Math.log(2));} // For Java
+    private final ThreadLocal<WorkBuffers> _work;
+
+    private static class WorkBuffers
+    {
+        final double[] re; // Real components
+        final double[] im; // Imaginary components
+
+        WorkBuffers(int n)
+        {
+            re = new double[n];
+            im = new double[n];
+        }
+    }
+
+    private static int Log2(int n) {return 31 - Integer.numberOfLeadingZeros(n);} // For Java, exact for powers of 2
     //private static int Log2(int n) {return (int)Math.Log2(n);} // For C#
 
     private static int NextPower2(int v){v--;v |= v >> 1;v |= v >> 2;v |= v >> 4;v |= v >> 8;v |= v >> 16;v++;return v;}
 
-    private static final Map<Integer, FFT> _cachedScales = new HashMap<>();
+    /// <summary>
+    /// Most plans kept at once. Each plan holds tables of a few doubles per point,
+    /// so we don't want to keep every size that was ever asked for.
+    /// </summary>
+    private static final int MAX_CACHED_PLANS = 8;
+
+    private static final ConcurrentHashMap<Integer, FFT> _cachedScales = new ConcurrentHashMap<>();
+    private static final ConcurrentLinkedQueue<Integer> _cacheOrder = new ConcurrentLinkedQueue<>(); // oldest first
 
 
     /// <summary>
@@ -59,30 +81,42 @@ public class FFT
     /// <param name="n">size of the input data</param>
     public static FFT ForSize(int n)
     {
-        var logN = Log2(NextPower2(n));
-        if (_cachedScales.containsKey(logN)){
-            return _cachedScales.get(logN);
-        }
+        return ForScale(Log2(NextPower2(Math.max(n, 1))));
+    }
 
-        var result = new FFT(logN);
-        _cachedScales.put(logN, result);
-        return result;
+    /// <summary>
+    /// Set up a FFT transform for real-valued input of the given size.
+    /// The plan is half the size of the input, for use with
+    /// <see cref="RealToFrequency"/> and <see cref="FrequencyToReal"/>
+    /// </summary>
+    /// <param name="n">size of the input data</param>
+    public static FFT ForRealSize(int n)
+    {
+        return ForScale(Math.max(Log2(NextPower2(Math.max(n, 2))) - 1, 0));
     }
 
     /// <summary>
     /// Set up a FFT transform for given scale
     /// </summary>
     /// <param name="logN">log2 of FFT size</param>
-    @SuppressWarnings("unused")
     public static FFT ForScale(int logN)
     {
-        if (_cachedScales.containsKey(logN)){
-            return _cachedScales.get(logN);
-        }
+        var plan = _cachedScales.get(logN);
+        if (plan != null) return plan;
 
-        var result = new FFT(logN);
-        _cachedScales.put(logN, result);
-        return result;
+        plan = new FFT(logN);
+        var existing = _cachedScales.putIfAbsent(logN, plan);
+        if (existing != null) return existing;
+
+        // Over the limit: drop the oldest plans. Anyone still holding one can carry on using it.
+        _cacheOrder.add(logN);
+        while (_cachedScales.size() > MAX_CACHED_PLANS)
+        {
+            var oldest = _cacheOrder.poll();
+            if (oldest == null) break;
+            _cachedScales.remove(oldest);
+        }
+        return plan;
     }
 
     /// <summary>
@@ -94,16 +128,35 @@ public class FFT
         _logN = logN;
         _n = 1 << _logN;
 
-        // Allocate elements for linked list of complex numbers.
-        _re = new double[_n];
-        _im = new double[_n];
         _revTgt = new int[_n];
+        _cos = new double[_n];
+        _sin = new double[_n];
 
         // Specify target for bitwise reversal re-ordering.
         for (var k = 0; k < _n; k++)
         {
             _revTgt[k] = BitReverse(k, logN);
         }
+
+        // Twiddle factors at half the spacing the complex transform needs,
+        // so the real-input transforms can use the same table.
+        for (var k = 0; k < _n; k++)
+        {
+            var angle = Math.PI * k / _n;
+            _cos[k] = Math.cos(angle);
+            _sin[k] = Math.sin(angle);
+        }
+
+        var n = _n;
+        _work = ThreadLocal.withInitial(() -> new WorkBuffers(n));
+    }
+
+    /// <summary>
+    /// Number of complex points in this transform
+    /// </summary>
+    public int Size()
+    {
+        return _n;
     }
 
     /// <summary>
@@ -114,8 +167,7 @@ public class FFT
     {
         var length = b * a;
         if (samples.length < length){
-            Log.w("FFT", "Invalid transpose");
-            return samples;
+            throw new IllegalArgumentException("Invalid transpose");
         }
 
         var result = new double[length];
@@ -153,6 +205,124 @@ public class FFT
         Run(xRe, xIm, true);
     }
 
+    /// <summary>
+    /// FFT of real-valued samples, using a complex FFT of half the size.
+    /// Even samples go in the real part and odd samples in the imaginary part,
+    /// then the two interleaved spectra are separated.
+    /// <p></p>
+    /// Only the non-negative frequencies are written, as the rest are mirror images.
+    /// </summary>
+    /// <param name="samples">Input, up to 2 * <see cref="Size"/> long. Shorter inputs are reflected to fill.</param>
+    /// <param name="outRe">Real part of output, bins 0 to <see cref="Size"/> inclusive</param>
+    /// <param name="outIm">Imaginary part of output, bins 0 to <see cref="Size"/> inclusive</param>
+    public void RealToFrequency(double[] samples, double[] outRe, double[] outIm)
+    {
+        var n = _n;
+        var len = samples.length;
+        if (len > 2 * n || outRe.length <= n || outIm.length <= n){
+            throw new IllegalArgumentException("Invalid real transform size");
+        }
+
+        var work = _work.get();
+        var zRe = work.re;
+        var zIm = work.im;
+        for (var i = 0; i < n; i++)
+        {
+            zRe[i] = samples[Reflect(2 * i, len)];
+            zIm[i] = samples[Reflect(2 * i + 1, len)];
+        }
+        Butterflies(zRe, zIm, false);
+
+        // Result is left in bit-reversed order
+        var rev = _revTgt;
+        var z0Re = zRe[0];
+        var z0Im = zIm[0];
+        outRe[0] = z0Re + z0Im;
+        outIm[0] = 0.0;
+        outRe[n] = z0Re - z0Im;
+        outIm[n] = 0.0;
+
+        for (var k = 1; k < n; k++)
+        {
+            var a = zRe[rev[k]];     // Z[k]
+            var b = zIm[rev[k]];
+            var c = zRe[rev[n - k]]; // Z[n-k]
+            var d = zIm[rev[n - k]];
+
+            // E = (Z[k] + conj(Z[n-k])) / 2; O = (Z[k] - conj(Z[n-k])) / 2i
+            var eRe = (a + c) * 0.5;
+            var eIm = (b - d) * 0.5;
+            var oRe = (b + d) * 0.5;
+            var oIm = (c - a) * 0.5;
+
+            // X[k] = E + W^k * O, W = exp(-i pi / n)
+            var wRe = _cos[k];
+            var wIm = -_sin[k];
+            outRe[k] = eRe + wRe * oRe - wIm * oIm;
+            outIm[k] = eIm + wRe * oIm + wIm * oRe;
+        }
+    }
+
+    /// <summary>
+    /// Inverse of <see cref="RealToFrequency"/>.
+    /// </summary>
+    /// <param name="inRe">Real part of input, bins 0 to <see cref="Size"/> inclusive</param>
+    /// <param name="inIm">Imaginary part of input, bins 0 to <see cref="Size"/> inclusive</param>
+    /// <param name="samples">Output, up to 2 * <see cref="Size"/> long</param>
+    public void FrequencyToReal(double[] inRe, double[] inIm, double[] samples)
+    {
+        var n = _n;
+        if (samples.length > 2 * n || inRe.length <= n || inIm.length <= n){
+            throw new IllegalArgumentException("Invalid real transform size");
+        }
+
+        var work = _work.get();
+        var zRe = work.re;
+        var zIm = work.im;
+        var scale = 1.0 / n;
+
+        for (var k = 0; k < n; k++)
+        {
+            var a = inRe[k];     // X[k]
+            var b = inIm[k];
+            var c = inRe[n - k]; // X[n-k]
+            var d = inIm[n - k];
+
+            // E = (X[k] + conj(X[n-k])) / 2; O = conj(W^k) * (X[k] - conj(X[n-k])) / 2
+            var eRe = (a + c) * 0.5;
+            var eIm = (b - d) * 0.5;
+            var hRe = (a - c) * 0.5;
+            var hIm = (b + d) * 0.5;
+            var wRe = _cos[k];
+            var wIm = _sin[k];
+            var oRe = hRe * wRe - hIm * wIm;
+            var oIm = hRe * wIm + hIm * wRe;
+
+            // Z[k] = E + i O, scaled for the inverse
+            zRe[k] = (eRe - oIm) * scale;
+            zIm[k] = (eIm + oRe) * scale;
+        }
+        Butterflies(zRe, zIm, true);
+
+        var rev = _revTgt;
+        var len = samples.length;
+        for (var i = 0; i < n; i++)
+        {
+            var even = 2 * i;
+            if (even >= len) break;
+            samples[even] = zRe[rev[i]];
+            if (even + 1 < len) samples[even + 1] = zIm[rev[i]];
+        }
+    }
+
+    /// <summary>
+    /// Index into a signal of <paramref name="length"/>, reflecting past the end
+    /// </summary>
+    private static int Reflect(int i, int length)
+    {
+        return i < length ? i : length - (i - length) - 1;
+    }
+
     /// <summary>
     /// Performs in-place complex FFT
     /// </summary>
@@ -164,12 +334,11 @@ public class FFT
         double[] xIm,
         boolean inverse )
     {
-        var numFlies   = _n >> 1; // Number of butterflies per sub-FFT
-        var span       = _n >> 1; // Width of the butterfly
-        var spacing    = _n; // Distance between start of sub-FFTs
-        var wIndexStep = 1; // Increment for twiddle table index
+        var work = _work.get();
+        var _re = work.re;
+        var _im = work.im;
 
-        // Copy data into linked complex number objects
+        // Copy data into working buffers
         // If it's an iFFT, we divide by N while we're at it
         var scale = inverse ? 1.0 / _n : 1.0;
 
@@ -187,33 +356,48 @@ public class FFT
             _im[i] = 0;
         }
 
+        Butterflies(_re, _im, inverse);
+
+        // The algorithm leaves the result in a scrambled order.
+        // Unscramble while copying values back
+        for (var i = 0; i < _re.length; i++)
+        {
+            var target = _revTgt[i];
+            if (target >= xRe.length) continue;
+
+            xRe[target] = _re[i];
+            xIm[target] = _im[i];
+        }
+    }
+
+    /// <summary>
+    /// Decimation-in-frequency butterflies, in place.
+    /// Output is in bit-reversed order.
+    /// </summary>
+    private void Butterflies(double[] _re, double[] _im, boolean inverse)
+    {
+        var numFlies   = _n >> 1; // Number of butterflies per sub-FFT
+        var span       = _n >> 1; // Width of the butterfly
+        var spacing    = _n; // Distance between start of sub-FFTs
+        var wIndexStep = 2; // Increment for twiddle table index (table is at half spacing)
+        var wSign      = inverse ? 1.0 : -1.0;
+
         // For each stage of the FFT
         for (var stage = 0; stage < _logN; stage++)
         {
-            // Compute a multiplier factor for the "twiddle factors".
-            // The twiddle factors are complex unit vectors spaced at
-            // regular angular intervals. The angle by which the twiddle
-            // factor advances depends on the FFT stage. In many FFT
-            // implementations the twiddle factors are cached, but because
-            // array lookup is relatively slow in C#, it's just
-            // as fast to compute them on the fly.
-            var wAngleInc = wIndexStep * 2.0 * Math.PI / _n;
-            if (!inverse) wAngleInc *= -1;
-            var wMulRe = Math.cos(wAngleInc);
-            var wMulIm = Math.sin(wAngleInc);
-
             for (var start = 0; start < _n; start += spacing)
             {
                 var xTop = start;
                 var xBot = start+span;
-
-                var wRe = 1.0;
-                var wIm = 0.0;
+                var wIndex = 0;
 
                 // For each butterfly in this stage
                 for (var flyCount = 0; flyCount < numFlies; ++flyCount)
                 {
-                    if (xTop < 0 || xBot < 0) break;
+                    // Twiddle factors are complex unit vectors spaced at regular angular
+                    // intervals. The interval depends on the FFT stage.
+                    var wRe = _cos[wIndex];
+                    var wIm = wSign * _sin[wIndex];
 
                     // Get the top & bottom values
                     var xTopRe = _re[xTop];
@@ -235,13 +419,7 @@ public class FFT
                     // Advance butterfly to next top & bottom positions
                     xTop++;
                     xBot++;
-
-                    // Update the twiddle factor, via complex multiply
-                    // by unit vector with the appropriate angle
-                    // (wRe + j wIm) = (wRe + j wIm) x (wMulRe + j wMulIm)
-                    var tRe = wRe;
-                    wRe = wRe * wMulRe - wIm * wMulIm;
-                    wIm = tRe * wMulIm + wIm * wMulRe;
+                    wIndex += wIndexStep;
                 }
             }
 
@@ -250,17 +428,6 @@ public class FFT
             spacing >>= 1;
             wIndexStep <<= 1;   // Multiply by 2 by left shift
         }
-
-        // The algorithm leaves the result in a scrambled order.
-        // Unscramble while copying values back
-        for (var i = 0; i < _re.length; i++)
-        {
-            var target = _revTgt[i];
-            if (target >= xRe.length) continue;
-
-            xRe[target] = _re[i];
-            xIm[target] = _im[i];
-        }
     }
 
     /// <summary>
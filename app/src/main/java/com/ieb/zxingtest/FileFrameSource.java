@@ -0,0 +1,224 @@
+package com.ieb.zxingtest;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Replays recorded luminance frames into the scanner, so it can be run without a camera.
+ * <p>
+ * Dump files hold one or more frames, each written as a big-endian int width,
+ * a big-endian int height, then width*height bytes of Y-plane data.
+ * See {@link #writeFrame(OutputStream, ByteImage)}.
+ */
+public class FileFrameSource implements FrameSource {
+    private final List<ByteImage> frames = new ArrayList<>();
+    private final FramePool framePool;
+    private final Consumer<ByteImage> updateTrigger;
+    private final Consumer<String> errorTrigger;
+    private final List<File> files;
+    private final double framesPerSecond;
+    private final int loops;
+
+    private Thread replayThread;
+    private Runnable finishedTrigger;
+    private volatile long framesDelivered;
+    private volatile long framesDropped;
+    private volatile long framesLate;
+
+    /**
+     * Set up a replay
+     * @param files Dump files to read, in order
+     * @param framesPerSecond Rate to deliver frames at. Frames that come due while the replay
+     *                        is still busy are dropped, and the scanner drops frames it can't
+     *                        keep up with, like a real camera.
+     *                        Zero or less to deliver every frame, as fast as the scanner can take them.
+     * @param loops Number of times to play through all the files
+     * @param framePool Frames to play into. Each is passed to updateTrigger,
+     *                  which must release it back to the pool when done.
+     * @param updateTrigger Trigger to call when a frame is ready
+     * @param errorTrigger Trigger to call if the files can't be read
+     */
+    public FileFrameSource(List<File> files, double framesPerSecond, int loops,
+                           FramePool framePool,
+                           Consumer<ByteImage> updateTrigger,
+                           Consumer<String> errorTrigger) {
+        this.files = files;
+        this.framesPerSecond = framesPerSecond;
+        this.loops = Math.max(loops, 1);
+        this.framePool = framePool;
+        this.updateTrigger = updateTrigger;
+        this.errorTrigger = errorTrigger;
+    }
+
+    /** Make a factory for use with {@link BarcodeScanner#BarcodeScanner(android.app.Activity, FrameSource.Factory)} */
+    public static FrameSource.Factory factory(List<File> files, double framesPerSecond, int loops) {
+        return (pool, update, error) -> new FileFrameSource(files, framesPerSecond, loops, pool, update, error);
+    }
+
+    /** Set a callback that is triggered when all frames have been played */
+    public void onFinished(Runnable finished) {
+        finishedTrigger = finished;
+    }
+
+    /** Number of frames passed to the consumer so far */
+    public long getFramesDelivered() {
+        return framesDelivered;
+    }
+
+    /** Number of frames skipped because the replay fell behind its clock, or every pooled frame was in use */
+    public long getFramesDropped() {
+        return framesDropped;
+    }
+
+    /** Number of frames skipped because the replay fell behind its clock */
+    @Override
+    public long getSkippedFrames() {
+        return framesLate;
+    }
+
+    @Override
+    public void onResume() {
+        if (replayThread != null) return;
+
+        replayThread = new Thread(this::replay, "FrameReplay");
+        replayThread.start();
+    }
+
+    @Override
+    public void onPause() {
+        var thread = replayThread;
+        if (thread == null) return;
+
+        thread.interrupt();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        replayThread = null;
+    }
+
+    @Override
+    public void setCapturePlane(int plane) {
+        // Dumps only hold luminance
+    }
+
+    @Override
+    public boolean isRealTime() {
+        return framesPerSecond > 0;
+    }
+
+    private void replay() {
+        try {
+            if (frames.isEmpty()) loadFrames();
+        } catch (IOException e) {
+            if (errorTrigger != null) errorTrigger.accept("Failed to read frame dump: " + e);
+            return;
+        }
+
+        // Frames are delivered in pooled buffers, the same as the camera feed.
+        var period = framesPerSecond > 0 ? (long) (1_000_000_000L / framesPerSecond) : 0L;
+        var start = System.nanoTime();
+        long due = 0; // index of the next frame on the replay clock
+
+        for (int loop = 0; loop < loops; loop++) {
+            for (ByteImage frame : frames) {
+                if (Thread.currentThread().isInterrupted()) return;
+
+                if (period > 0) {
+                    var now = System.nanoTime() - start;
+                    var wait = due * period - now;
+                    if (wait < 0 && -wait >= period) { // we are late: the camera would have replaced this frame
+                        framesDropped++;
+                        framesLate++;
+                        due++;
+                        continue;
+                    }
+                    if (wait > 0 && !sleepNanos(wait)) return;
+                }
+                due++;
+
+                var output = framePool.acquire();
+                if (output == null) { // the camera would have nowhere to put this frame either
+                    framesDropped++;
+                    continue;
+                }
+
+                copyFrame(frame, output);
+                updateTrigger.accept(output);
+                framesDelivered++;
+            }
+        }
+
+        if (finishedTrigger != null) finishedTrigger.run();
+    }
+
+    private void loadFrames() throws IOException {
+        for (File file : files) {
+            try (var in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+                while (true) {
+                    var frame = readFrame(in);
+                    if (frame == null) break;
+                    frames.add(frame);
+                }
+            }
+        }
+    }
+
+    /** Read a single frame from a dump stream. Returns null at end of stream. */
+    public static ByteImage readFrame(DataInputStream in) throws IOException {
+        int width;
+        try {
+            width = in.readInt();
+        } catch (EOFException e) {
+            return null;
+        }
+        var height = in.readInt();
+        if (width <= 0 || height <= 0 || width > 8192 || height > 8192) {
+            throw new IOException("Invalid frame size " + width + "x" + height);
+        }
+
+        var frame = new ByteImage();
+        frame.width = width;
+        frame.height = height;
+        frame.image = new byte[width * height];
+        in.readFully(frame.image);
+        return frame;
+    }
+
+    /** Append a single frame to a dump stream */
+    public static void writeFrame(OutputStream out, ByteImage frame) throws IOException {
+        var data = new DataOutputStream(out);
+        data.writeInt(frame.width);
+        data.writeInt(frame.height);
+        data.write(frame.image, 0, frame.width * frame.height);
+        data.flush();
+    }
+
+    private static void copyFrame(ByteImage src, ByteImage dst) {
+        var size = src.width * src.height;
+        if (dst.image == null || dst.image.length < size) dst.image = new byte[size];
+        System.arraycopy(src.image, 0, dst.image, 0, size);
+        dst.width = src.width;
+        dst.height = src.height;
+    }
+
+    private static boolean sleepNanos(long nanos) {
+        try {
+            Thread.sleep(nanos / 1_000_000L, (int) (nanos % 1_000_000L));
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
@@ -0,0 +1,633 @@
+package com.ieb.zxingtest;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.Binarizer;
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.PlanarYUVLuminanceSource;
+import com.google.zxing.PresetListReader;
+import com.google.zxing.Result;
+import com.google.zxing.ResultPoint;
+import com.google.zxing.ResultPointCallback;
+import com.google.zxing.common.ParallelHybridBinarizer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+
+/**
+ * The decode core of the scanner: picks threshold settings for each frame, filters,
+ * thresholds and reads it, and keeps the state that carries over from frame to frame
+ * (tracked region, fused frames, learned settings).
+ * <p>
+ * This has no Android dependencies, so frames can be decoded on any JVM.
+ * {@link BarcodeScanner} wraps it with the camera and previews, and {@link FrameReplay}
+ * runs it over recorded frames from the command line.
+ * <p>
+ * An instance should only decode on one thread at a time. Settings can be changed from any thread.
+ */
+public class FrameDecoder {
+    // Search range. Expand for slower but more extensive checks
+    private static final int SCALE_MAX = 7; // 128-pixel spans
+    private static final int SCALE_MIN = 4; // 16-pixel spans
+    private static final int EXPOSURE_MAX = 12; // darkest exposure test (we assume codes are more likely to be faded than too dark)
+    private static final int EXPOSURE_MIN = -4; // lightest exposure test
+    private static final int EXPOSURE_STEP = 4; // exposure change between sweep or scheduler attempts
+    private static final int MORPH_TEST = 2; // morph scale the scheduler can try, as well as none
+
+    private static final int FUSION_MOTION_LIMIT = 1; // pixels of drift between frames that are still averaged
+
+    private volatile PresetListReader zxingReader;
+    private volatile Consumer<String> warningTrigger;
+    private volatile ResultPointCallback resultPointCallback;
+
+    private volatile ParameterSweep parameterSweep; // if not null, each frame is tried with many settings at once
+    private volatile ParameterScheduler scheduler; // if not null, learns which settings work and tries them first
+    private volatile RegionTracker regionTracker = new RegionTracker(0); // picks the part of each frame to scan
+    private volatile CoarseLocator coarseLocator; // if not null, large codes are found in a shrunk frame first
+    private volatile FrameFusion frameFusion; // if not null, recent frames are averaged to reduce noise
+    private volatile FrameQuality qualityGate; // if not null, blurred and blank frames are skipped before decoding
+    private volatile DecodeMetrics metrics; // if not null, stage timings and reader counts are recorded
+    private volatile boolean exposureBatch; // if true, every exposure and polarity is thresholded in one pass per frame
+    private volatile boolean sharedOneDRows; // if true, the 1D readers share the work of each scan line
+    private volatile LocalVarianceBinarizer.Method varianceMethod; // if not null, the manual cycle also thresholds by local variance
+    private volatile boolean hybridFallback; // if true, frames that miss are tried again with HybridBinarizer
+
+    // Manual threshold cycle
+    private boolean invert = false;
+    private boolean varianceTurn = false;
+    private volatile int morphScale = 0;
+    private volatile int fourierScale = 0;
+    private volatile int testScale = SCALE_MAX;
+    private volatile int testExposure = EXPOSURE_MAX;
+
+    private final LowPassFilter lowPass = new LowPassFilter();
+    private final ParallelHybridBinarizer.Scratch hybridScratch = new ParallelHybridBinarizer.Scratch();
+    private FramePoints framePoints; // where the main reader's result points go for the frame being decoded
+    private BinaryBitmap lastBitmap;
+    private int lastFrameWidth;
+    private int lastFrameHeight;
+
+    public FrameDecoder() {
+        // Set up ZX-ing reader
+        zxingReader = createMainReader();
+    }
+
+    /** Create the reader used on the decoding thread, which reports to this decoder's tracker and metrics */
+    private PresetListReader createMainReader() {
+        var reader = createReader(sharedOneDRows);
+        reader.setResultPointCallback(this::onPossibleResultPoint);
+        reader.setDecodeListener(metrics);
+        return reader;
+    }
+
+    /** Create a reader for all the formats we scan for */
+    private static PresetListReader createReader(boolean groupOneD) {
+        var reader = new PresetListReader();
+        reader.setTryHarder(true);
+        reader.setGroupOneD(groupOneD);
+        reader.add(BarcodeFormat.QR_CODE);
+        reader.add(BarcodeFormat.CODE_128);
+        reader.add(BarcodeFormat.ITF);
+        reader.add(BarcodeFormat.DATA_MATRIX);
+        return reader;
+    }
+
+    /** Create a reader for a sweep worker, which reports possible result points to the sweep */
+    private PresetListReader createSweepReader(ResultPointCallback points) {
+        var reader = createReader(sharedOneDRows);
+        reader.setResultPointCallback(points);
+        return reader;
+    }
+
+    /** Create a reader for codes that can be found in a shrunk frame.
+     * 1D codes don't survive shrinking well, so they are only read at full size. */
+    private static PresetListReader createCoarseReader() {
+        var reader = new PresetListReader();
+        reader.setTryHarder(true);
+        reader.add(BarcodeFormat.QR_CODE);
+        reader.add(BarcodeFormat.DATA_MATRIX);
+        return reader;
+    }
+
+    /** (Optional) Set a callback that is given a message when a code is found but can't be read */
+    public void setWarningTrigger(Consumer<String> warning) {
+        warningTrigger = warning;
+    }
+
+    /** (Optional) Set a callback that is given possible parts of codes (like QR finder patterns) as they are found.
+     * This is called on the decoding thread, or with the parallel sweep, on the sweep's threads one at a time. */
+    public void setResultPointCallback(ResultPointCallback callback) {
+        resultPointCallback = callback;
+    }
+
+    /** Forget everything carried over from earlier frames: tracked region, fused frames and quality history */
+    public void reset() {
+        regionTracker.reset();
+        var fusion = frameFusion;
+        if (fusion != null) fusion.reset();
+        var gate = qualityGate;
+        if (gate != null) gate.reset();
+    }
+
+    /** Stop any worker threads. Settings can still be changed and frames decoded after this. */
+    public void shutdown() {
+        setParallelSweep(0);
+    }
+
+    /** Thresholded image from the last frame decoded, or null if it was skipped */
+    public BinaryBitmap getLastBitmap() {
+        return lastBitmap;
+    }
+
+    /** Blur out detail finer than this scale before thresholding. Zero (the default) doesn't blur. */
+    public void setFourierScale(int scale) {
+        fourierScale = scale;
+    }
+
+    /** Manually set threshold exposure */
+    public void setExposure(int exposure) {
+        testExposure = exposure;
+    }
+
+    /** Manually set threshold scale */
+    public void setThresholdScale(int scale) {
+        testScale = scale;
+    }
+
+    /** Manually set morphological opening scale. Zero (the default) doesn't open. */
+    public void setMorphScale(int scale) {
+        morphScale = scale;
+    }
+
+    /**
+     * Set the number of threads used to try many threshold settings on each frame.
+     * Each frame is tried with every scale and exposure in the search range, normal and inverted,
+     * starting with the manually set scale and exposure. The first successful decode stops the rest.
+     * Zero (the default) tries one setting per frame.
+     */
+    public void setParallelSweep(int threads) {
+        var old = parameterSweep;
+        parameterSweep = threads > 0 ? new ParameterSweep(threads, this::createSweepReader) : null;
+        if (old != null) old.shutdown();
+    }
+
+    /**
+     * If `true`, threshold settings are picked by how often they have been finding codes recently,
+     * instead of using the manual scale and exposure. This works with or without the parallel sweep.
+     * Turning this on when it is already on keeps what has been learned.
+     * Default is `false`
+     */
+    public void setAdaptiveScheduling(boolean enabled) {
+        if (!enabled) {
+            scheduler = null;
+        } else if (scheduler == null) {
+            scheduler = new ParameterScheduler(searchSpace(new int[]{0, MORPH_TEST}), System.nanoTime());
+        }
+    }
+
+    /** The adaptive scheduler, so what it has learned can be saved and loaded. Null if scheduling is off. */
+    public ParameterScheduler getScheduler() {
+        return scheduler;
+    }
+
+    /**
+     * If `true`, each frame is thresholded at every exposure in the search range, normal and
+     * inverted, in one pass that works out the local mean once. Readers try each in turn,
+     * starting with the exposure that would have been picked for this frame, so an exposure
+     * that works is found in one frame instead of several. Misses take longer, as every
+     * output is read. Not used with the parallel sweep, which has its own search.
+     * Default is `false`
+     */
+    public void setExposureBatch(boolean enabled) {
+        exposureBatch = enabled;
+    }
+
+    /**
+     * If `true`, the 1D readers (Code 128 and ITF) share the work of each scan line: each line is
+     * thresholded and reversed once, and both readers are tried on it, rather than each reader
+     * going over the whole frame in turn. Frames with no 1D code are quicker. A frame with codes
+     * of both 1D formats may give either. The parallel sweep is restarted to pick this up.
+     * Default is `false`
+     */
+    public synchronized void setSharedOneDRows(boolean enabled) {
+        sharedOneDRows = enabled;
+        zxingReader = createMainReader();
+        var sweep = parameterSweep;
+        if (sweep != null) setParallelSweep(sweep.getThreads());
+    }
+
+    /**
+     * Set a local variance formula to alternate with the unsharp mask in the manual threshold cycle.
+     * Not used by adaptive scheduling, the parallel sweep or exposure batching, which only try
+     * unsharp mask settings. Null (the default) only uses the unsharp mask.
+     */
+    public void setVarianceThreshold(LocalVarianceBinarizer.Method method) {
+        varianceMethod = method;
+    }
+
+    /**
+     * If `true`, a frame that misses with its threshold settings is thresholded again by
+     * ZXing's HybridBinarizer, which has no settings to get wrong, and read once more.
+     * The hybrid thresholder is split over the common fork-join pool, so this adds much less
+     * than a second decode to frames that miss, and nothing to frames that hit.
+     * Not used with the parallel sweep, which has its own search.
+     * Default is `false`
+     */
+    public void setHybridFallback(boolean enabled) {
+        hybridFallback = enabled;
+    }
+
+    /**
+     * Set the number of frames in a row that can miss around the last detected code
+     * before scanning the whole frame again.
+     * Zero (the default) always scans the whole frame.
+     */
+    public void setRegionTracking(int missLimit) {
+        regionTracker = new RegionTracker(missLimit);
+    }
+
+    /**
+     * Set the number of recent frames averaged together before thresholding.
+     * Zero or one (the default) scans each frame on its own.
+     */
+    public void setFrameFusion(int frames) {
+        frameFusion = frames > 1 ? new FrameFusion(frames, FUSION_MOTION_LIMIT) : null;
+    }
+
+    /**
+     * If `true`, frames much blurrier than recent ones, or with almost no contrast,
+     * are skipped before thresholding. Default is `false`
+     */
+    public void setQualityGate(boolean enabled) {
+        qualityGate = enabled ? new FrameQuality() : null;
+    }
+
+    /**
+     * Record stage timings and reader counts here. Null (the default) records nothing.
+     * The decoder laps the stages up to {@link DecodeMetrics.Stage#DECODE}; the caller
+     * counts frames and records the whole frame time.
+     */
+    public synchronized void setMetrics(DecodeMetrics m) {
+        metrics = m;
+        zxingReader.setDecodeListener(m);
+    }
+
+    /** Where stage timings are being recorded, or null if they aren't */
+    public DecodeMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * If `true`, frames scanned with the larger threshold scales (6 and 7) are first searched
+     * at half or quarter size. If a code is found there, the region around it is thresholded
+     * and decoded at full size first. If that misses, the whole frame is scanned as normal.
+     * Not used with the parallel sweep, which tries every scale at once.
+     * Default is `false`
+     */
+    public void setPyramidDetection(boolean enabled) {
+        coarseLocator = enabled ? new CoarseLocator(FrameDecoder::createCoarseReader) : null;
+    }
+
+    /** The main reader reports possible parts of codes here, during decoding */
+    private void onPossibleResultPoint(ResultPoint point) {
+        var points = framePoints;
+        if (points != null) points.foundPossibleResultPoint(point);
+    }
+
+    /**
+     * Passes possible result points to the tracker of one frame, and to the caller's callback,
+     * until closed. Sweep workers report from their own threads, and may still be stopping
+     * after the frame is done, so points are taken one at a time and dropped once closed.
+     */
+    private class FramePoints implements ResultPointCallback {
+        private final RegionTracker tracker;
+        private boolean open = true;
+
+        FramePoints(RegionTracker tracker) {
+            this.tracker = tracker;
+        }
+
+        @Override
+        public synchronized void foundPossibleResultPoint(ResultPoint point) {
+            if (!open) return;
+            tracker.foundPossibleResultPoint(point);
+
+            var callback = resultPointCallback;
+            if (callback != null) callback.foundPossibleResultPoint(point);
+        }
+
+        /** Drop any more points. Points already taken are visible to the caller after this. */
+        synchronized void close() {
+            open = false;
+        }
+    }
+
+    private Result tryToFindBarCodeInBitmap(BinaryBitmap binMap) {
+        var reader = zxingReader;
+        try {
+            reader.reset();
+            return reader.decode(binMap);
+        } catch (com.google.zxing.NotFoundException nf) {
+            // No code found. This is fine
+        } catch (Exception e) {
+            // If the capture is blurry or not at a good angle, we probably get a checksum error here.
+            warn("Could not read bar-code: " + e);
+        }
+        return null;
+    }
+
+    private void warn(String msg) {
+        var warning = warningTrigger;
+        if (warning != null) warning.accept(msg);
+    }
+
+    /**
+     * Continually cycle through the various settings of UnsharpMaskBinarizer,
+     * or take the scheduler's choice if adaptive scheduling is on.
+     * If a local variance method is set, every other normal/inverted pair uses LocalVarianceBinarizer.
+     */
+    private ThresholdParameters pickThresholdParameters() {
+        var learner = scheduler;
+        if (learner != null) {
+            var p = learner.next();
+            invert = p.invert;
+            return p;
+        }
+
+        invert = !invert; // Alternate inverted and not
+        var method = varianceMethod;
+        if (invert) varianceTurn = method != null && !varianceTurn; // Then alternate strategy after each pair
+        return new ThresholdParameters(testScale, testExposure, invert, morphScale, varianceTurn ? method : null);
+    }
+
+    private static Binarizer createBinarizer(LuminanceSource lum, ThresholdParameters p) {
+        // Local mean and deviation thresholder
+        if (p.variance != null) return new LocalVarianceBinarizer(lum, p.variance, p.invert, p.scale, p.exposure, p.morph);
+
+        // UMB thresholder
+        return new UnsharpMaskBinarizer(lum, p.invert, p.scale, p.exposure, p.morph);
+    }
+
+    /** Every threshold setting in the search range */
+    private static List<ThresholdParameters> searchSpace(int[] morphs) {
+        var list = new ArrayList<ThresholdParameters>();
+        for (int morph : morphs) {
+            for (int scale = SCALE_MAX; scale >= SCALE_MIN; scale--) {
+                for (int exposure = EXPOSURE_MAX; exposure >= EXPOSURE_MIN; exposure -= EXPOSURE_STEP) {
+                    list.add(new ThresholdParameters(scale, exposure, false, morph));
+                    list.add(new ThresholdParameters(scale, exposure, true, morph));
+                }
+            }
+        }
+        return list;
+    }
+
+    /** All threshold settings in the search range: best first if scheduling, otherwise manual settings first */
+    private List<ThresholdParameters> sweepParameters() {
+        var learner = scheduler;
+        if (learner != null) return learner.order();
+
+        var list = new ArrayList<ThresholdParameters>();
+        var morph = morphScale;
+        list.add(new ThresholdParameters(testScale, testExposure, false, morph));
+        list.add(new ThresholdParameters(testScale, testExposure, true, morph));
+
+        for (ThresholdParameters p : searchSpace(new int[]{morph})) {
+            if (!list.contains(p)) list.add(p);
+        }
+        return list;
+    }
+
+    /** The given settings first, then every other exposure and polarity at the same scale and morph */
+    private static List<ThresholdParameters> exposureBatch(ThresholdParameters first) {
+        var list = new ArrayList<ThresholdParameters>();
+        list.add(first);
+        for (int exposure = EXPOSURE_MAX; exposure >= EXPOSURE_MIN; exposure -= EXPOSURE_STEP) {
+            for (boolean inverted : new boolean[]{first.invert, !first.invert}) {
+                var p = new ThresholdParameters(first.scale, exposure, inverted, first.morph);
+                if (!list.contains(p)) list.add(p);
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Filter, threshold and read a frame. The frame's pixels may be changed (by fusion and the low-pass filter).
+     * Returns the outcome and the settings used, with the result points in frame coordinates.
+     * The thresholded image is then available from {@link #getLastBitmap()}.
+     */
+    public ScanAttempt decode(ByteImage image) throws InterruptedException {
+        var startTime = System.nanoTime();
+        var stats = metrics;
+        var mark = startTime; // start of the current stage, for metrics
+        lastBitmap = null;
+
+        var fusion = frameFusion;
+        var fused = fusion != null ? fusion.apply(image) : 1;
+        if (fusion != null) mark = lap(stats, DecodeMetrics.Stage.FUSION, mark);
+
+        // Skip frames that could never decode, before any thresholding or reading
+        var gate = qualityGate;
+        var accepted = gate == null || gate.accept(image);
+        if (gate != null) mark = lap(stats, DecodeMetrics.Stage.QUALITY, mark);
+        if (!accepted) {
+            var attempt = new ScanAttempt();
+            attempt.decodeNanos = System.nanoTime() - startTime;
+            attempt.fourier = fourierScale;
+            attempt.fused = fused;
+            attempt.rejected = true;
+            attempt.sharpness = gate.getSharpness();
+            attempt.contrast = gate.getContrast();
+            return attempt;
+        }
+
+        var fourier = fourierScale;
+        if (fourier > 0) {
+            // Blur out detail finer than the Fourier scale. This is Gaussian-like, so the cost doesn't depend on the scale.
+            lowPass.apply(image.image, image.width, image.height, LowPassFilter.radiusForScale(fourier));
+            mark = lap(stats, DecodeMetrics.Stage.FOURIER, mark);
+        }
+
+        LuminanceSource lum = new PlanarYUVLuminanceSource(
+                image.image, image.width, image.height,
+                0, 0, image.width, image.height, false);
+
+        // If we saw a code recently, only look around where it was.
+        // Locations are no good if the frame size has changed.
+        var tracker = regionTracker;
+        if (image.width != lastFrameWidth || image.height != lastFrameHeight) {
+            lastFrameWidth = image.width;
+            lastFrameHeight = image.height;
+            tracker.reset();
+        }
+        var tracked = tracker.beginScan(image.width, image.height);
+        if (tracked) lum = lum.crop(tracker.left(), tracker.top(), tracker.width(), tracker.height());
+
+        // Possible result points go to this frame's tracker, even if tracking is changed part way through
+        var points = new FramePoints(tracker);
+        framePoints = points;
+
+        BinaryBitmap binMap;
+        Result result;
+        ThresholdParameters settings;
+        var hybrid = false;
+        var sweep = parameterSweep;
+        var learner = scheduler;
+        if (sweep != null) {
+            // Try lots of settings at once, and keep the first that works
+            var candidates = sweepParameters();
+            ParameterSweep.Hit hit;
+            try {
+                hit = sweep.scan(lum, candidates, points);
+            } finally {
+                points.close(); // workers still stopping can't report into the next frame
+            }
+            mark = lap(stats, DecodeMetrics.Stage.DECODE, mark);
+            if (hit != null) {
+                invert = hit.parameters.invert;
+                settings = hit.parameters;
+                binMap = hit.bitmap;
+                result = hit.result;
+                if (learner != null) {
+                    // Settings that ran to the end and missed count against themselves, as on a frame with no hit
+                    learner.record(hit.misses, false);
+                    learner.record(settings, true);
+                }
+            } else {
+                settings = pickThresholdParameters();
+                binMap = new BinaryBitmap(createBinarizer(lum, settings));
+                result = null;
+                if (learner != null) learner.record(candidates, false);
+            }
+        } else {
+            // Rotate around a set of different image transforms.
+            // Hopefully at least one of them will capture correctly.
+            settings = pickThresholdParameters();
+            var region = lum;
+            if (!tracked && coarseLocator != null) {
+                region = locateOnPyramid(lum, settings, tracker);
+                mark = lap(stats, DecodeMetrics.Stage.PYRAMID, mark);
+            }
+            MultiThresholdBinarizer batch;
+            int batchHit; // index in the batch of the output that decoded
+            while (true) {
+                batch = exposureBatch && settings.variance == null ? new MultiThresholdBinarizer(region, exposureBatch(settings)) : null;
+
+                // Convert greyscale to B&W
+                binMap = batch != null ? batch.getBitmaps().get(0) : new BinaryBitmap(createBinarizer(region, settings));
+                if (stats != null) {
+                    // Readers threshold on demand. Do it up front, so it can be timed on its own.
+                    // The bitmap keeps the matrix, so this adds no work.
+                    try {
+                        binMap.getBlackMatrix();
+                    } catch (NotFoundException e) {
+                        // Too small to threshold. The readers will find nothing either.
+                    }
+                    mark = lap(stats, DecodeMetrics.Stage.THRESHOLD, mark);
+                }
+
+                // Scan for codes
+                result = tryToFindBarCodeInBitmap(binMap);
+                batchHit = 0;
+                if (batch != null) {
+                    // Every exposure was thresholded with the first, so try the rest on this frame
+                    for (int i = 1; i < batch.size() && result == null; i++) {
+                        var bitmap = batch.getBitmaps().get(i);
+                        result = tryToFindBarCodeInBitmap(bitmap);
+                        if (result != null) {
+                            batchHit = i;
+                            settings = batch.getSettings(i);
+                            invert = settings.invert;
+                            binMap = bitmap;
+                        }
+                    }
+                }
+                mark = lap(stats, DecodeMetrics.Stage.DECODE, mark);
+                if (result != null || region == lum) break;
+
+                // The coarse sighting didn't decode at full size. It may have been a false one,
+                // or a code that can't be read, hiding a readable one (like a 1D code) elsewhere.
+                // So scan the whole frame as normal.
+                tracker.useRegion(0, 0, image.width, image.height);
+                region = lum;
+            }
+            if (learner != null) {
+                if (batch == null) {
+                    learner.record(settings, result != null);
+                } else if (result != null) {
+                    // Outputs read before the hit missed, as on a frame with no hit
+                    for (int i = 0; i < batchHit; i++) learner.record(batch.getSettings(i), false);
+                    learner.record(settings, true);
+                } else {
+                    learner.record(exposureBatch(settings), false);
+                }
+            }
+            if (result == null && hybridFallback) {
+                // Settings-free threshold. Its matrix is reused by the next frame's fallback.
+                var fallback = new BinaryBitmap(new ParallelHybridBinarizer(lum, ForkJoinPool.commonPool(), hybridScratch));
+                if (stats != null) {
+                    try {
+                        fallback.getBlackMatrix();
+                    } catch (NotFoundException e) {
+                        // Too small to threshold
+                    }
+                    mark = lap(stats, DecodeMetrics.Stage.THRESHOLD, mark);
+                }
+                result = tryToFindBarCodeInBitmap(fallback);
+                lap(stats, DecodeMetrics.Stage.DECODE, mark);
+                if (result != null) {
+                    hybrid = true;
+                    binMap = fallback;
+                }
+            }
+        }
+        points.close();
+        framePoints = null;
+        result = tracker.endScan(result); // result points back to frame coordinates
+        lastBitmap = binMap;
+
+        var attempt = new ScanAttempt();
+        attempt.decodeNanos = System.nanoTime() - startTime;
+        attempt.invert = settings.invert;
+        attempt.scale = settings.scale;
+        attempt.exposure = settings.exposure;
+        attempt.morph = settings.morph;
+        attempt.variance = settings.variance;
+        attempt.hybrid = hybrid;
+        attempt.fourier = fourier;
+        attempt.tracked = tracked;
+        attempt.fused = fused;
+        if (gate != null) {
+            attempt.sharpness = gate.getSharpness();
+            attempt.contrast = gate.getContrast();
+        }
+        attempt.result = result;
+        return attempt;
+    }
+
+    /** Record the time since `start` against a stage, if metrics are on. Returns the start of the next stage. */
+    private static long lap(DecodeMetrics stats, DecodeMetrics.Stage stage, long start) {
+        return stats == null ? start : stats.lap(stage, start);
+    }
+
+    /**
+     * If pyramid detection is on and the threshold scale is large enough, look for a code in a
+     * shrunk copy of the frame, and return just the region around it. Otherwise, returns the frame.
+     * The region is always big enough for the threshold window at the given settings.
+     */
+    private LuminanceSource locateOnPyramid(LuminanceSource lum, ThresholdParameters settings, RegionTracker tracker) {
+        var locator = coarseLocator;
+        var level = LuminancePyramid.levelForScale(settings.scale);
+        if (locator == null || level < 1) return lum;
+
+        // Features are smaller in the shrunk frame, so use a smaller scale and morph there
+        var coarse = new ThresholdParameters(LuminancePyramid.coarseScale(level), settings.exposure, settings.invert, settings.morph >> level, settings.variance);
+        if (!locator.locate(lum, level, l -> createBinarizer(l, coarse), 2 << settings.scale)) return lum;
+
+        tracker.useRegion(locator.left(), locator.top(), locator.width(), locator.height());
+        return lum.crop(locator.left(), locator.top(), locator.width(), locator.height());
+    }
+}
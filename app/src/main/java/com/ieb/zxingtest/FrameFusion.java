@@ -0,0 +1,223 @@
+package com.ieb.zxingtest;
+
+import java.util.Arrays;
+
+/**
+ * Averages the last few frames together, to cut sensor noise before thresholding.
+ * <p>
+ * Averaging N frames of a still scene cuts random noise by about the square root of N, which
+ * helps most with faint prints where the noise is close to the ink contrast. If the scene moves,
+ * averaging would smear it. Frames are not shifted into line; instead, fusion only goes on while
+ * the scene holds still. Each frame's movement since the one before is measured from the row and
+ * column sums of each (sums average out the noise that would swamp a pixel by pixel comparison),
+ * and the movements are added up, so a slow steady drift is caught as well as a sudden jump.
+ * If the frame has moved more than the motion limit from any frame still in the history, or
+ * still differs by too much at the best match, the history is dropped and fusion starts again
+ * from that frame.
+ * <p>
+ * Copies of recent frames and a running sum per pixel are kept between calls, so nothing is
+ * allocated unless the frame size changes. An instance should only be used by one thread at a time.
+ */
+public class FrameFusion {
+    private static final int SAMPLE_STEP = 4; // profiles sum every 4th pixel across, or every 4th row down
+    private static final int MAX_SHIFT = 8; // largest movement looked for, in pixels
+    private static final int CHANGE_LIMIT = 4; // mean luminance difference of lined up profiles that means the scene changed
+    private static final int NO_MATCH = Integer.MAX_VALUE;
+    private static final int MAX_DEPTH = 16; // keeps the history to a sensible size, and the fixed point sums in range
+
+    private final int depth;
+    private final int motionLimit;
+
+    private byte[] history; // last `depth` raw frames, one after another
+    private int[] sums; // sum of each pixel over the frames in history
+    private int width;
+    private int height;
+    private int count; // frames in the history
+    private int next; // history slot for the next frame
+    private int lastMotion;
+
+    // Position of the scene in each history slot, and in the newest frame, by adding up the movement between frames
+    private final int[] slotX, slotY;
+    private int positionX, positionY;
+
+    // Row and column luminance sums of this frame and the one before
+    private int[] rowProfile, columnProfile;
+    private int[] lastRowProfile, lastColumnProfile;
+
+    /**
+     * @param depth       number of frames to average, up to 16. 1 or less does nothing.
+     * @param motionLimit largest shift between frames, in pixels, that will still be averaged
+     */
+    public FrameFusion(int depth, int motionLimit) {
+        this.depth = Math.max(1, Math.min(depth, MAX_DEPTH));
+        this.motionLimit = motionLimit;
+        slotX = new int[this.depth];
+        slotY = new int[this.depth];
+    }
+
+    /**
+     * Add a frame to the history, and replace its pixels with the average of the history.
+     * Returns the number of frames that went into the average.
+     */
+    public int apply(ByteImage frame) {
+        if (depth < 2) return 1;
+
+        var size = frame.width * frame.height;
+        if (frame.width != width || frame.height != height || history == null) {
+            width = frame.width;
+            height = frame.height;
+            if (history == null || history.length < size * depth) history = new byte[size * depth];
+            if (sums == null || sums.length < size) sums = new int[size];
+            rowProfile = new int[height];
+            lastRowProfile = new int[height];
+            columnProfile = new int[width];
+            lastColumnProfile = new int[width];
+            count = 0;
+            next = 0;
+        }
+
+        measureProfiles(frame.image);
+        lastMotion = 0;
+        if (count > 0) {
+            var dy = bestShift(rowProfile, lastRowProfile, width / SAMPLE_STEP);
+            var dx = bestShift(columnProfile, lastColumnProfile, height / SAMPLE_STEP);
+            lastMotion = Math.max(Math.abs(dx), Math.abs(dy));
+            if (lastMotion == NO_MATCH) {
+                count = 0;
+            } else {
+                positionX += dx;
+                positionY += dy;
+                if (drift() > motionLimit) count = 0;
+            }
+        }
+
+        if (count == 0) {
+            next = 0;
+            positionX = 0;
+            positionY = 0;
+        }
+        var image = frame.image;
+        var slot = next * size;
+        if (count == 0) {
+            // Start again from this frame
+            for (int i = 0; i < size; i++) {
+                var v = image[i];
+                sums[i] = v & 0xFF;
+                history[slot + i] = v;
+            }
+        } else if (count < depth) {
+            for (int i = 0; i < size; i++) {
+                var v = image[i];
+                sums[i] += v & 0xFF;
+                history[slot + i] = v;
+            }
+        } else {
+            // Oldest frame drops out of the sum as this one goes in
+            for (int i = 0; i < size; i++) {
+                var v = image[i];
+                sums[i] += (v & 0xFF) - (history[slot + i] & 0xFF);
+                history[slot + i] = v;
+            }
+        }
+
+        slotX[next] = positionX;
+        slotY[next] = positionY;
+        next = (next + 1) % depth;
+        if (count < depth) count++;
+        if (count < 2) return 1;
+
+        // Divide by multiplying with a 16-bit fixed point reciprocal
+        var scale = ((1 << 16) + count / 2) / count;
+        for (int i = 0; i < size; i++) {
+            image[i] = (byte) ((sums[i] * scale + 0x8000) >>> 16);
+        }
+        return count;
+    }
+
+    /** Forget all history. The next frame starts a fresh average. */
+    public void reset() {
+        count = 0;
+        next = 0;
+    }
+
+    /**
+     * Movement between the last two frames, in pixels, along whichever axis moved most.
+     * Very large if the scene changed completely.
+     */
+    public int getLastMotion() {
+        return lastMotion;
+    }
+
+    /** Furthest the newest frame has moved from any frame staying in the history, along either axis */
+    private int drift() {
+        var most = 0;
+        for (int i = 0; i < depth; i++) {
+            if (i == next || (count < depth && i >= count)) continue; // about to be replaced, or empty
+            most = Math.max(most, Math.max(Math.abs(positionX - slotX[i]), Math.abs(positionY - slotY[i])));
+        }
+        return most;
+    }
+
+    /** Sum every few pixels of each row, and every few rows of each column. The previous sums are kept. */
+    private void measureProfiles(byte[] image) {
+        var t = lastRowProfile;
+        lastRowProfile = rowProfile;
+        rowProfile = t;
+        t = lastColumnProfile;
+        lastColumnProfile = columnProfile;
+        columnProfile = t;
+
+        Arrays.fill(columnProfile, 0, width, 0);
+        for (int y = 0; y < height; y++) {
+            var yOff = y * width;
+            var sum = 0;
+            for (int x = 0; x < width; x += SAMPLE_STEP) sum += image[yOff + x] & 0xFF;
+            rowProfile[y] = sum;
+
+            if (y % SAMPLE_STEP != 0) continue;
+            for (int x = 0; x < width; x++) columnProfile[x] += image[yOff + x] & 0xFF;
+        }
+    }
+
+    /**
+     * Offset that best lines up two profiles, or NO_MATCH if even the best offset leaves them too different.
+     * The mean difference is taken out first, so a change in exposure isn't seen as movement.
+     * @param samples number of pixels summed into each profile entry
+     */
+    private static int bestShift(int[] current, int[] previous, int samples) {
+        var length = current.length;
+        if (length <= 2 * MAX_SHIFT || samples < 1) return 0;
+
+        var best = 0;
+        var bestError = Long.MAX_VALUE;
+        var stillError = 0L;
+        for (int shift = -MAX_SHIFT; shift <= MAX_SHIFT; shift++) {
+            var start = Math.max(0, -shift);
+            var end = Math.min(length, length - shift);
+
+            long offset = 0;
+            for (int i = start; i < end; i++) offset += current[i] - previous[i + shift];
+            offset /= (end - start);
+
+            long error = 0;
+            for (int i = start; i < end; i++) error += Math.abs(current[i] - previous[i + shift] - offset);
+            error = error * length / (end - start); // so shorter overlaps aren't favoured
+            if (shift == 0) stillError = error;
+
+            if (error < bestError || (error == bestError && Math.abs(shift) < Math.abs(best))) {
+                bestError = error;
+                best = shift;
+            }
+        }
+
+        // On a plain or noisy scene every offset matches about as well, so only
+        // believe there was movement if it lines up clearly better than none
+        if (bestError * 10 > stillError * 9) {
+            best = 0;
+            bestError = stillError;
+        }
+
+        var meanChange = bestError / ((long) length * samples);
+        return meanChange > CHANGE_LIMIT ? NO_MATCH : best;
+    }
+}
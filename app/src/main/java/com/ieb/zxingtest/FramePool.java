@@ -0,0 +1,116 @@
+package com.ieb.zxingtest;
+
+import java.util.ArrayDeque;
+
+/**
+ * A fixed set of reusable frames, passed between a frame source and the scanner.
+ * <p>
+ * The source {@link #acquire()}s a free frame, fills it, and hands it on with {@link #offer(ByteImage)}
+ * or {@link #put(ByteImage)}. The consumer {@link #take(long)}s it, and must {@link #release(ByteImage)}
+ * it when done. A frame is only ever held by one side at a time, so the camera can't write over
+ * pixels that are still being decoded, and no frame-sized arrays are allocated after warm-up.
+ * <p>
+ * When the consumer falls behind, the oldest frame it hasn't claimed yet is dropped and reused.
+ */
+public class FramePool {
+    private final ArrayDeque<ByteImage> free;
+    private final ArrayDeque<ByteImage> waiting;
+    private final int depth;
+    private long dropped;
+    private long starved;
+
+    /**
+     * @param depth most frames waiting for the consumer at once. 1 gives the lowest latency.
+     *              Two more frames are kept: one being filled, and one being consumed.
+     */
+    public FramePool(int depth) {
+        this.depth = Math.max(depth, 1);
+        free = new ArrayDeque<>(this.depth + 2);
+        waiting = new ArrayDeque<>(this.depth);
+        for (int i = 0; i < this.depth + 2; i++) free.add(new ByteImage());
+    }
+
+    /** Most frames that can wait for the consumer at once */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Get a frame to write into. The image array may be null or too small: size it before use.
+     * If no frame is free, the oldest waiting frame is dropped and given out instead.
+     * Returns null only if every frame is held elsewhere.
+     */
+    public synchronized ByteImage acquire() {
+        var frame = free.pollFirst();
+        if (frame == null) {
+            frame = waiting.pollFirst();
+            if (frame != null) dropped++;
+            else starved++;
+        }
+        return frame;
+    }
+
+    /**
+     * Hand a filled frame to the consumer without waiting.
+     * If the queue was full, the oldest waiting frame is dropped, and true is returned.
+     */
+    public synchronized boolean offer(ByteImage frame) {
+        var full = waiting.size() >= depth;
+        if (full) {
+            free.addLast(waiting.pollFirst());
+            dropped++;
+        }
+        waiting.addLast(frame);
+        notifyAll();
+        return full;
+    }
+
+    /** Hand a filled frame to the consumer, waiting for space rather than dropping older frames.
+     * If interrupted, the frame is released back to the pool. */
+    public synchronized void put(ByteImage frame) throws InterruptedException {
+        try {
+            while (waiting.size() >= depth) wait();
+        } catch (InterruptedException e) {
+            free.addLast(frame);
+            throw e;
+        }
+        waiting.addLast(frame);
+        notifyAll();
+    }
+
+    /** Wait up to `timeoutMillis` for the next frame. Returns null if nothing arrived in time. */
+    public synchronized ByteImage take(long timeoutMillis) throws InterruptedException {
+        var end = System.currentTimeMillis() + timeoutMillis;
+        while (waiting.isEmpty()) {
+            var remaining = end - System.currentTimeMillis();
+            if (remaining <= 0) return null;
+            wait(remaining);
+        }
+        var frame = waiting.pollFirst();
+        notifyAll();
+        return frame;
+    }
+
+    /** Give a frame back to the pool, from either side. The frame must not be used afterwards. */
+    public synchronized void release(ByteImage frame) {
+        if (frame == null) return;
+        free.addLast(frame);
+        notifyAll();
+    }
+
+    /** Release every waiting frame */
+    public synchronized void drain() {
+        while (!waiting.isEmpty()) free.addLast(waiting.pollFirst());
+        notifyAll();
+    }
+
+    /** Number of frames dropped so far because the consumer hadn't claimed them in time */
+    public synchronized long getDroppedFrames() {
+        return dropped;
+    }
+
+    /** Number of times {@link #acquire()} found every frame held elsewhere, so the source had nowhere to write */
+    public synchronized long getStarvedFrames() {
+        return starved;
+    }
+}
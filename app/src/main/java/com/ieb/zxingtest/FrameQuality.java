@@ -0,0 +1,103 @@
+package com.ieb.zxingtest;
+
+import java.util.Arrays;
+
+/**
+ * Cheap sharpness and contrast scores for a frame, used to skip frames that could never decode.
+ * <p>
+ * Sharpness is the mean gradient energy (squared difference to the next pixel across and down),
+ * taken at every few pixels of every few rows. Motion blur and a lens hunting for focus wipe out
+ * the fine edges a code is made of, and this drops sharply with them. Contrast is the spread
+ * between the dark and light ends of the luminance histogram of the same samples.
+ * <p>
+ * Sharpness depends on the scene as much as the focus, so there is no fixed limit. Instead,
+ * each frame is compared with a reference that follows the sharpest recent frames and slowly
+ * decays, so a drop in focus is rejected but a move to a plainer scene is accepted after a moment.
+ * Buffers are kept between calls. An instance should only be used by one thread at a time.
+ */
+public class FrameQuality {
+    private static final int SAMPLE_STEP = 4; // score every 4th pixel of every 4th row
+    private static final int DARK_PERCENTILE = 5;
+    private static final int LIGHT_PERCENTILE = 95;
+    private static final int MIN_CONTRAST = 12; // luminance spread below this is a blank or covered view
+    private static final double REJECT_FRACTION = 0.1; // energy is squared, so this is about a third of the edge strength
+    private static final double REFERENCE_DECAY = 0.97; // reference sharpness kept each frame, if not topped up
+
+    private final int[] histogram = new int[256];
+    private double reference;
+    private double sharpness;
+    private int contrast;
+
+    /**
+     * Score a frame, and decide if it's worth decoding.
+     * Returns false if the frame is much blurrier than recent frames, or has almost no contrast.
+     * The scores can be read afterwards with {@link #getSharpness()} and {@link #getContrast()}.
+     */
+    public boolean accept(ByteImage frame) {
+        measure(frame.image, frame.width, frame.height);
+
+        if (contrast < MIN_CONTRAST) return false;
+
+        reference = Math.max(sharpness, reference * REFERENCE_DECAY);
+        return sharpness >= reference * REJECT_FRACTION;
+    }
+
+    /** Forget recent frames. The next frame sets a new reference. */
+    public void reset() {
+        reference = 0.0;
+    }
+
+    /** Mean squared luminance step between neighbouring pixels, from the last frame scored */
+    public double getSharpness() {
+        return sharpness;
+    }
+
+    /** Luminance spread between the 5th and 95th percentiles, from the last frame scored */
+    public int getContrast() {
+        return contrast;
+    }
+
+    /** Sharpness of recent frames that each new frame is compared with */
+    public double getReference() {
+        return reference;
+    }
+
+    private void measure(byte[] image, int width, int height) {
+        Arrays.fill(histogram, 0);
+        long energy = 0;
+        int samples = 0;
+
+        // Stop one short of the right and bottom edges, so each sample has a neighbour
+        for (int y = 0; y < height - 1; y += SAMPLE_STEP) {
+            var yOff = y * width;
+            for (int x = 0; x < width - 1; x += SAMPLE_STEP) {
+                var i = yOff + x;
+                var v = image[i] & 0xFF;
+                var dx = (image[i + 1] & 0xFF) - v;
+                var dy = (image[i + width] & 0xFF) - v;
+                energy += dx * dx + dy * dy;
+                histogram[v]++;
+                samples++;
+            }
+        }
+
+        if (samples < 1) {
+            sharpness = 0.0;
+            contrast = 0;
+            return;
+        }
+        sharpness = (double) energy / samples;
+        contrast = percentile(samples, LIGHT_PERCENTILE) - percentile(samples, DARK_PERCENTILE);
+    }
+
+    /** Luminance below which the given percentage of samples fall */
+    private int percentile(int samples, int percent) {
+        var target = (long) samples * percent / 100;
+        long seen = 0;
+        for (int v = 0; v < histogram.length; v++) {
+            seen += histogram[v];
+            if (seen > target) return v;
+        }
+        return histogram.length - 1;
+    }
+}
@@ -0,0 +1,143 @@
+package com.ieb.zxingtest;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Replays recorded frame dumps through a {@link FrameDecoder} on a plain JVM, then prints
+ * the capture rate, decode latency percentiles and the settings behind each hit.
+ * No camera, device or Android SDK is needed, so this can run on a build box.
+ * <p>
+ * Frames are decoded on the replay thread. When a frame rate is given, frames that come due
+ * while a decode is still running are skipped, as a camera would replace them.
+ * <p>
+ * Run with `./gradlew :benchmark:replay --args="[options] dump..."`, where each dump is a
+ * file written by {@link FileFrameSource#writeFrame}, or a directory of them.
+ */
+public class FrameReplay {
+    private static final String USAGE = String.join(System.lineSeparator(),
+            "Usage: FrameReplay [options] dump-file-or-directory...",
+            "  --fps N        replay at N frames per second (default: every frame, as fast as possible)",
+            "  --loops N      play through the dumps N times (default 1)",
+            "  --scale N      manual threshold scale",
+            "  --exposure N   manual threshold exposure",
+            "  --morph N      manual morphological opening scale",
+            "  --fourier N    low-pass filter scale",
+            "  --sweep N      try many threshold settings per frame on N threads",
+            "  --adaptive     learn which threshold settings work",
+            "  --batch        threshold every exposure in one pass",
+            "  --group1d      1D readers share the work of each scan line",
+            "  --hybrid       try HybridBinarizer on frames that miss",
+            "  --track N      scan around the last code for up to N missed frames",
+            "  --fusion N     average N frames together",
+            "  --quality      skip blurred and blank frames",
+            "  --pyramid      find large codes in a shrunk frame first",
+            "  --metrics      print stage and reader timings",
+            "  --verbose      print every frame, and codes that can't be read");
+
+    public static void main(String[] args) throws InterruptedException {
+        var files = new ArrayList<File>();
+        var decoder = new FrameDecoder();
+        var verbose = false;
+        DecodeMetrics metrics = null;
+        double fps = 0;
+        int loops = 1;
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--fps": fps = Double.parseDouble(args[++i]); break;
+                    case "--loops": loops = Integer.parseInt(args[++i]); break;
+                    case "--scale": decoder.setThresholdScale(Integer.parseInt(args[++i])); break;
+                    case "--exposure": decoder.setExposure(Integer.parseInt(args[++i])); break;
+                    case "--morph": decoder.setMorphScale(Integer.parseInt(args[++i])); break;
+                    case "--fourier": decoder.setFourierScale(Integer.parseInt(args[++i])); break;
+                    case "--sweep": decoder.setParallelSweep(Integer.parseInt(args[++i])); break;
+                    case "--adaptive": decoder.setAdaptiveScheduling(true); break;
+                    case "--batch": decoder.setExposureBatch(true); break;
+                    case "--group1d": decoder.setSharedOneDRows(true); break;
+                    case "--hybrid": decoder.setHybridFallback(true); break;
+                    case "--track": decoder.setRegionTracking(Integer.parseInt(args[++i])); break;
+                    case "--fusion": decoder.setFrameFusion(Integer.parseInt(args[++i])); break;
+                    case "--quality": decoder.setQualityGate(true); break;
+                    case "--pyramid": decoder.setPyramidDetection(true); break;
+                    case "--metrics": metrics = new DecodeMetrics(); break;
+                    case "--verbose": verbose = true; break;
+                    case "--help":
+                        System.out.println(USAGE);
+                        return;
+                    default:
+                        if (args[i].startsWith("--")) throw new IllegalArgumentException("Unknown option " + args[i]);
+                        addDumps(new File(args[i]), files);
+                        break;
+                }
+            }
+        } catch (RuntimeException e) { // bad number, missing value or unknown option
+            System.err.println(e.getMessage() == null ? e.toString() : e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+        if (files.isEmpty()) {
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+
+        decoder.setMetrics(metrics);
+        if (verbose) decoder.setWarningTrigger(System.err::println);
+
+        var stats = new ReplayStatistics();
+        var pool = new FramePool(1);
+        var done = new CountDownLatch(1);
+        var failed = new boolean[1];
+        var m = metrics;
+        var printFrames = verbose;
+        var source = new FileFrameSource(files, fps, loops, pool, frame -> {
+            try {
+                var start = System.nanoTime();
+                var attempt = decoder.decode(frame);
+                stats.accept(attempt);
+                if (m != null) {
+                    m.countFrame(attempt.rejected);
+                    m.record(DecodeMetrics.Stage.FRAME, System.nanoTime() - start);
+                }
+                if (printFrames) System.out.println(attempt);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (RuntimeException e) {
+                System.err.println("Failed to scan image: " + e);
+            } finally {
+                pool.release(frame);
+            }
+        }, error -> {
+            System.err.println(error);
+            failed[0] = true;
+            done.countDown();
+        });
+        source.onFinished(done::countDown);
+
+        source.onResume();
+        done.await();
+        source.onPause();
+        decoder.shutdown();
+
+        System.out.print(stats);
+        if (metrics != null) System.out.print(metrics.snapshot(pool, source));
+        if (failed[0]) System.exit(1);
+    }
+
+    /** Add a dump file, or every file in a directory, in name order */
+    private static void addDumps(File path, List<File> files) {
+        if (path.isFile()) {
+            files.add(path);
+            return;
+        }
+
+        var contents = path.listFiles(File::isFile);
+        if (contents == null) throw new IllegalArgumentException("No such file or directory: " + path);
+        Arrays.sort(contents);
+        files.addAll(Arrays.asList(contents));
+    }
+}
@@ -0,0 +1,43 @@
+package com.ieb.zxingtest;
+
+import java.util.function.Consumer;
+
+/**
+ * A feed of images for the barcode scanner.
+ * Frames are acquired from the {@link FramePool} given when the source is created, filled,
+ * then passed to the `updateTrigger`, which takes ownership of them.
+ */
+public interface FrameSource {
+    /** Start (or restart) delivering frames */
+    void onResume();
+
+    /** Stop delivering frames */
+    void onPause();
+
+    /** Set the capture plane returned. Defaults to the Y (luminance) plane.
+     * Plane 0=Y (Luminance); Plane 1=U (Blue/Yellow); Plane 2=V (Red/Green)
+     * Sources that only hold luminance may ignore this. */
+    void setCapturePlane(int plane);
+
+    /** If true (the default), frames arrive on the source's own clock, and the scanner drops
+     * frames it can't keep up with. If false, the source is happy to wait, and every frame is scanned. */
+    default boolean isRealTime() {
+        return true;
+    }
+
+    /** Ask for frames at a higher resolution (true), or go back to the normal resolution (false).
+     * Used when codes are seen but are too small to read. Sources with a fixed size ignore this. */
+    default void setEscalated(boolean escalated) {
+    }
+
+    /** Number of frames the source threw away before asking the pool for a frame to fill,
+     * because it was still busy with an earlier one or had fallen behind. */
+    default long getSkippedFrames() {
+        return 0;
+    }
+
+    /** Create a frame source that feeds the given callbacks */
+    interface Factory {
+        FrameSource create(FramePool framePool, Consumer<ByteImage> updateTrigger, Consumer<String> errorTrigger);
+    }
+}
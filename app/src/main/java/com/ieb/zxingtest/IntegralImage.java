@@ -0,0 +1,54 @@
+package com.ieb.zxingtest;
+
+import com.google.zxing.LuminanceSource;
+
+/**
+ * Summed-area table of a luminance image.
+ * After one pass to build it, the total of any rectangle can be read in constant time.
+ * <p>
+ * Totals are kept in ints and allowed to wrap on very large images. Rectangle sums are
+ * still exact, as long as the rectangle itself totals less than 2^31 (about 8 million pixels).
+ */
+public class IntegralImage {
+    private final int width;
+    private final int height;
+    private final int stride;
+    private final int[] table; // (width+1) * (height+1), with a zero top row and left column
+
+    /** Build the table for a luminance source */
+    public IntegralImage(LuminanceSource source) {
+        width = source.getWidth();
+        height = source.getHeight();
+        stride = width + 1;
+        table = new int[stride * (height + 1)];
+
+        byte[] image = source.getMatrix();
+        for (int y = 0; y < height; y++) {
+            int yOff = y * width;
+            int above = y * stride;
+            int here = above + stride;
+            int rowSum = 0;
+            for (int x = 0; x < width; x++) {
+                rowSum += image[yOff + x] & 0xFF;
+                table[here + x + 1] = table[above + x + 1] + rowSum;
+            }
+        }
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Total luminance of a rectangle. All bounds are inclusive, and must be inside the image.
+     */
+    public int sum(int left, int top, int right, int bottom) {
+        int y0 = top * stride;
+        int y1 = (bottom + 1) * stride;
+        return table[y1 + right + 1] - table[y0 + right + 1] - table[y1 + left] + table[y0 + left];
+    }
+}
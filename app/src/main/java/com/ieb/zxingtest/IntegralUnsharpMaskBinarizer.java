@@ -0,0 +1,220 @@
+package com.ieb.zxingtest;
+
+import com.google.zxing.Binarizer;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.common.BitArray;
+import com.google.zxing.common.BitMatrix;
+
+/**
+ * A version of {@link UnsharpMaskBinarizer} that reads its local averages from a shared
+ * {@link IntegralImage}, instead of running sums over the source.
+ * <p>
+ * Building the integral image costs about the same as one UnsharpMaskBinarizer pass, but after
+ * that each binarizer on the same frame costs only a constant-time lookup per pixel, whatever
+ * its scale. This makes it cheap to try many scales and exposures on a single frame.
+ * <p>
+ * Near the image edges, averages are taken over only the part of the window inside the image,
+ * so results there can be slightly different to UnsharpMaskBinarizer.
+ */
+public class IntegralUnsharpMaskBinarizer extends Binarizer {
+    private final IntegralImage integral;
+    private final boolean invert;
+    private final int morph;
+    private final int scale;
+    private final int bias;
+
+    /**
+     * Working space, shared by every binarizer on the same thread.
+     * Sweep workers make a binarizer per attempt, so this saves allocating buffers for each.
+     */
+    private static final ThreadLocal<ScratchBuffers> scratch = ThreadLocal.withInitial(ScratchBuffers::new);
+
+    private static class ScratchBuffers {
+        private byte[] rowLuminances = null;
+        private int[] morph = null;
+
+        byte[] rowLuminances(int size) {
+            if (rowLuminances == null || rowLuminances.length < size) rowLuminances = new byte[size];
+            return rowLuminances;
+        }
+
+        int[] morph(int size) {
+            if (morph == null || morph.length < size) morph = new int[size];
+            return morph;
+        }
+    }
+
+    private static final int UPPER_LIMIT = 251;
+    private static final int LOWER_LIMIT = 4;
+
+    /**
+     * Create a running-threshold binarizer over a pre-built integral image
+     *
+     * @param source Luminance image source. Must be the source that `integral` was built from.
+     * @param integral Summed-area table of the source. Can be shared between binarizers and threads.
+     * @param invert if true, the image will be inverted
+     * @param scale Scale of running average. Range 1..8 inclusive, as UnsharpMaskBinarizer.
+     * @param exposure Negative for lighter image, positive for darker. Zero is no bias.
+     * @param morph if more than zero, a speckle/scratch transform will be run for 2D matrices
+     */
+    public IntegralUnsharpMaskBinarizer(LuminanceSource source, IntegralImage integral, boolean invert, int scale, int exposure, int morph) {
+        super(source);
+        this.integral = integral;
+        this.invert = invert;
+        this.scale = scale;
+        this.bias = exposure;
+        this.morph = morph;
+    }
+
+    /** Get a single row. As UnsharpMaskBinarizer, this only averages across the scan line */
+    @Override
+    public BitArray getBlackRow(int y, BitArray row) {
+        LuminanceSource source = getLuminanceSource();
+        int width = source.getWidth();
+        if (row == null || row.getSize() < width) {
+            row = new BitArray(width);
+        } else {
+            row.clear();
+        }
+
+        byte[] srcRow = source.getRow(y, scratch.get().rowLuminances(width));
+        int radius = 1 << scale;
+        int diam = scale + 1;
+        int right = width - 1;
+
+        for (int x = 0; x < width; x++) {
+            int x0 = Math.max(x - radius, 0);
+            int x1 = Math.min(x + radius - 1, right);
+            int span = x1 - x0 + 1;
+            int sum = integral.sum(x0, y, x1, y);
+            int target = (span == 1 << diam) ? sum >>> diam : sum / span;
+
+            if (target > UPPER_LIMIT) target = UPPER_LIMIT;
+            if (target < LOWER_LIMIT) target = LOWER_LIMIT;
+
+            int actual = (srcRow[x] & 0xFF) - bias;
+            if (invert ? actual > target : actual < target) row.set(x);
+        }
+
+        return row;
+    }
+
+    /** Get a whole image, averaging in X and Y */
+    @Override
+    public BitMatrix getBlackMatrix() {
+        // split up to keep the JIT happy, as UnsharpMaskBinarizer
+        if (invert) return getBlackMatrixInverted();
+        return getBlackMatrixNormal();
+    }
+
+    private BitMatrix getBlackMatrixNormal() {
+        LuminanceSource source = getLuminanceSource();
+        int width = source.getWidth();
+        int height = source.getHeight();
+        byte[] image = source.getMatrix();
+
+        BitMatrix matrix = new BitMatrix(width, height);
+        int[] bits = matrix.getBits();
+        int rowSize = matrix.getRowSize();
+
+        int radius = 1 << scale;
+        int fullShift = (scale + 1) * 2; // full window is (2*radius)^2 pixels
+        int fullArea = 1 << fullShift;
+        int right = width - 1;
+        int bottom = height - 1;
+
+        for (int y = 0; y < height; y++) {
+            int yOff = y * width;
+            int bitOff = y * rowSize;
+            int word = 0;
+            int y0 = Math.max(y - radius, 0);
+            int y1 = Math.min(y + radius - 1, bottom);
+            int rows = y1 - y0 + 1;
+
+            for (int x = 0; x < width; x++) {
+                int x0 = Math.max(x - radius, 0);
+                int x1 = Math.min(x + radius - 1, right);
+                int area = (x1 - x0 + 1) * rows;
+                int sum = integral.sum(x0, y0, x1, y1);
+                int target = (area == fullArea) ? sum >>> fullShift : sum / area;
+
+                // don't let the target be too extreme
+                if (target > UPPER_LIMIT) target = UPPER_LIMIT;
+                if (target < LOWER_LIMIT) target = LOWER_LIMIT;
+
+                // Decide what side of the threshold we are on, packing 32 pixels per word
+                int actual = (image[yOff + x] & 0xFF) - bias;
+                word |= ((actual - target) >>> 31) << (x & 0x1f);
+                if ((x & 0x1f) == 0x1f) {
+                    bits[bitOff + (x >>> 5)] = word;
+                    word = 0;
+                }
+            }
+            if ((width & 0x1f) != 0) bits[bitOff + (width >>> 5)] = word;
+        }
+
+        if (morph > 0) {
+            MorphologicalTransforms.Opening2D(matrix, morph, scratch.get().morph(MorphologicalTransforms.ScratchSize(matrix, morph)));
+        }
+
+        return matrix;
+    }
+
+    private BitMatrix getBlackMatrixInverted() {
+        LuminanceSource source = getLuminanceSource();
+        int width = source.getWidth();
+        int height = source.getHeight();
+        byte[] image = source.getMatrix();
+
+        BitMatrix matrix = new BitMatrix(width, height);
+        int[] bits = matrix.getBits();
+        int rowSize = matrix.getRowSize();
+
+        int radius = 1 << scale;
+        int fullShift = (scale + 1) * 2; // full window is (2*radius)^2 pixels
+        int fullArea = 1 << fullShift;
+        int right = width - 1;
+        int bottom = height - 1;
+
+        for (int y = 0; y < height; y++) {
+            int yOff = y * width;
+            int bitOff = y * rowSize;
+            int word = 0;
+            int y0 = Math.max(y - radius, 0);
+            int y1 = Math.min(y + radius - 1, bottom);
+            int rows = y1 - y0 + 1;
+
+            for (int x = 0; x < width; x++) {
+                int x0 = Math.max(x - radius, 0);
+                int x1 = Math.min(x + radius - 1, right);
+                int area = (x1 - x0 + 1) * rows;
+                int sum = integral.sum(x0, y0, x1, y1);
+                int target = (area == fullArea) ? sum >>> fullShift : sum / area;
+
+                // don't let the target be too extreme
+                if (target > UPPER_LIMIT) target = UPPER_LIMIT;
+                if (target < LOWER_LIMIT) target = LOWER_LIMIT;
+
+                // Decide what side of the threshold we are on, packing 32 pixels per word
+                int actual = (image[yOff + x] & 0xFF) - bias;
+                word |= ((target - actual) >>> 31) << (x & 0x1f);
+                if ((x & 0x1f) == 0x1f) {
+                    bits[bitOff + (x >>> 5)] = word;
+                    word = 0;
+                }
+            }
+            if ((width & 0x1f) != 0) bits[bitOff + (width >>> 5)] = word;
+        }
+
+        if (morph > 0) {
+            MorphologicalTransforms.Opening2D(matrix, morph, scratch.get().morph(MorphologicalTransforms.ScratchSize(matrix, morph)));
+        }
+
+        return matrix;
+    }
+
+    @Override
+    public Binarizer createBinarizer(LuminanceSource source) {
+        return new IntegralUnsharpMaskBinarizer(source, new IntegralImage(source), invert, scale, bias, morph);
+    }
+}
@@ -0,0 +1,95 @@
+package com.ieb.zxingtest;
+
+import java.util.Arrays;
+
+/**
+ * Fixed size histogram of durations in nanoseconds, for percentiles without keeping every sample.
+ * <p>
+ * Buckets are log-linear, like HdrHistogram: each power of two is split into 16 equal buckets,
+ * so any value is placed to within about 6%, from 1ns up to about 18 minutes. Longer times go
+ * in the last bucket. Recording is a few shifts and an increment, and never allocates.
+ * <p>
+ * Not synchronised. Callers that record and read on different threads must lock around both.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BITS = 4; // 16 buckets per power of two
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    private static final int MAX_EXPONENT = 40; // 2^40 ns is about 18 minutes
+    private static final int BUCKETS = (MAX_EXPONENT - SUB_BITS + 2) * SUB_COUNT;
+
+    private final long[] counts = new long[BUCKETS];
+    private long total;
+    private long sum;
+    private long max;
+
+    /** Add one duration. Negative values count as zero. */
+    public void record(long nanos) {
+        if (nanos < 0) nanos = 0;
+        counts[bucketOf(nanos)]++;
+        total++;
+        sum += nanos;
+        if (nanos > max) max = nanos;
+    }
+
+    /** Remove all samples */
+    public void clear() {
+        Arrays.fill(counts, 0);
+        total = 0;
+        sum = 0;
+        max = 0;
+    }
+
+    /** Number of samples recorded */
+    public long count() {
+        return total;
+    }
+
+    /** Longest duration recorded, exactly */
+    public long max() {
+        return max;
+    }
+
+    /** Mean duration, exactly. Zero if there are no samples. */
+    public long mean() {
+        return total < 1 ? 0 : sum / total;
+    }
+
+    /**
+     * Duration that the given percentage of samples were at or below,
+     * rounded up to the top of its bucket (but never more than the max).
+     * @param percentile 0..100
+     */
+    public long percentile(double percentile) {
+        if (total < 1) return 0;
+        var target = (long) Math.ceil(percentile / 100.0 * total);
+        if (target < 1) target = 1;
+
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= target) return Math.min(max, upperBound(i));
+        }
+        return max;
+    }
+
+    private static int bucketOf(long value) {
+        if (value < SUB_COUNT) return (int) value;
+
+        var exponent = Math.min(63 - Long.numberOfLeadingZeros(value), MAX_EXPONENT);
+        if (exponent == MAX_EXPONENT && value >= (1L << (MAX_EXPONENT + 1))) return BUCKETS - 1;
+
+        var sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_COUNT - 1);
+        return (exponent - SUB_BITS + 1) * SUB_COUNT + sub;
+    }
+
+    /** Largest value that falls in a bucket */
+    private static long upperBound(int bucket) {
+        if (bucket < SUB_COUNT) return bucket;
+        if (bucket == BUCKETS - 1) return Long.MAX_VALUE;
+
+        var exponent = bucket / SUB_COUNT + SUB_BITS - 1;
+        var sub = bucket % SUB_COUNT;
+        var shift = exponent - SUB_BITS;
+        return ((long) (SUB_COUNT + sub + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,334 @@
+package com.ieb.zxingtest;
+
+import com.google.zxing.Binarizer;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.common.BitArray;
+import com.google.zxing.common.BitMatrix;
+
+import java.lang.ref.WeakReference;
+
+/**
+ * Thresholds each pixel against the mean and standard deviation of the window around it,
+ * rather than the mean and a fixed bias as {@link UnsharpMaskBinarizer} does.
+ * <p>
+ * Where the window has a lot of contrast, the threshold stays near the mean. Where it is flat
+ * (blank paper, or the washed-out half of a label under glare), the threshold drops well below
+ * the mean, so noise isn't turned into black speckles, but faint marks still are picked out.
+ * Two formulas are given:
+ * <ul>
+ *     <li>Sauvola: T = m * (1 + k * (s / R - 1)), with R fixed at half the luminance range.</li>
+ *     <li>Wolf: T = m - k * (1 - s / R) * (m - M), with R the largest s in the image and M the
+ *     darkest pixel. This copes better with images that are low contrast all over.</li>
+ * </ul>
+ * <p>
+ * Window sums come from sum and sum-of-squares integral images, kept per thread and reused
+ * between frames. Binarizers on the same luminance source (for instance, at several scales or
+ * exposures) share the tables, which are only built once. As with {@link IntegralUnsharpMaskBinarizer},
+ * windows are cut off at the image edges.
+ */
+public class LocalVarianceBinarizer extends Binarizer {
+    /** How the threshold is worked out from the local mean and standard deviation */
+    public enum Method {
+        SAUVOLA,
+        WOLF
+    }
+
+    private static final double SAUVOLA_K = 0.05; // how far below the mean flat windows are thresholded. Documents use ~0.3, which loses faded codes
+    private static final double SAUVOLA_RANGE = 128.0; // standard deviation of a window at full contrast
+    private static final double WOLF_K = 0.1; // as SAUVOLA_K, but scaled by the window's contrast against the darkest pixel
+
+    private final Method method;
+    private final boolean invert;
+    private final int scale;
+    private final int bias;
+    private final int morph;
+
+    /**
+     * Working space, shared by every binarizer on the same thread.
+     * This saves allocating new tables for each frame, and binarizers on different threads don't interfere.
+     */
+    private static final ThreadLocal<Tables> tables = ThreadLocal.withInitial(Tables::new);
+
+    /**
+     * Create a local variance binarizer
+     *
+     * @param source   Luminance image source
+     * @param method   formula for the threshold
+     * @param invert   if true, the image will be inverted
+     * @param scale    Scale of the window. Range 1..8 inclusive, as UnsharpMaskBinarizer.
+     * @param exposure Negative for lighter image, positive for darker. Zero is no bias.
+     * @param morph    if more than zero, a speckle/scratch transform will be run for 2D matrices
+     */
+    public LocalVarianceBinarizer(LuminanceSource source, Method method, boolean invert, int scale, int exposure, int morph) {
+        super(source);
+        this.method = method;
+        this.invert = invert;
+        this.scale = scale;
+        this.bias = exposure;
+        this.morph = morph;
+    }
+
+    /** Get a single row. As UnsharpMaskBinarizer, this only uses the window across the scan line */
+    @Override
+    public BitArray getBlackRow(int y, BitArray row) {
+        LuminanceSource source = getLuminanceSource();
+        int width = source.getWidth();
+        if (row == null || row.getSize() < width) {
+            row = new BitArray(width);
+        } else {
+            row.clear();
+        }
+
+        var buffers = tables.get();
+        byte[] srcRow = source.getRow(y, buffers.rowLuminances(width));
+        int[] sums = buffers.rowSums(width + 1);
+        int[] squares = buffers.rowSquares(width + 1);
+
+        // Prefix sums along the row. A row of squares fits an int for any sensible width.
+        int darkest = 255, lightest = 0;
+        for (int x = 0; x < width; x++) {
+            int pixel = srcRow[x] & 0xFF;
+            sums[x + 1] = sums[x] + pixel;
+            squares[x + 1] = squares[x] + pixel * pixel;
+            if (pixel < darkest) darkest = pixel;
+            if (pixel > lightest) lightest = pixel;
+        }
+
+        int radius = 1 << scale;
+        int right = width - 1;
+        double range = method == Method.WOLF ? Math.sqrt(maxRowVariance(sums, squares, width, radius)) : SAUVOLA_RANGE;
+        int floor = invert ? 255 - lightest : darkest;
+
+        for (int x = 0; x < width; x++) {
+            int x0 = Math.max(x - radius, 0);
+            int x1 = Math.min(x + radius - 1, right) + 1;
+            double area = x1 - x0;
+            double mean = (sums[x1] - sums[x0]) / area;
+            double variance = (squares[x1] - squares[x0]) / area - mean * mean;
+
+            int actual = (srcRow[x] & 0xFF) - bias;
+            if (invert) {
+                actual = 255 - actual;
+                mean = 255.0 - mean;
+            }
+            if (below(actual, mean, variance, range, floor)) row.set(x);
+        }
+
+        return row;
+    }
+
+    /** Get a whole image, using the window in X and Y */
+    @Override
+    public BitMatrix getBlackMatrix() {
+        LuminanceSource source = getLuminanceSource();
+        int width = source.getWidth();
+        int height = source.getHeight();
+
+        var buffers = tables.get();
+        buffers.prepare(source);
+        byte[] image = buffers.image;
+        int[] sums = buffers.sums;
+        long[] squares = buffers.squares;
+        int stride = width + 1;
+
+        BitMatrix matrix = new BitMatrix(width, height);
+        int[] bits = matrix.getBits();
+        int rowSize = matrix.getRowSize();
+
+        int radius = 1 << scale;
+        int right = width - 1;
+        int bottom = height - 1;
+        double range = method == Method.WOLF ? Math.sqrt(maxVariance(buffers, width, height, radius)) : SAUVOLA_RANGE;
+        int floor = invert ? 255 - buffers.lightest : buffers.darkest;
+
+        for (int y = 0; y < height; y++) {
+            int yOff = y * width;
+            int bitOff = y * rowSize;
+            int top = Math.max(y - radius, 0) * stride;
+            int end = (Math.min(y + radius - 1, bottom) + 1) * stride;
+            int rows = (end - top) / stride;
+            int word = 0;
+
+            for (int x = 0; x < width; x++) {
+                int x0 = Math.max(x - radius, 0);
+                int x1 = Math.min(x + radius - 1, right) + 1;
+                double area = (x1 - x0) * rows;
+                double mean = (sums[end + x1] - sums[top + x1] - sums[end + x0] + sums[top + x0]) / area;
+                double variance = (squares[end + x1] - squares[top + x1] - squares[end + x0] + squares[top + x0]) / area - mean * mean;
+
+                int actual = (image[yOff + x] & 0xFF) - bias;
+                if (invert) {
+                    actual = 255 - actual;
+                    mean = 255.0 - mean;
+                }
+
+                // Pack 32 pixels per word, as UnsharpMaskBinarizer
+                if (below(actual, mean, variance, range, floor)) word |= 1 << (x & 0x1f);
+                if ((x & 0x1f) == 0x1f) {
+                    bits[bitOff + (x >>> 5)] = word;
+                    word = 0;
+                }
+            }
+            if ((width & 0x1f) != 0) bits[bitOff + (width >>> 5)] = word;
+        }
+
+        if (morph > 0) {
+            MorphologicalTransforms.Opening2D(matrix, morph, buffers.morph(MorphologicalTransforms.ScratchSize(matrix, morph)));
+        }
+
+        return matrix;
+    }
+
+    /**
+     * True if a pixel is darker than the threshold for its window. Inversion and bias are already applied.
+     * <p>
+     * Both formulas come down to T = base + slope * s, with slope never negative, so this compares
+     * (actual - base) against slope * s without taking a square root: anything below the base is
+     * black, and anything above it is black only if its square is below slope^2 * variance.
+     *
+     * @param range R in the formulas
+     * @param floor M for the Wolf formula: the darkest pixel, after inversion
+     */
+    private boolean below(int actual, double mean, double variance, double range, int floor) {
+        double base, slope;
+        if (method == Method.WOLF) {
+            double depth = WOLF_K * (mean - floor);
+            base = mean - depth;
+            slope = range > 0.0 ? depth / range : 0.0;
+        } else {
+            base = mean * (1.0 - SAUVOLA_K);
+            slope = mean * SAUVOLA_K / SAUVOLA_RANGE;
+        }
+
+        double over = actual - base;
+        return over < 0.0 || over * over < slope * slope * variance;
+    }
+
+    /** Largest window variance in the image, for the Wolf formula */
+    private static double maxVariance(Tables buffers, int width, int height, int radius) {
+        int[] sums = buffers.sums;
+        long[] squares = buffers.squares;
+        int stride = width + 1;
+        double max = 0.0;
+
+        for (int y = 0; y < height; y++) {
+            int top = Math.max(y - radius, 0) * stride;
+            int end = (Math.min(y + radius - 1, height - 1) + 1) * stride;
+            int rows = (end - top) / stride;
+            for (int x = 0; x < width; x++) {
+                int x0 = Math.max(x - radius, 0);
+                int x1 = Math.min(x + radius - 1, width - 1) + 1;
+                double area = (x1 - x0) * rows;
+                double mean = (sums[end + x1] - sums[top + x1] - sums[end + x0] + sums[top + x0]) / area;
+                double variance = (squares[end + x1] - squares[top + x1] - squares[end + x0] + squares[top + x0]) / area - mean * mean;
+                if (variance > max) max = variance;
+            }
+        }
+        return max;
+    }
+
+    /** Largest window variance along a row, for the Wolf formula */
+    private static double maxRowVariance(int[] sums, int[] squares, int width, int radius) {
+        double max = 0.0;
+        for (int x = 0; x < width; x++) {
+            int x0 = Math.max(x - radius, 0);
+            int x1 = Math.min(x + radius - 1, width - 1) + 1;
+            double area = x1 - x0;
+            double mean = (sums[x1] - sums[x0]) / area;
+            double variance = (squares[x1] - squares[x0]) / area - mean * mean;
+            if (variance > max) max = variance;
+        }
+        return max;
+    }
+
+    @Override
+    public Binarizer createBinarizer(LuminanceSource source) {
+        return new LocalVarianceBinarizer(source, Method.SAUVOLA, false, 5, 0, 0);
+    }
+
+    /**
+     * Sum and sum-of-squares tables for the last frame thresholded on this thread, with a zero
+     * top row and left column, and a copy of its pixels. Sums are ints, and allowed to wrap as
+     * {@link IntegralImage}'s are; squares are longs, as a window of them can pass 2^31.
+     * The source is only weakly held, so a finished frame isn't kept alive by an idle thread.
+     */
+    private static class Tables {
+        private byte[] image = null;
+        private int[] sums = null;
+        private long[] squares = null;
+        private WeakReference<LuminanceSource> builtFor = null;
+        private int darkest, lightest;
+
+        private byte[] rowLuminances = null;
+        private int[] rowSums = null;
+        private int[] rowSquares = null;
+        private int[] morph = null;
+
+        /** Copy the pixels and build the tables for a source, unless they were last built for the same one */
+        void prepare(LuminanceSource source) {
+            if (builtFor != null && builtFor.get() == source) return;
+
+            int width = source.getWidth();
+            int height = source.getHeight();
+            int area = width * height;
+            if (image == null || image.length < area) image = new byte[area];
+            System.arraycopy(source.getMatrix(), 0, image, 0, area); // a copy, so the frame isn't held after it is done
+
+            int stride = width + 1;
+            int size = stride * (height + 1);
+            if (sums == null || sums.length < size) {
+                sums = new int[size];
+                squares = new long[size];
+            } else {
+                for (int x = 0; x < stride; x++) { // only the top row needs to be zero, the rest is overwritten
+                    sums[x] = 0;
+                    squares[x] = 0;
+                }
+            }
+
+            int low = 255, high = 0;
+            for (int y = 0; y < height; y++) {
+                int yOff = y * width;
+                int above = y * stride;
+                int here = above + stride;
+                int rowSum = 0;
+                long rowSquare = 0;
+                sums[here] = 0;
+                squares[here] = 0;
+                for (int x = 0; x < width; x++) {
+                    int pixel = image[yOff + x] & 0xFF;
+                    if (pixel < low) low = pixel;
+                    if (pixel > high) high = pixel;
+                    rowSum += pixel;
+                    rowSquare += pixel * pixel;
+                    sums[here + x + 1] = sums[above + x + 1] + rowSum;
+                    squares[here + x + 1] = squares[above + x + 1] + rowSquare;
+                }
+            }
+
+            darkest = low;
+            lightest = high;
+            builtFor = new WeakReference<>(source);
+        }
+
+        byte[] rowLuminances(int size) {
+            if (rowLuminances == null || rowLuminances.length < size) rowLuminances = new byte[size];
+            return rowLuminances;
+        }
+
+        int[] rowSums(int size) {
+            if (rowSums == null || rowSums.length < size) rowSums = new int[size];
+            return rowSums;
+        }
+
+        int[] rowSquares(int size) {
+            if (rowSquares == null || rowSquares.length < size) rowSquares = new int[size];
+            return rowSquares;
+        }
+
+        int[] morph(int size) {
+            if (morph == null || morph.length < size) morph = new int[size];
+            return morph;
+        }
+    }
+}
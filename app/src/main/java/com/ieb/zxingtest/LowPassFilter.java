@@ -0,0 +1,132 @@
+package com.ieb.zxingtest;
+
+/**
+ * Separable low-pass (blur) filter for luminance images.
+ * <p>
+ * Three box blurs in a row are a close match for a Gaussian blur. Each box blur is a running
+ * sum, so the cost per pixel is the same whatever the blur size. Rows are blurred one at a time,
+ * and columns are blurred a whole row at a time, so memory is always read in order.
+ * <p>
+ * Working buffers are kept between calls. An instance should only be used by one thread at a time.
+ */
+public class LowPassFilter {
+    private static final int PASSES = 3;
+
+    private int[] rowA = null;
+    private int[] rowB = null;
+    private int[] columnSums = null;
+    private byte[] frameA = null;
+    private byte[] frameB = null;
+
+    /**
+     * Box radius that gives roughly the cut-off of the old Fourier filter.
+     * A scale of <i>s</i> keeps detail with a period longer than about <i>s</i> pixels.
+     * Scales below 5 are too fine to have any effect, and give zero.
+     */
+    public static int radiusForScale(int fourierScale) {
+        if (fourierScale < 1) return 0;
+
+        // Gaussian sigma with its half-power point at 1/s cycles per pixel,
+        // then the box width that gives the same sigma over three passes.
+        double sigma = 0.19 * fourierScale;
+        double boxWidth = Math.sqrt(4 * sigma * sigma + 1);
+        return (int) Math.round((boxWidth - 1) / 2);
+    }
+
+    /**
+     * Blur an image in place.
+     *
+     * @param image  luminance, one byte per pixel
+     * @param radius box radius. Each pass averages 2*radius+1 pixels. Zero or less does nothing.
+     */
+    public void apply(byte[] image, int width, int height, int radius) {
+        if (radius < 1 || width < 1 || height < 1) return;
+        ensureBuffers(width, height, radius);
+
+        for (int y = 0; y < height; y++) {
+            blurRow(image, y * width, width, radius);
+        }
+
+        // image -> A -> B -> image
+        blurColumns(image, frameA, width, height, radius);
+        blurColumns(frameA, frameB, width, height, radius);
+        blurColumns(frameB, image, width, height, radius);
+    }
+
+    private void ensureBuffers(int width, int height, int radius) {
+        int padded = width + 2 * radius;
+        if (rowA == null || rowA.length < padded) {
+            rowA = new int[padded];
+            rowB = new int[padded];
+        }
+        if (columnSums == null || columnSums.length < width) columnSums = new int[width];
+
+        int size = width * height;
+        if (frameA == null || frameA.length < size) {
+            frameA = new byte[size];
+            frameB = new byte[size];
+        }
+    }
+
+    /** All three horizontal passes over one row, in the padded row buffers */
+    private void blurRow(byte[] image, int offset, int width, int radius) {
+        int diam = 2 * radius + 1;
+        int scale = (1 << 16) / diam;
+        int right = width - 1;
+        int[] src = rowA;
+        int[] dst = rowB;
+
+        // copy in, repeating the edge pixels into the padding
+        for (int x = 0; x < width; x++) src[x + radius] = image[offset + x] & 0xFF;
+
+        for (int pass = 0; pass < PASSES; pass++) {
+            int first = src[radius];
+            int last = src[radius + right];
+            for (int i = 0; i < radius; i++) {
+                src[i] = first;
+                src[radius + width + i] = last;
+            }
+
+            // dst[x + radius] is the average of src[x .. x + 2*radius]
+            int sum = 0;
+            for (int i = 0; i < diam - 1; i++) sum += src[i];
+            for (int x = 0; x < width; x++) {
+                sum += src[x + diam - 1];
+                dst[x + radius] = (sum * scale + 0x8000) >>> 16;
+                sum -= src[x];
+            }
+
+            int[] t = src;
+            src = dst;
+            dst = t;
+        }
+
+        for (int x = 0; x < width; x++) image[offset + x] = (byte) src[x + radius];
+    }
+
+    /** One vertical pass, keeping a running sum for every column */
+    private void blurColumns(byte[] src, byte[] dst, int width, int height, int radius) {
+        int diam = 2 * radius + 1;
+        int scale = (1 << 16) / diam;
+        int bottom = height - 1;
+        int[] sums = columnSums;
+
+        // feed in, repeating the top row
+        for (int x = 0; x < width; x++) sums[x] = (src[x] & 0xFF) * (radius + 1);
+        for (int i = 1; i <= radius; i++) {
+            int yOff = Math.min(i, bottom) * width;
+            for (int x = 0; x < width; x++) sums[x] += src[yOff + x] & 0xFF;
+        }
+
+        for (int y = 0; y < height; y++) {
+            int yOff = y * width;
+            int inOff = Math.min(y + radius + 1, bottom) * width;
+            int outOff = Math.max(y - radius, 0) * width;
+            for (int x = 0; x < width; x++) {
+                int sum = sums[x];
+                dst[yOff + x] = (byte) ((sum * scale + 0x8000) >>> 16);
+                sums[x] = sum + (src[inOff + x] & 0xFF) - (src[outOff + x] & 0xFF);
+            }
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.ieb.zxingtest;
+
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.PlanarYUVLuminanceSource;
+
+/**
+ * Half and quarter size copies of a frame, for finding large codes without reading every pixel.
+ * <p>
+ * Level 0 is the frame itself. Each level after that is a 2x2 box average of the one before.
+ * Level buffers are kept between frames. An instance should only be used by one thread at a time.
+ */
+public class LuminancePyramid {
+    /** Number of levels, including the full size frame */
+    public static final int LEVELS = 3;
+
+    private final byte[][] levels = new byte[LEVELS][];
+    private final int[] widths = new int[LEVELS];
+    private final int[] heights = new int[LEVELS];
+    private LuminanceSource source;
+    private int built;
+
+    /**
+     * Coarsest level that still resolves the features a threshold scale is looking for.
+     * Scale 7 (128 pixel spans) can use quarter size, scale 6 half size. Smaller scales need the full frame.
+     */
+    public static int levelForScale(int thresholdScale) {
+        return Math.max(0, Math.min(LEVELS - 1, thresholdScale - 5));
+    }
+
+    /**
+     * Threshold scale to use when searching a shrunk level.
+     * Codes big enough to find at a level have only a few pixels per module there, so want
+     * a tight threshold window: 16 pixel spans at half size, 4 at quarter size.
+     */
+    public static int coarseScale(int level) {
+        return Math.max(2, 6 - 2 * level);
+    }
+
+    /** Size reduction of a level on each side: 1, 2 or 4 */
+    public static int factor(int level) {
+        return 1 << level;
+    }
+
+    /**
+     * Build levels 1 to `maxLevel` from a frame, replacing any previous frame.
+     * Levels that would be smaller than 1 pixel are left out.
+     */
+    public void build(LuminanceSource frame, int maxLevel) {
+        source = frame;
+        widths[0] = frame.getWidth();
+        heights[0] = frame.getHeight();
+        built = 0;
+
+        maxLevel = Math.min(maxLevel, LEVELS - 1);
+        byte[] above = maxLevel > 0 ? frame.getMatrix() : null;
+        for (int level = 1; level <= maxLevel; level++) {
+            var w = widths[level - 1] / 2;
+            var h = heights[level - 1] / 2;
+            if (w < 1 || h < 1) break;
+
+            if (levels[level] == null || levels[level].length < w * h) levels[level] = new byte[w * h];
+            halve(above, widths[level - 1], levels[level], w, h);
+
+            widths[level] = w;
+            heights[level] = h;
+            above = levels[level];
+            built = level;
+        }
+    }
+
+    /** Highest level available from the last {@link #build(LuminanceSource, int)} */
+    public int getLevelCount() {
+        return built + 1;
+    }
+
+    /**
+     * Luminance at a level. Level 0 is the frame given to {@link #build(LuminanceSource, int)}.
+     * Higher levels share the pyramid's buffers, so are only good until the next build.
+     */
+    public LuminanceSource level(int level) {
+        if (level < 0 || level > built) throw new IllegalArgumentException("Pyramid level " + level + " not built");
+        if (level == 0) return source;
+        return new PlanarYUVLuminanceSource(levels[level], widths[level], heights[level],
+                0, 0, widths[level], heights[level], false);
+    }
+
+    /** Width of a level in pixels */
+    public int width(int level) {
+        return widths[level];
+    }
+
+    /** Height of a level in pixels */
+    public int height(int level) {
+        return heights[level];
+    }
+
+    /** 2x2 box average. An odd last row or column is dropped. */
+    private static void halve(byte[] src, int srcWidth, byte[] dst, int width, int height) {
+        for (int y = 0; y < height; y++) {
+            int top = 2 * y * srcWidth;
+            int bottom = top + srcWidth;
+            int out = y * width;
+            for (int x = 0; x < width; x++) {
+                int i = 2 * x;
+                int sum = (src[top + i] & 0xFF) + (src[top + i + 1] & 0xFF)
+                        + (src[bottom + i] & 0xFF) + (src[bottom + i + 1] & 0xFF);
+                dst[out + x] = (byte) ((sum + 2) >>> 2);
+            }
+        }
+    }
+}
@@ -1,16 +1,21 @@
 package com.ieb.zxingtest;
 
+import com.google.zxing.common.BitMatrix;
+
 public class MorphologicalTransforms {
 
+    /// <summary>
+    /// Above this radius, windows are built from running block minima/maxima (van Herk/Gil-Werman)
+    /// rather than by scanning every sample in the window.
+    /// </summary>
+    private static final int DIRECT_RADIUS = 2;
+
     /// <summary>
     /// for each pixel, select the lightest luminance within <paramref name="radius"/>
     /// </summary>
     public static byte[] Dilate2D(byte[] luminance, int width, int height, int radius)
     {
-        DilateColumns(luminance, radius, width, height);
-        DilateRows(luminance, radius, width, height);
-
-        return luminance;
+        return Dilate2D(luminance, width, height, radius, new byte[ScratchSize(width, height, radius)]);
     }
 
     /// <summary>
@@ -18,10 +23,7 @@ public class MorphologicalTransforms {
     /// </summary>
     public static byte[] Erode2D(byte[] luminance, int width, int height, int radius)
     {
-        ErodeColumns(luminance, radius, width, height);
-        ErodeRows(luminance, radius, width, height);
-
-        return luminance;
+        return Erode2D(luminance, width, height, radius, new byte[ScratchSize(width, height, radius)]);
     }
 
     /// <summary>
@@ -30,13 +32,7 @@ public class MorphologicalTransforms {
     /// </summary>
     public static byte[] Opening2D(byte[] luminance, int width, int height, int radius)
     {
-        ErodeColumns(luminance, radius, width, height);
-        ErodeRows(luminance, radius, width, height);
-
-        DilateColumns(luminance, radius, width, height);
-        DilateRows(luminance, radius, width, height);
-
-        return luminance;
+        return Opening2D(luminance, width, height, radius, new byte[ScratchSize(width, height, radius)]);
     }
 
     /// <summary>
@@ -45,11 +41,63 @@ public class MorphologicalTransforms {
     /// </summary>
     public static byte[] Closing2D(byte[] luminance, int width, int height, int radius)
     {
-        DilateColumns(luminance, radius, width, height);
-        DilateRows(luminance, radius, width, height);
+        return Closing2D(luminance, width, height, radius, new byte[ScratchSize(width, height, radius)]);
+    }
+
+    /// <summary>
+    /// Minimum length of the <c>scratch</c> buffer for the luminance transforms
+    /// </summary>
+    public static int ScratchSize(int width, int height, int radius)
+    {
+        return 2 * (Math.max(width, height) + 2 * Math.max(radius, 1));
+    }
+
+    /// <summary>
+    /// Dilate using a caller-supplied <paramref name="scratch"/> buffer of at least <see cref="ScratchSize(int, int, int)"/>
+    /// </summary>
+    public static byte[] Dilate2D(byte[] luminance, int width, int height, int radius, byte[] scratch)
+    {
+        DilateColumns(luminance, radius, width, height, scratch);
+        DilateRows(luminance, radius, width, height, scratch);
+
+        return luminance;
+    }
+
+    /// <summary>
+    /// Erode using a caller-supplied <paramref name="scratch"/> buffer of at least <see cref="ScratchSize(int, int, int)"/>
+    /// </summary>
+    public static byte[] Erode2D(byte[] luminance, int width, int height, int radius, byte[] scratch)
+    {
+        ErodeColumns(luminance, radius, width, height, scratch);
+        ErodeRows(luminance, radius, width, height, scratch);
+
+        return luminance;
+    }
+
+    /// <summary>
+    /// Opening using a caller-supplied <paramref name="scratch"/> buffer of at least <see cref="ScratchSize(int, int, int)"/>
+    /// </summary>
+    public static byte[] Opening2D(byte[] luminance, int width, int height, int radius, byte[] scratch)
+    {
+        ErodeColumns(luminance, radius, width, height, scratch);
+        ErodeRows(luminance, radius, width, height, scratch);
+
+        DilateColumns(luminance, radius, width, height, scratch);
+        DilateRows(luminance, radius, width, height, scratch);
+
+        return luminance;
+    }
+
+    /// <summary>
+    /// Closing using a caller-supplied <paramref name="scratch"/> buffer of at least <see cref="ScratchSize(int, int, int)"/>
+    /// </summary>
+    public static byte[] Closing2D(byte[] luminance, int width, int height, int radius, byte[] scratch)
+    {
+        DilateColumns(luminance, radius, width, height, scratch);
+        DilateRows(luminance, radius, width, height, scratch);
 
-        ErodeColumns(luminance, radius, width, height);
-        ErodeRows(luminance, radius, width, height);
+        ErodeColumns(luminance, radius, width, height, scratch);
+        ErodeRows(luminance, radius, width, height, scratch);
 
         return luminance;
     }
@@ -59,228 +107,419 @@ public class MorphologicalTransforms {
     /// </summary>
     public static void DilateRows(byte[] src, int radius, int srcWidth, int srcHeight)
     {
-        if (radius < 1) return;
-        if (srcWidth < radius) return;
+        DilateRows(src, radius, srcWidth, srcHeight, new byte[ScratchSize(srcWidth, 0, radius)]);
+    }
 
-        var samples = new byte[radius * 2]; // search window
-        var temp    = new byte[srcWidth]; // temporary row values
-        var end     = srcWidth - 1;
+    /// <summary>
+    /// Dilate samples only vertically
+    /// </summary>
+    public static void DilateColumns(byte[] src, int radius, int srcWidth, int srcHeight)
+    {
+        DilateColumns(src, radius, srcWidth, srcHeight, new byte[ScratchSize(0, srcHeight, radius)]);
+    }
 
-        for (var y = 0; y < srcHeight; y++)
-        {
-            var yOff = y * srcWidth;
+    /// <summary>
+    /// Erode samples only horizontally
+    /// </summary>
+    public static void ErodeRows(byte[] src, int radius, int srcWidth, int srcHeight)
+    {
+        ErodeRows(src, radius, srcWidth, srcHeight, new byte[ScratchSize(srcWidth, 0, radius)]);
+    }
 
-            // pre-load samples
-            for (var i = 0; i < radius; i++)
-            {
-                samples[i] = src[yOff]; // left side
-                samples[i + radius] = src[yOff + i]; // right side
-            }
+    /// <summary>
+    /// Erode samples only vertically
+    /// </summary>
+    public static void ErodeColumns(byte[] src, int radius, int srcWidth, int srcHeight)
+    {
+        ErodeColumns(src, radius, srcWidth, srcHeight, new byte[ScratchSize(0, srcHeight, radius)]);
+    }
 
-            var si = samples.length - 1; // index of next sample to overwrite.
+    /// <summary>
+    /// Dilate samples only horizontally, using a caller-supplied scratch buffer
+    /// </summary>
+    public static void DilateRows(byte[] src, int radius, int srcWidth, int srcHeight, byte[] scratch)
+    {
+        if (radius < 1) return;
+        for (var y = 0; y < srcHeight; y++) { MaxLine(src, y * srcWidth, 1, srcWidth, radius, scratch); }
+    }
 
-            // main section
-            var safeEnd = srcWidth - radius;
-            for (var x = 0; x < safeEnd; x++)
-            {
-                samples[si++] = src[yOff + x + radius];
-                if (si >= samples.length) si = 0;
+    /// <summary>
+    /// Dilate samples only vertically, using a caller-supplied scratch buffer
+    /// </summary>
+    public static void DilateColumns(byte[] src, int radius, int srcWidth, int srcHeight, byte[] scratch)
+    {
+        if (radius < 1) return;
+        for (var x = 0; x < srcWidth; x++) { MaxLine(src, x, srcWidth, srcHeight, radius, scratch); }
+    }
 
-                var max = samples[0];
-                for (var i = 1; i < samples.length; i++) { if (samples[i] > max) max = samples[i]; }
-                temp[x] = max;
-            }
+    /// <summary>
+    /// Erode samples only horizontally, using a caller-supplied scratch buffer
+    /// </summary>
+    public static void ErodeRows(byte[] src, int radius, int srcWidth, int srcHeight, byte[] scratch)
+    {
+        if (radius < 1) return;
+        for (var y = 0; y < srcHeight; y++) { MinLine(src, y * srcWidth, 1, srcWidth, radius, scratch); }
+    }
 
-            // runoff
-            for (var x = safeEnd; x < srcWidth; x++)
-            {
-                samples[si++] = src[yOff + end];
-                if (si >= samples.length) si = 0;
+    /// <summary>
+    /// Erode samples only vertically, using a caller-supplied scratch buffer
+    /// </summary>
+    public static void ErodeColumns(byte[] src, int radius, int srcWidth, int srcHeight, byte[] scratch)
+    {
+        if (radius < 1) return;
+        for (var x = 0; x < srcWidth; x++) { MinLine(src, x, srcWidth, srcHeight, radius, scratch); }
+    }
 
-                var max = samples[0];
-                for (var i = 1; i < samples.length; i++) { if (samples[i] > max) max = samples[i]; }
-                temp[x] = max;
-            }
+    /// <summary>
+    /// Replace each of <paramref name="count"/> samples along a line with the lightest
+    /// sample from i-radius+1 to i+radius, clamped to the ends of the line.
+    /// <p></p>
+    /// Samples are split into blocks the size of the window. The running maximum from the
+    /// start of each block, and from the end of each block, is recorded in <paramref name="scratch"/>.
+    /// Every window covers the end of one block and the start of the next, so it is
+    /// the larger of two recorded values, whatever the radius.
+    /// </summary>
+    private static void MaxLine(byte[] src, int start, int stride, int count, int radius, byte[] scratch)
+    {
+        var window = radius * 2;
+        var padded = count + window - 1; // sample i is at padded index i + radius - 1
+        var lead   = radius - 1;
+
+        // running maximum from the start of each block
+        var max = 0;
+        var b   = 0;
+        for (var q = 0; q < padded; q++)
+        {
+            var i = q - lead;
+            var v = (i >= 0 && i < count) ? src[start + i * stride] & 0xFF : 0;
+            if (b == 0 || v > max) max = v;
+            scratch[q] = (byte) max;
+            if (++b == window) b = 0;
+        }
 
-            // copy back
-            for (var x = 0; x < srcWidth; x++)
-            {
-                src[yOff + x] = temp[x];
-            }
+        // running maximum from the end of each block
+        max = 0;
+        b   = (padded - 1) % window;
+        for (var q = padded - 1; q >= 0; q--)
+        {
+            var i = q - lead;
+            var v = (i >= 0 && i < count) ? src[start + i * stride] & 0xFF : 0;
+            if (q == padded - 1 || b == window - 1 || v > max) max = v;
+            scratch[padded + q] = (byte) max;
+            if (--b < 0) b = window - 1;
+        }
+
+        // each window is the tail of one block and the head of the next
+        for (var i = 0; i < count; i++)
+        {
+            var fromEnd   = scratch[padded + i] & 0xFF;
+            var fromStart = scratch[i + window - 1] & 0xFF;
+            src[start + i * stride] = (byte) Math.max(fromEnd, fromStart);
         }
     }
 
     /// <summary>
-    /// Dilate samples only vertically
+    /// Replace each of <paramref name="count"/> samples along a line with the darkest
+    /// sample from i-radius+1 to i+radius, clamped to the ends of the line.
+    /// See <see cref="MaxLine"/>
     /// </summary>
-    public static void DilateColumns(byte[] src, int radius, int srcWidth, int srcHeight)
+    private static void MinLine(byte[] src, int start, int stride, int count, int radius, byte[] scratch)
     {
-        if (radius < 1) return;
-        if (srcHeight < radius) return;
+        var window = radius * 2;
+        var padded = count + window - 1; // sample i is at padded index i + radius - 1
+        var lead   = radius - 1;
+
+        // running minimum from the start of each block
+        var min = 0xFF;
+        var b   = 0;
+        for (var q = 0; q < padded; q++)
+        {
+            var i = q - lead;
+            var v = (i >= 0 && i < count) ? src[start + i * stride] & 0xFF : 0xFF;
+            if (b == 0 || v < min) min = v;
+            scratch[q] = (byte) min;
+            if (++b == window) b = 0;
+        }
 
-        var samples = new byte[radius * 2]; // search window
-        var temp    = new byte[srcHeight]; // temporary column values
+        // running minimum from the end of each block
+        min = 0xFF;
+        b   = (padded - 1) % window;
+        for (var q = padded - 1; q >= 0; q--)
+        {
+            var i = q - lead;
+            var v = (i >= 0 && i < count) ? src[start + i * stride] & 0xFF : 0xFF;
+            if (q == padded - 1 || b == window - 1 || v < min) min = v;
+            scratch[padded + q] = (byte) min;
+            if (--b < 0) b = window - 1;
+        }
 
-        for (var x = 0; x < srcWidth; x++)
+        // each window is the tail of one block and the head of the next
+        for (var i = 0; i < count; i++)
         {
-            // pre-load samples
-            var yOff    = x;
-            for (var i = 0; i < radius; i++)
-            {
-                samples[i] = src[x]; // top side
-                samples[i + radius] = src[yOff]; // bottom side
-                yOff += srcWidth;
-            }
+            var fromEnd   = scratch[padded + i] & 0xFF;
+            var fromStart = scratch[i + window - 1] & 0xFF;
+            src[start + i * stride] = (byte) Math.min(fromEnd, fromStart);
+        }
+    }
 
-            var si = samples.length - 1; // index of next sample to overwrite.
+    /// <summary>
+    /// Minimum length of the <c>scratch</c> buffer for the bit matrix transforms
+    /// </summary>
+    public static int ScratchSize(BitMatrix matrix, int radius)
+    {
+        var rowSize = matrix.getRowSize();
+        var height  = matrix.getHeight();
+        return Math.max(rowSize * height, 2 * rowSize * (height + 2 * Math.max(radius, 1)));
+    }
 
-            // main section
-            var safeEnd = srcHeight - radius - 1;
-            yOff = x + (radius * srcWidth);
-            for (var y = 0; y < safeEnd; y++)
-            {
-                samples[si++] = src[yOff];
-                if (si >= samples.length) si = 0;
-                yOff += srcWidth;
+    /// <summary>
+    /// Erode a thresholded image: set bits are dark, so the dark areas grow by <paramref name="radius"/>.
+    /// Matches <see cref="Erode2D(byte[], int, int, int)"/> on 0x00/0x0F samples.
+    /// <paramref name="scratch"/> must be at least <see cref="ScratchSize(BitMatrix, int)"/>
+    /// </summary>
+    public static BitMatrix Erode2D(BitMatrix matrix, int radius, int[] scratch)
+    {
+        if (radius < 1) return matrix;
 
-                var max  = samples[0];
-                for (var i = 1; i < samples.length; i++) { if (samples[i] > max) max = samples[i]; }
-                temp[y] = max;
-            }
+        GrowBitColumns(matrix, radius, scratch);
+        GrowBitRows(matrix, radius, scratch);
 
-            // runoff
-            for (var y = safeEnd; y < srcHeight; y++)
-            {
-                samples[si++] = src[yOff];
-                if (si >= samples.length) si = 0;
+        return matrix;
+    }
 
-                var max  = samples[0];
-                for (var i = 1; i < samples.length; i++) { if (samples[i] > max) max = samples[i]; }
-                temp[y] = max;
-            }
+    /// <summary>
+    /// Dilate a thresholded image: unset bits are light, so the light areas grow by <paramref name="radius"/>.
+    /// Matches <see cref="Dilate2D(byte[], int, int, int)"/> on 0x00/0x0F samples.
+    /// <paramref name="scratch"/> must be at least <see cref="ScratchSize(BitMatrix, int)"/>
+    /// </summary>
+    public static BitMatrix Dilate2D(BitMatrix matrix, int radius, int[] scratch)
+    {
+        if (radius < 1) return matrix;
 
-            // copy back
-            yOff = x;
-            for (var y = 0; y < srcHeight; y++)
-            {
-                src[yOff] = temp[y];
-                yOff += srcWidth;
-            }
-        }
+        matrix.flip();
+        ClearPadding(matrix);
+        GrowBitColumns(matrix, radius, scratch);
+        GrowBitRows(matrix, radius, scratch);
+        matrix.flip();
+        ClearPadding(matrix);
+
+        return matrix;
     }
 
     /// <summary>
-    /// Erode samples only horizontally
+    /// Perform an erode then dilate with the same radius, directly on a thresholded image.
+    /// Matches <see cref="Opening2D(byte[], int, int, int)"/> on 0x00/0x0F samples.
+    /// <paramref name="scratch"/> must be at least <see cref="ScratchSize(BitMatrix, int)"/>
     /// </summary>
-    public static void ErodeRows(byte[] src, int radius, int srcWidth, int srcHeight)
+    public static BitMatrix Opening2D(BitMatrix matrix, int radius, int[] scratch)
     {
-        if (radius < 1) return;
-        if (srcWidth < radius) return;
+        Erode2D(matrix, radius, scratch);
+        Dilate2D(matrix, radius, scratch);
 
-        var samples = new byte[radius * 2]; // search window
-        var temp    = new byte[srcWidth]; // temporary row values
-        var end     = srcWidth - 1;
+        return matrix;
+    }
 
-        for (var y = 0; y < srcHeight; y++)
-        {
-            var yOff = y * srcWidth;
+    /// <summary>
+    /// Perform a dilate then erode with the same radius, directly on a thresholded image.
+    /// Matches <see cref="Closing2D(byte[], int, int, int)"/> on 0x00/0x0F samples.
+    /// <paramref name="scratch"/> must be at least <see cref="ScratchSize(BitMatrix, int)"/>
+    /// </summary>
+    public static BitMatrix Closing2D(BitMatrix matrix, int radius, int[] scratch)
+    {
+        Dilate2D(matrix, radius, scratch);
+        Erode2D(matrix, radius, scratch);
 
-            // pre-load samples
-            for (var i = 0; i < radius; i++)
-            {
-                samples[i] = src[yOff]; // left side
-                samples[i + radius] = src[yOff + i]; // right side
-            }
+        return matrix;
+    }
 
-            var si = samples.length - 1; // index of next sample to overwrite.
+    /// <summary>
+    /// Set each bit if any bit in the same column, from y-radius+1 to y+radius, is set.
+    /// Works on 32 columns at a time.
+    /// </summary>
+    private static void GrowBitColumns(BitMatrix matrix, int radius, int[] scratch)
+    {
+        if (radius > DIRECT_RADIUS) GrowBitColumnsBlocked(matrix, radius, scratch);
+        else GrowBitColumnsDirect(matrix, radius, scratch);
+    }
 
-            // main section
-            var safeEnd = srcWidth - radius;
-            for (var x = 0; x < safeEnd; x++)
-            {
-                samples[si++] = src[yOff + x + radius];
-                if (si >= samples.length) si = 0;
+    /// <summary>
+    /// Column growth for small radii: OR together every row in the window
+    /// </summary>
+    private static void GrowBitColumnsDirect(BitMatrix matrix, int radius, int[] scratch)
+    {
+        var bits    = matrix.getBits();
+        var rowSize = matrix.getRowSize();
+        var height  = matrix.getHeight();
+        var bottom  = height - 1;
 
-                var min = samples[0];
-                for (var i = 1; i < samples.length; i++) { if (samples[i] < min) min = samples[i]; }
-                temp[x] = min;
-            }
+        System.arraycopy(bits, 0, scratch, 0, rowSize * height);
+
+        for (var y = 0; y < height; y++)
+        {
+            var yOff  = y * rowSize;
+            var first = Math.max(y - radius + 1, 0);
+            var last  = Math.min(y + radius, bottom);
 
-            // runoff
-            for (var x = safeEnd; x < srcWidth; x++)
+            System.arraycopy(scratch, first * rowSize, bits, yOff, rowSize);
+            for (var row = first + 1; row <= last; row++)
             {
-                samples[si++] = src[yOff + end];
-                if (si >= samples.length) si = 0;
+                var rOff = row * rowSize;
+                for (var i = 0; i < rowSize; i++) { bits[yOff + i] |= scratch[rOff + i]; }
+            }
+        }
+    }
 
-                var min = samples[0];
-                for (var i = 1; i < samples.length; i++) { if (samples[i] < min) min = samples[i]; }
-                temp[x] = min;
+    /// <summary>
+    /// Column growth for large radii, with a constant cost per word.
+    /// Same block scheme as <see cref="MaxLine"/>, with whole rows of words as the samples.
+    /// </summary>
+    private static void GrowBitColumnsBlocked(BitMatrix matrix, int radius, int[] scratch)
+    {
+        var bits    = matrix.getBits();
+        var rowSize = matrix.getRowSize();
+        var height  = matrix.getHeight();
+        var window  = radius * 2;
+        var padded  = height + window - 1; // row y is at padded index y + radius - 1
+        var lead    = radius - 1;
+        var suffix  = padded * rowSize;    // start of the 'from end' half of scratch
+
+        // running OR from the start of each block
+        var b = 0;
+        for (var q = 0; q < padded; q++)
+        {
+            var y    = q - lead;
+            var qOff = q * rowSize;
+            var real = y >= 0 && y < height;
+            var yOff = y * rowSize;
+            for (var i = 0; i < rowSize; i++)
+            {
+                var v = real ? bits[yOff + i] : 0;
+                scratch[qOff + i] = (b == 0) ? v : v | scratch[qOff - rowSize + i];
             }
+            if (++b == window) b = 0;
+        }
 
-            // copy back
-            for (var x = 0; x < srcWidth; x++)
+        // running OR from the end of each block
+        b = (padded - 1) % window;
+        for (var q = padded - 1; q >= 0; q--)
+        {
+            var y    = q - lead;
+            var qOff = suffix + q * rowSize;
+            var real = y >= 0 && y < height;
+            var yOff = y * rowSize;
+            var restart = q == padded - 1 || b == window - 1;
+            for (var i = 0; i < rowSize; i++)
             {
-                src[yOff + x] = temp[x];
+                var v = real ? bits[yOff + i] : 0;
+                scratch[qOff + i] = restart ? v : v | scratch[qOff + rowSize + i];
             }
+            if (--b < 0) b = window - 1;
+        }
+
+        // each window is the tail of one block and the head of the next
+        for (var y = 0; y < height; y++)
+        {
+            var yOff     = y * rowSize;
+            var endOff   = suffix + y * rowSize;
+            var startOff = (y + window - 1) * rowSize;
+            for (var i = 0; i < rowSize; i++) { bits[yOff + i] = scratch[endOff + i] | scratch[startOff + i]; }
         }
     }
 
     /// <summary>
-    /// Erode samples only vertically
+    /// Set each bit if any bit in the same row, from x-radius+1 to x+radius, is set.
+    /// The window is split into x..x+radius and x-radius+1..x, and each half is built by
+    /// doubling (x|x+1, then that with x+2, x+4...), so the cost grows with log(radius)
+    /// and each step handles 32 pixels at a time.
+    /// Padding bits past the matrix width must be clear.
     /// </summary>
-    public static void ErodeColumns(byte[] src, int radius, int srcWidth, int srcHeight)
+    private static void GrowBitRows(BitMatrix matrix, int radius, int[] scratch)
     {
-        if (radius < 1) return;
-        if (srcHeight < radius) return;
+        var bits     = matrix.getBits();
+        var rowSize  = matrix.getRowSize();
+        var height   = matrix.getHeight();
+        var lastMask = PaddingMask(matrix.getWidth());
+
+        for (var y = 0; y < height; y++)
+        {
+            var yOff = y * rowSize;
+            System.arraycopy(bits, yOff, scratch, 0, rowSize);
+            System.arraycopy(bits, yOff, scratch, rowSize, rowSize);
 
-        var samples = new byte[radius * 2]; // search window
-        var temp    = new byte[srcHeight]; // temporary column values
+            SpreadBitsBack(scratch, 0, rowSize, radius + 1); // bit x is OR of x .. x+radius
+            SpreadBitsForward(scratch, rowSize, rowSize, radius); // bit x is OR of x-radius+1 .. x
 
-        for (var x = 0; x < srcWidth; x++)
+            for (var i = 0; i < rowSize; i++) { bits[yOff + i] = scratch[i] | scratch[rowSize + i]; }
+            bits[yOff + rowSize - 1] &= lastMask;
+        }
+    }
+
+    /// <summary>
+    /// Set each bit in a packed row if any of the <paramref name="span"/> bits starting at it are set.
+    /// Reading ahead while writing in ascending order is safe in place.
+    /// </summary>
+    private static void SpreadBitsBack(int[] row, int rowOff, int rowSize, int span)
+    {
+        var covered = 1;
+        while (covered < span)
         {
-            // pre-load samples
-            var yOff    = x;
-            for (var i = 0; i < radius; i++)
-            {
-                samples[i] = src[x]; // top side
-                samples[i + radius] = src[yOff]; // bottom side
-                yOff += srcWidth;
-            }
+            var step = Math.min(covered, span - covered);
+            for (var i = 0; i < rowSize; i++) { row[rowOff + i] |= ShiftedWord(row, rowOff, rowSize, i, step); }
+            covered += step;
+        }
+    }
 
-            var si = samples.length - 1; // index of next sample to overwrite.
+    /// <summary>
+    /// Set each bit in a packed row if any of the <paramref name="span"/> bits ending at it are set.
+    /// Reading behind while writing in descending order is safe in place.
+    /// </summary>
+    private static void SpreadBitsForward(int[] row, int rowOff, int rowSize, int span)
+    {
+        var covered = 1;
+        while (covered < span)
+        {
+            var step = Math.min(covered, span - covered);
+            for (var i = rowSize - 1; i >= 0; i--) { row[rowOff + i] |= ShiftedWord(row, rowOff, rowSize, i, -step); }
+            covered += step;
+        }
+    }
 
-            // main section
-            var safeEnd = srcHeight - radius - 1;
-            yOff = x + (radius * srcWidth);
-            for (var y = 0; y < safeEnd; y++)
-            {
-                samples[si++] = src[yOff];
-                if (si >= samples.length) si = 0;
-                yOff += srcWidth;
+    /// <summary>
+    /// Word <paramref name="index"/> of a packed row, as if every bit x was read from x + <paramref name="offset"/>.
+    /// Bits outside the row read as zero.
+    /// </summary>
+    private static int ShiftedWord(int[] row, int rowOff, int rowSize, int index, int offset)
+    {
+        var start = (index << 5) + offset;
+        var wi    = start >> 5;
+        var shift = start & 0x1f;
 
-                var min  = samples[0];
-                for (var i = 1; i < samples.length; i++) { if (samples[i] < min) min = samples[i]; }
-                temp[y] = min;
-            }
+        var low = (wi >= 0 && wi < rowSize) ? row[rowOff + wi] : 0;
+        if (shift == 0) return low;
 
-            // runoff
-            for (var y = safeEnd; y < srcHeight; y++)
-            {
-                samples[si++] = src[yOff];
-                if (si >= samples.length) si = 0;
+        var high = (wi + 1 >= 0 && wi + 1 < rowSize) ? row[rowOff + wi + 1] : 0;
+        return (low >>> shift) | (high << (32 - shift));
+    }
 
-                var min  = samples[0];
-                for (var i = 1; i < samples.length; i++) { if (samples[i] < min) min = samples[i]; }
-                temp[y] = min;
-            }
+    /// <summary>
+    /// Mask for the bits of the last word in each row that are inside the matrix
+    /// </summary>
+    private static int PaddingMask(int width)
+    {
+        var used = width & 0x1f;
+        return used == 0 ? -1 : (1 << used) - 1;
+    }
 
-            // copy back
-            yOff = x;
-            for (var y = 0; y < srcHeight; y++)
-            {
-                src[yOff] = temp[y];
-                yOff += srcWidth;
-            }
-        }
+    /// <summary>
+    /// Clear any bits past the right edge of the matrix
+    /// </summary>
+    private static void ClearPadding(BitMatrix matrix)
+    {
+        var mask = PaddingMask(matrix.getWidth());
+        if (mask == -1) return;
+
+        var bits    = matrix.getBits();
+        var rowSize = matrix.getRowSize();
+        for (var i = rowSize - 1; i < bits.length; i += rowSize) { bits[i] &= mask; }
     }
 }
@@ -0,0 +1,223 @@
+package com.ieb.zxingtest;
+
+import com.google.zxing.Binarizer;
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.common.BitArray;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.common.RunLengthRow;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Thresholds one frame at several exposures and polarities at once.
+ * <p>
+ * Every exposure on the same frame and scale shares the same local mean, so that is worked out
+ * once (with the same running sums as {@link UnsharpMaskBinarizer}), and each pixel is compared
+ * against it for every setting in the same pass. Each output matrix is bit for bit what
+ * UnsharpMaskBinarizer would give for its setting, but the batch costs little more than one.
+ * <p>
+ * The outputs are given as {@link BinaryBitmap}s, in the order the settings were given, for readers
+ * to try in turn. Matrices are all made the first time any of them is asked for. Single rows
+ * (used by 1D readers) come from an UnsharpMaskBinarizer with the same setting, as before.
+ */
+public class MultiThresholdBinarizer {
+    private static final int UPPER_LIMIT = 251; // as UnsharpMaskBinarizer
+    private static final int LOWER_LIMIT = 4;
+
+    private final LuminanceSource source;
+    private final List<ThresholdParameters> settings;
+    private final List<BinaryBitmap> bitmaps;
+    private final int scale;
+    private final int morph;
+    private BitMatrix[] matrices;
+
+    // Kept between frames on the same thread, like UnsharpMaskBinarizer's
+    private static final ThreadLocal<int[][]> scratch = ThreadLocal.withInitial(() -> new int[2][]);
+
+    /**
+     * @param source   luminance to threshold
+     * @param settings settings to threshold with. All must have the same scale and morph; only exposure and invert can differ.
+     */
+    public MultiThresholdBinarizer(LuminanceSource source, List<ThresholdParameters> settings) {
+        if (settings.isEmpty()) throw new IllegalArgumentException("No threshold settings");
+        this.source = source;
+        this.settings = new ArrayList<>(settings);
+        scale = settings.get(0).scale;
+        morph = settings.get(0).morph;
+        for (ThresholdParameters p : settings) {
+            if (p.scale != scale || p.morph != morph) throw new IllegalArgumentException("Settings in a batch must share scale and morph");
+        }
+
+        bitmaps = new ArrayList<>(settings.size());
+        for (int i = 0; i < settings.size(); i++) {
+            bitmaps.add(new BinaryBitmap(new Plane(source, i)));
+        }
+    }
+
+    /** One bitmap for each setting, in the order given */
+    public List<BinaryBitmap> getBitmaps() {
+        return bitmaps;
+    }
+
+    /** Setting used for a bitmap, by index */
+    public ThresholdParameters getSettings(int index) {
+        return settings.get(index);
+    }
+
+    /** Number of settings in the batch */
+    public int size() {
+        return settings.size();
+    }
+
+    private synchronized BitMatrix matrix(int index) {
+        if (matrices == null) matrices = thresholdAll();
+        return matrices[index];
+    }
+
+    private BitMatrix[] thresholdAll() {
+        int width = source.getWidth();
+        int height = source.getHeight();
+        byte[] image = source.getMatrix();
+        int count = settings.size();
+
+        var buffers = scratch.get();
+        if (buffers[0] == null || buffers[0].length < image.length) buffers[0] = new int[image.length + 32];
+        int[] colLuminances = buffers[0];
+
+        // Each setting's bias, with the normal settings first and the inverted ones after, so the
+        // polarities get their own loops. A pixel is black for a normal setting when
+        // (actual - target) is negative, and for an inverted one when (target - actual) is.
+        int[] bias = new int[count];
+        var matrices = new BitMatrix[count];
+        var planeBits = new int[count][];
+        int normalCount = 0;
+        for (ThresholdParameters p : settings) {
+            if (!p.invert) normalCount++;
+        }
+        int normal = 0;
+        int inverted = normalCount;
+        for (int i = 0; i < count; i++) {
+            var p = settings.get(i);
+            int k = p.invert ? inverted++ : normal++;
+            bias[k] = p.exposure;
+            matrices[i] = new BitMatrix(width, height);
+            planeBits[k] = matrices[i].getBits();
+        }
+        int rowSize = matrices[0].getRowSize();
+        int[] words = new int[count];
+
+        int radius = 1 << scale;
+        int diam = scale + 1;
+        int right = width - 1;
+        int span = width * radius;
+        int leadIn = (-radius) * width;
+
+        for (int x = 0; x < width; x++) { // for each column, exactly as UnsharpMaskBinarizer
+            int sum = 0;
+
+            int row = leadIn;
+            for (int i = -radius; i < radius; i++) {
+                int y = Math.max(row, 0);
+                sum += image[y + x] & 0xFF;
+                row += width;
+            }
+
+            row = 0;
+            var end = image.length - x - 1;
+            for (int y = 0; y < height; y++) {
+                colLuminances[row + x] = sum >>> diam;
+
+                int yr = Math.min(row + span, end);
+                int yl = Math.max(row - span, 0);
+                sum += (image[yr + x] & 0xFF) - (image[yl + x] & 0xFF);
+                row += width;
+            }
+        }
+
+        for (int y = 0; y < height; y++) { // for each scanline, one mean and every setting
+            int yOff = y * width;
+            int bitOff = y * rowSize;
+            int sum = 0;
+
+            for (int i = -radius; i < radius; i++) {
+                int x = Math.max(i, 0);
+                sum += colLuminances[yOff + x];
+            }
+
+            for (int x = 0; x < width; x++) {
+                int target = sum >>> diam;
+                if (target > UPPER_LIMIT) target = UPPER_LIMIT;
+                if (target < LOWER_LIMIT) target = LOWER_LIMIT;
+
+                int difference = (image[yOff + x] & 0xFF) - target;
+                int bit = x & 0x1f;
+                for (int k = 0; k < normalCount; k++) {
+                    words[k] |= ((difference - bias[k]) >>> 31) << bit;
+                }
+                for (int k = normalCount; k < count; k++) {
+                    words[k] |= ((bias[k] - difference) >>> 31) << bit;
+                }
+                if (bit == 0x1f) {
+                    for (int k = 0; k < count; k++) {
+                        planeBits[k][bitOff + (x >>> 5)] = words[k];
+                        words[k] = 0;
+                    }
+                }
+
+                int xr = Math.min(x + radius, right);
+                int xl = Math.max(x - radius, 0);
+                sum += colLuminances[yOff + xr] - colLuminances[yOff + xl];
+            }
+            if ((width & 0x1f) != 0) {
+                for (int k = 0; k < count; k++) {
+                    planeBits[k][bitOff + (width >>> 5)] = words[k];
+                    words[k] = 0;
+                }
+            }
+        }
+
+        if (morph > 0) {
+            var size = MorphologicalTransforms.ScratchSize(matrices[0], morph);
+            if (buffers[1] == null || buffers[1].length < size) buffers[1] = new int[size];
+            for (BitMatrix matrix : matrices) {
+                MorphologicalTransforms.Opening2D(matrix, morph, buffers[1]);
+            }
+        }
+        return matrices;
+    }
+
+    /** One output of the batch */
+    private class Plane extends Binarizer {
+        private final int index;
+        private final UnsharpMaskBinarizer rows;
+
+        Plane(LuminanceSource source, int index) {
+            super(source);
+            this.index = index;
+            var p = settings.get(index);
+            rows = new UnsharpMaskBinarizer(source, p.invert, p.scale, p.exposure, p.morph);
+        }
+
+        @Override
+        public BitArray getBlackRow(int y, BitArray row) {
+            return rows.getBlackRow(y, row);
+        }
+
+        @Override
+        public RunLengthRow getBlackRuns(int y, RunLengthRow runs) {
+            return rows.getBlackRuns(y, runs);
+        }
+
+        @Override
+        public BitMatrix getBlackMatrix() {
+            return matrix(index);
+        }
+
+        @Override
+        public Binarizer createBinarizer(LuminanceSource source) {
+            return rows.createBinarizer(source);
+        }
+    }
+}
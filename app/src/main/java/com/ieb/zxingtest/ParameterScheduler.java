@@ -0,0 +1,129 @@
+package com.ieb.zxingtest;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Learns which threshold settings are finding codes, and tries those first.
+ * <p>
+ * This is a simple multi-armed bandit: each set of parameters keeps a decaying count of
+ * attempts and hits, and is ranked by its recent hit rate. A fixed fraction of picks are
+ * random, so settings that have fallen behind still get tried when conditions change.
+ */
+public class ParameterScheduler {
+    private static final double DECAY = 0.97; // how fast old results are forgotten
+    private static final double EXPLORE = 0.1; // fraction of picks made at random
+    private static final double MAX_PRIOR_ATTEMPTS = 20.0; // limit on how much a loaded state outweighs new results
+
+    private final List<ThresholdParameters> arms;
+    private final Map<ThresholdParameters, double[]> stats = new HashMap<>(); // [hits, attempts]
+    private final Random random;
+
+    /**
+     * Create a scheduler
+     * @param arms all the parameter sets that can be picked
+     * @param seed random seed for exploration
+     */
+    public ParameterScheduler(List<ThresholdParameters> arms, long seed) {
+        this.arms = new ArrayList<>(arms);
+        this.random = new Random(seed);
+        for (ThresholdParameters arm : arms) {
+            stats.put(arm, new double[2]);
+        }
+    }
+
+    /** Pick the settings to try on the next frame */
+    public synchronized ThresholdParameters next() {
+        if (random.nextDouble() < EXPLORE) {
+            return arms.get(random.nextInt(arms.size()));
+        }
+        return order().get(0);
+    }
+
+    /** All settings, best first */
+    public synchronized List<ThresholdParameters> order() {
+        var result = new ArrayList<>(arms);
+        result.sort((a, b) -> {
+            var cmp = Double.compare(score(b), score(a));
+            if (cmp != 0) return cmp;
+            return Double.compare(stats.get(a)[1], stats.get(b)[1]); // prefer the less tried
+        });
+        return result;
+    }
+
+    /** Record the outcome of trying a set of parameters */
+    public synchronized void record(ThresholdParameters parameters, boolean hit) {
+        var s = stats.get(parameters);
+        if (s == null) return; // not one of ours (e.g. manual settings)
+
+        s[0] = s[0] * DECAY + (hit ? 1.0 : 0.0);
+        s[1] = s[1] * DECAY + 1.0;
+    }
+
+    /** Record the same outcome for a set of parameters */
+    public synchronized void record(List<ThresholdParameters> parameters, boolean hit) {
+        for (ThresholdParameters p : parameters) {
+            record(p, hit);
+        }
+    }
+
+    /** Recent hit rate, with a prior of one hit in two attempts so untried settings get a go */
+    public synchronized double score(ThresholdParameters parameters) {
+        var s = stats.get(parameters);
+        if (s == null) return 0.0;
+        return (s[0] + 1.0) / (s[1] + 2.0);
+    }
+
+    /**
+     * Write the learned statistics as text, for {@link #loadState(String)}.
+     * One line per setting: scale, exposure, invert, morph, hits, attempts
+     */
+    public synchronized String saveState() {
+        var sb = new StringBuilder();
+        for (ThresholdParameters arm : arms) {
+            var s = stats.get(arm);
+            if (s[1] <= 0.0) continue;
+            sb.append(arm.scale).append(' ')
+                    .append(arm.exposure).append(' ')
+                    .append(arm.invert ? 1 : 0).append(' ')
+                    .append(arm.morph).append(' ')
+                    .append((float) s[0]).append(' ')
+                    .append((float) s[1]).append('\n');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Use statistics from an earlier session as a starting point.
+     * Settings that are no longer in the search range, and badly formed lines, are ignored.
+     */
+    public synchronized void loadState(String state) {
+        if (state == null) return;
+
+        for (String line : state.split("\n")) {
+            var parts = line.trim().split(" ");
+            if (parts.length != 6) continue;
+            try {
+                var arm = new ThresholdParameters(
+                        Integer.parseInt(parts[0]), Integer.parseInt(parts[1]),
+                        Integer.parseInt(parts[2]) != 0, Integer.parseInt(parts[3]));
+                var s = stats.get(arm);
+                if (s == null) continue;
+
+                var hits = Double.parseDouble(parts[4]);
+                var attempts = Double.parseDouble(parts[5]);
+                if (attempts <= 0.0 || hits < 0.0 || hits > attempts) continue;
+
+                // Scale down long histories, so this session can still change our mind
+                var weight = Math.min(1.0, MAX_PRIOR_ATTEMPTS / attempts);
+                s[0] = hits * weight;
+                s[1] = attempts * weight;
+            } catch (NumberFormatException e) {
+                // skip bad line
+            }
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package com.ieb.zxingtest;
+
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.Reader;
+import com.google.zxing.Result;
+import com.google.zxing.ResultPoint;
+import com.google.zxing.ResultPointCallback;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Tries many threshold settings against a single frame, spread over a fixed pool of threads.
+ * The first successful decode cancels the remaining attempts, including any part way through.
+ * All the attempts share one {@link IntegralImage} of the frame, so each extra scale or exposure
+ * only costs a constant-time lookup per pixel to threshold.
+ */
+public class ParameterSweep {
+    private final int threads;
+    private final ExecutorService pool;
+    private final ThreadLocal<Reader> readers;
+    private final ThreadLocal<Sweep> working = new ThreadLocal<>(); // the sweep each worker thread is on, for result points
+
+    /** Outcome of a sweep */
+    public static class Hit {
+        public final Result result;
+        public final ThresholdParameters parameters;
+        public final BinaryBitmap bitmap;
+        /** Settings that were tried in full on this frame before the hit, and found nothing */
+        public final List<ThresholdParameters> misses;
+
+        Hit(Result result, ThresholdParameters parameters, BinaryBitmap bitmap, List<ThresholdParameters> misses) {
+            this.result = result;
+            this.parameters = parameters;
+            this.bitmap = bitmap;
+            this.misses = misses;
+        }
+    }
+
+    /**
+     * Create a sweep pool
+     * @param threads number of worker threads
+     * @param readerFactory creates a reader for each worker, reporting possible result points to the
+     *                      callback it is given. Readers are not shared between threads.
+     */
+    public ParameterSweep(int threads, Function<ResultPointCallback, Reader> readerFactory) {
+        this.threads = Math.max(threads, 1);
+        var count = new AtomicInteger();
+        pool = Executors.newFixedThreadPool(this.threads, r -> {
+            var t = new Thread(r, "BarcodeSweep-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        readers = ThreadLocal.withInitial(() -> readerFactory.apply(this::onWorkerPoint));
+    }
+
+    /** Pass a worker's possible result point on to the sweep it is working on */
+    private void onWorkerPoint(ResultPoint point) {
+        var sweep = working.get();
+        if (sweep != null && sweep.points != null) sweep.points.foundPossibleResultPoint(point);
+    }
+
+    /** Number of worker threads */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Try each of the parameter sets on the luminance source, roughly in order.
+     * Returns as soon as any one decodes, or null if none of them do, or the sweep is shut down.
+     * Workers still part way through an attempt are interrupted, and stop at the next reader.
+     * <p>
+     * Possible result points found by any setting are passed to `points`, on the worker threads,
+     * possibly several at once. Workers still stopping may report after this returns.
+     * `points` may be null.
+     */
+    public Hit scan(LuminanceSource lum, List<ThresholdParameters> candidates, ResultPointCallback points) throws InterruptedException {
+        var sweep = new Sweep(lum, new IntegralImage(lum), candidates, points);
+        var workers = new ArrayList<Worker>(threads);
+        try {
+            for (int i = 0; i < threads; i++) {
+                var worker = new Worker(sweep);
+                workers.add(worker);
+                pool.execute(worker);
+            }
+            return sweep.await();
+        } catch (RejectedExecutionException e) {
+            return null; // shut down while this frame was starting
+        } finally {
+            // Don't let this frame's work hold up the next
+            for (Worker worker : workers) {
+                worker.cancel(true);
+            }
+        }
+    }
+
+    /** Stop all workers. The sweep can't be used after this. */
+    public void shutdown() {
+        // Workers still queued never run. Cancel them, so a scan waiting on them sees them finish.
+        for (Runnable r : pool.shutdownNow()) {
+            if (r instanceof Future) ((Future<?>) r).cancel(false);
+        }
+    }
+
+    /**
+     * One thread's share of a sweep. Tells the sweep it has finished exactly once,
+     * whether it ran, or was cancelled or dropped before it started.
+     */
+    private static class Worker extends FutureTask<Void> {
+        private final Sweep sweep;
+        private final AtomicBoolean claimed = new AtomicBoolean();
+
+        Worker(Sweep sweep) {
+            super(sweep::work, null);
+            this.sweep = sweep;
+        }
+
+        @Override
+        public void run() {
+            if (!claimed.compareAndSet(false, true)) return;
+            try {
+                super.run();
+            } finally {
+                sweep.finished();
+            }
+        }
+
+        @Override
+        protected void done() {
+            if (isCancelled() && claimed.compareAndSet(false, true)) sweep.finished();
+        }
+    }
+
+    /** State shared between the workers for a single frame */
+    private class Sweep {
+        private final LuminanceSource lum;
+        private final IntegralImage integral;
+        private final List<ThresholdParameters> candidates;
+        private final ResultPointCallback points;
+        private final AtomicInteger next = new AtomicInteger();
+        private final List<ThresholdParameters> misses = new ArrayList<>();
+        private int running = threads;
+        private Hit hit;
+
+        Sweep(LuminanceSource lum, IntegralImage integral, List<ThresholdParameters> candidates, ResultPointCallback points) {
+            this.lum = lum;
+            this.integral = integral;
+            this.candidates = candidates;
+            this.points = points;
+        }
+
+        void work() {
+            var reader = readers.get();
+            working.set(this);
+            try {
+                tryCandidates(reader);
+            } finally {
+                working.remove();
+            }
+        }
+
+        private void tryCandidates(Reader reader) {
+            while (!isDone() && !Thread.currentThread().isInterrupted()) {
+                var idx = next.getAndIncrement();
+                if (idx >= candidates.size()) return;
+
+                var p = candidates.get(idx);
+                var bitmap = new BinaryBitmap(new IntegralUnsharpMaskBinarizer(lum, integral, p.invert, p.scale, p.exposure, p.morph));
+                try {
+                    reader.reset();
+                    var result = reader.decode(bitmap);
+                    if (result != null) {
+                        found(result, p, bitmap);
+                        return;
+                    }
+                } catch (Exception e) {
+                    // Not found with these settings. Try the next.
+                }
+                // An interrupted attempt may have stopped early, so doesn't count against the settings
+                if (!Thread.currentThread().isInterrupted()) missed(p);
+            }
+        }
+
+        private synchronized boolean isDone() {
+            return hit != null;
+        }
+
+        private synchronized void found(Result result, ThresholdParameters p, BinaryBitmap bitmap) {
+            if (hit == null) hit = new Hit(result, p, bitmap, new ArrayList<>(misses));
+            notifyAll();
+        }
+
+        private synchronized void missed(ThresholdParameters p) {
+            misses.add(p);
+        }
+
+        synchronized void finished() {
+            running--;
+            notifyAll();
+        }
+
+        synchronized Hit await() throws InterruptedException {
+            while (hit == null && running > 0) {
+                wait();
+            }
+            return hit;
+        }
+    }
+}
@@ -0,0 +1,311 @@
+package com.ieb.zxingtest;
+
+import android.app.Activity;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffXfermode;
+import android.graphics.Rect;
+import android.util.Log;
+import android.widget.ImageView;
+
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.common.BitMatrix;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Draws the camera and threshold previews on a thread of their own, at a capped frame rate.
+ * <p>
+ * The decode thread only copies the luminance bytes and the packed threshold bits into buffers
+ * kept here, and only when a preview is due and the last one has been drawn. The preview thread
+ * loads the luminance straight into an ALPHA_8 bitmap, and the canvas draws that as grey onto
+ * the output, so no ARGB int array is built. Threshold bits are spread out to bytes the same way.
+ * <p>
+ * Each view has three output bitmaps. The one on screen and the one waiting to go on screen
+ * are never drawn over, so previews don't tear.
+ */
+public class PreviewRenderer {
+    private static final String TAG = "PreviewRenderer";
+    private static final int OUTPUTS = 3; // on screen, waiting for the UI thread, and being drawn
+
+    private final Activity act;
+    private final ImageView previewView;
+    private final ImageView diagnosticView;
+    private final long frameInterval; // nanoseconds between previews
+    private Thread thread;
+
+    // Handed over from the decode thread. Only written while not `drawing`.
+    private byte[] luminance;
+    private ByteBuffer luminanceBuffer;
+    private int width, height;
+    private int[] bits;
+    private int bitsWidth, bitsHeight, bitsRowSize;
+    private boolean hasBits;
+    private boolean inverted;
+    private final Rect box = new Rect();
+    private boolean hasBox;
+
+    private boolean running;
+    private boolean queued;
+    private boolean drawing;
+    private long nextDue;
+
+    // Only used on the preview thread
+    private final Canvas canvas = new Canvas();
+    private final Paint greyPaint = new Paint();
+    private final Paint boxPaint = new Paint();
+    private Bitmap luminanceAlpha;
+    private Bitmap bitsAlpha;
+    private byte[] bitBytes;
+    private ByteBuffer bitBuffer;
+    private final Output preview;
+    private final Output diagnostic;
+
+    /**
+     * @param act             activity that owns the views
+     * @param previewView     view for the camera luminance. May be null.
+     * @param diagnosticView  view for the thresholded image. May be null.
+     * @param framesPerSecond most previews drawn each second
+     */
+    public PreviewRenderer(Activity act, ImageView previewView, ImageView diagnosticView, int framesPerSecond) {
+        this.act = act;
+        this.previewView = previewView;
+        this.diagnosticView = diagnosticView;
+        frameInterval = 1_000_000_000L / Math.max(framesPerSecond, 1);
+        preview = new Output(act);
+        diagnostic = new Output(act);
+
+        greyPaint.setColor(Color.WHITE); // ALPHA_8 bitmaps are drawn in the paint colour
+        boxPaint.setColor(Color.GREEN);
+        boxPaint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.MULTIPLY)); // keep only the green channel
+    }
+
+    /** Start the preview thread */
+    public synchronized void start() {
+        if (thread != null) return;
+        running = true;
+        thread = new Thread(this::renderLoop, "BarcodePreview");
+        thread.start();
+    }
+
+    /** Stop the preview thread, and wait for it to finish */
+    public void stop() {
+        Thread t;
+        synchronized (this) {
+            t = thread;
+            if (t == null) return;
+            running = false;
+            thread = null;
+            notifyAll();
+        }
+        try {
+            t.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Offer a frame for preview. Called on the decode thread.
+     * The frame is copied only if a preview is due and the preview thread isn't busy,
+     * otherwise this returns false straight away.
+     *
+     * @param frame     camera luminance
+     * @param threshold thresholded image to show in the diagnostic view, or null to leave it as it is
+     * @param inverted  true if the threshold was inverted
+     * @param match     region of a decoded code to highlight, or null
+     * @param urgent    if true, ignore the frame rate cap (so a decoded code is always shown)
+     */
+    public synchronized boolean submit(ByteImage frame, BinaryBitmap threshold, boolean inverted, Rect match, boolean urgent) {
+        if (!running || drawing) return false;
+        var now = System.nanoTime();
+        if (!urgent && now - nextDue < 0) return false;
+
+        var size = frame.width * frame.height;
+        if (previewView != null) {
+            if (luminance == null || luminance.length < size) {
+                luminance = new byte[size];
+                luminanceBuffer = ByteBuffer.wrap(luminance);
+            }
+            System.arraycopy(frame.image, 0, luminance, 0, size);
+            width = frame.width;
+            height = frame.height;
+        }
+
+        hasBits = false;
+        if (diagnosticView != null && threshold != null) {
+            try {
+                var matrix = threshold.getBlackMatrix();
+                copyBits(matrix);
+                this.inverted = inverted;
+            } catch (NotFoundException e) {
+                // Nothing to show
+            }
+        }
+
+        hasBox = match != null;
+        if (hasBox) box.set(match.left, match.top, match.right, match.bottom);
+
+        nextDue = now + frameInterval;
+        queued = true;
+        notifyAll();
+        return true;
+    }
+
+    private void copyBits(BitMatrix matrix) {
+        var src = matrix.getBits();
+        var count = matrix.getRowSize() * matrix.getHeight();
+        if (bits == null || bits.length < count) bits = new int[count];
+        System.arraycopy(src, 0, bits, 0, count);
+        bitsWidth = matrix.getWidth();
+        bitsHeight = matrix.getHeight();
+        bitsRowSize = matrix.getRowSize();
+        hasBits = true;
+    }
+
+    private void renderLoop() {
+        while (true) {
+            synchronized (this) {
+                while (running && !queued) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (!running) return;
+                queued = false;
+                drawing = true;
+            }
+
+            try {
+                if (previewView != null && width > 0) drawPreview();
+                if (diagnosticView != null && hasBits) drawDiagnostic();
+            } catch (Throwable t) {
+                Log.e(TAG, "Failed to draw preview: " + t);
+            } finally {
+                synchronized (this) {
+                    drawing = false;
+                }
+            }
+        }
+    }
+
+    private void drawPreview() {
+        luminanceAlpha = alphaBitmap(luminanceAlpha, width, height);
+        luminanceBuffer.rewind();
+        luminanceAlpha.copyPixelsFromBuffer(luminanceBuffer);
+
+        var out = preview.next(width, height);
+        canvas.setBitmap(out);
+        canvas.drawColor(Color.BLACK);
+        canvas.drawBitmap(luminanceAlpha, 0, 0, greyPaint);
+        if (hasBox) canvas.drawRect(box, boxPaint);
+        canvas.setBitmap(null);
+
+        preview.show(previewView, out);
+    }
+
+    private void drawDiagnostic() {
+        var size = bitsWidth * bitsHeight;
+        if (bitBytes == null || bitBytes.length < size) {
+            bitBytes = new byte[size];
+            bitBuffer = ByteBuffer.wrap(bitBytes);
+        }
+        unpackBits(bits, bitsRowSize, bitsWidth, bitsHeight, inverted, bitBytes);
+
+        bitsAlpha = alphaBitmap(bitsAlpha, bitsWidth, bitsHeight);
+        bitBuffer.rewind();
+        bitsAlpha.copyPixelsFromBuffer(bitBuffer);
+
+        var out = diagnostic.next(bitsWidth, bitsHeight);
+        canvas.setBitmap(out);
+        canvas.drawColor(Color.BLACK);
+        canvas.drawBitmap(bitsAlpha, 0, 0, greyPaint);
+        canvas.setBitmap(null);
+
+        diagnostic.show(diagnosticView, out);
+    }
+
+    /**
+     * Spread packed threshold bits out to one byte per pixel: 255 for white, 0 for black.
+     * Set bits are black, unless inverted.
+     */
+    private static void unpackBits(int[] bits, int rowSize, int width, int height, boolean invert, byte[] out) {
+        var flip = invert ? 0 : -1; // set bits become 0 (black) unless inverted
+        var i = 0;
+        for (int y = 0; y < height; y++) {
+            var yOff = y * rowSize;
+            for (int x = 0; x < width; x += 32) {
+                var chunk = bits[yOff + (x >>> 5)] ^ flip;
+                var end = Math.min(32, width - x);
+                for (int b = 0; b < end; b++) {
+                    out[i++] = (byte) -((chunk >>> b) & 1); // 1 -> 0xFF
+                }
+            }
+        }
+    }
+
+    /** An ALPHA_8 bitmap of the given size, reusing `bitmap` if it fits */
+    private static Bitmap alphaBitmap(Bitmap bitmap, int width, int height) {
+        if (bitmap != null && bitmap.getWidth() == width && bitmap.getHeight() == height) return bitmap;
+        return Bitmap.createBitmap(width, height, Bitmap.Config.ALPHA_8);
+    }
+
+    /**
+     * Output bitmaps for one view, and the hand-over to the UI thread.
+     * Bitmaps are written on one thread (here the preview thread, or the decode thread when
+     * {@link BarcodeScanner} draws previews itself) and shown on the UI thread.
+     */
+    static class Output {
+        private final Activity act;
+        private final Bitmap[] bitmaps = new Bitmap[OUTPUTS];
+        private final AtomicReference<Bitmap> pending = new AtomicReference<>();
+        private volatile Bitmap shown;
+
+        Output(Activity act) {
+            this.act = act;
+        }
+
+        /** An output bitmap that is neither on screen nor waiting to go on screen */
+        Bitmap next(int width, int height) {
+            var waiting = pending.get();
+            var onScreen = shown;
+            for (int i = 0; i < OUTPUTS; i++) {
+                var b = bitmaps[i];
+                if (b != null && (b == waiting || b == onScreen)) continue;
+                if (b == null || b.getWidth() != width || b.getHeight() != height) {
+                    b = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+                    bitmaps[i] = b;
+                }
+                return b;
+            }
+            throw new IllegalStateException("No free preview bitmap"); // can't happen with three
+        }
+
+        /**
+         * Put a bitmap on screen. If the UI thread hasn't got round to the last one yet,
+         * it shows this one instead. `shown` is set before `pending` is cleared,
+         * so {@link #next} never picks a bitmap the UI thread is about to show.
+         */
+        void show(ImageView view, Bitmap bitmap) {
+            if (view == null) return;
+            if (pending.getAndSet(bitmap) != null) return; // an update is already posted, and will pick this up
+
+            act.runOnUiThread(() -> {
+                while (true) {
+                    var latest = pending.get();
+                    if (latest == null) return;
+                    shown = latest;
+                    view.setImageBitmap(latest);
+                    if (pending.compareAndSet(latest, null)) return;
+                }
+            });
+        }
+    }
+}
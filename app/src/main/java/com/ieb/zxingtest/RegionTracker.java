@@ -0,0 +1,223 @@
+package com.ieb.zxingtest;
+
+import com.google.zxing.Result;
+import com.google.zxing.ResultPoint;
+import com.google.zxing.ResultPointCallback;
+
+/**
+ * Remembers where a code was last seen, so the next frames can be scanned in a small region
+ * around it instead of the whole frame. This is a big saving when codes keep turning up in
+ * the same place, like on a conveyor or when the user holds the phone still.
+ * <p>
+ * A decoded code, or enough possible result points (like QR finder patterns) without a decode,
+ * starts tracking. Each miss counts against the region, and after too many in a row the whole
+ * frame is scanned again. Partial hits move the region, but still count as misses, so a patch
+ * of texture that looks a bit like a code can't hold the scanner forever.
+ * <p>
+ * Pass this to {@link com.google.zxing.PresetListReader#setResultPointCallback(ResultPointCallback)}
+ * to pick up partial hits. An instance should only be used by one thread at a time.
+ * <p>
+ * Regions found some other way can be scanned with {@link #useRegion(int, int, int, int)}, and
+ * their results are mapped back to frame coordinates the same way.
+ */
+public class RegionTracker implements ResultPointCallback {
+    private static final int MIN_PADDING = 48; // pixels around the code, however small it is
+    private static final int MIN_SIZE = 256; // smallest region scanned, so the thresholder has some context
+    private static final int PARTIAL_POINTS = 3; // possible points needed for a partial hit. QR needs three finders.
+    private static final int MAX_POINTS = 16;
+
+    private final int missLimit;
+    private int misses;
+    private boolean tracking;
+
+    // Bounds of the last sighting, in frame coordinates
+    private float minX, minY, maxX, maxY;
+
+    // Region being scanned now
+    private int left, top, width, height;
+
+    // Possible points reported during the current scan, in region coordinates
+    private final float[] pointX = new float[MAX_POINTS];
+    private final float[] pointY = new float[MAX_POINTS];
+    private int pointCount;
+
+    /**
+     * @param missLimit number of scans in a row that can fail in the tracked region
+     *                  before going back to the whole frame. Zero never tracks.
+     */
+    public RegionTracker(int missLimit) {
+        this.missLimit = Math.max(missLimit, 0);
+    }
+
+    /**
+     * Pick the region to scan in a frame of the given size.
+     * Returns true if only part of the frame should be scanned,
+     * in which case {@link #left()}, {@link #top()}, {@link #width()} and {@link #height()} give the region.
+     */
+    public boolean beginScan(int frameWidth, int frameHeight) {
+        pointCount = 0;
+        left = 0;
+        top = 0;
+        width = frameWidth;
+        height = frameHeight;
+        if (!tracking) return false;
+
+        // Pad by half the code size each side, so it can move a bit between frames.
+        // 1D codes come back as a line, so pad on the longest side.
+        var pad = Math.max(MIN_PADDING, (int) (Math.max(maxX - minX, maxY - minY) / 2));
+        var x0 = (int) minX - pad;
+        var y0 = (int) minY - pad;
+        var x1 = (int) Math.ceil(maxX) + pad;
+        var y1 = (int) Math.ceil(maxY) + pad;
+
+        // Grow small regions around their centre
+        var minW = Math.min(MIN_SIZE, frameWidth);
+        var minH = Math.min(MIN_SIZE, frameHeight);
+        if (x1 - x0 < minW) {
+            x0 = (x0 + x1 - minW) / 2;
+            x1 = x0 + minW;
+        }
+        if (y1 - y0 < minH) {
+            y0 = (y0 + y1 - minH) / 2;
+            y1 = y0 + minH;
+        }
+
+        // Slide back inside the frame, then clip
+        if (x0 < 0) { x1 -= x0; x0 = 0; }
+        if (y0 < 0) { y1 -= y0; y0 = 0; }
+        if (x1 > frameWidth) { x0 = Math.max(0, x0 - (x1 - frameWidth)); x1 = frameWidth; }
+        if (y1 > frameHeight) { y0 = Math.max(0, y0 - (y1 - frameHeight)); y1 = frameHeight; }
+
+        if (x0 == 0 && y0 == 0 && x1 == frameWidth && y1 == frameHeight) return false; // nothing to save
+
+        left = x0;
+        top = y0;
+        width = x1 - x0;
+        height = y1 - y0;
+        return true;
+    }
+
+    /**
+     * Scan a region picked some other way this time, instead of the whole frame.
+     * Only call this after {@link #beginScan(int, int)} returns false.
+     * Possible points already reported were in the old region, so are dropped.
+     */
+    public void useRegion(int left, int top, int width, int height) {
+        pointCount = 0;
+        this.left = left;
+        this.top = top;
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Record the outcome of a scan started with {@link #beginScan(int, int)}.
+     * Returns the result with its points moved into frame coordinates, or null if there was no result.
+     */
+    public Result endScan(Result result) {
+        var frameResult = toFrame(result);
+        if (missLimit < 1) return frameResult;
+
+        if (frameResult != null && setBounds(frameResult.getResultPoints())) {
+            tracking = true;
+            misses = 0;
+            return frameResult;
+        }
+
+        if (pointCount >= PARTIAL_POINTS) {
+            // Something code-like was seen, but didn't decode. Look here next time.
+            minX = minY = Float.MAX_VALUE;
+            maxX = maxY = -Float.MAX_VALUE;
+            for (int i = 0; i < pointCount; i++) include(pointX[i] + left, pointY[i] + top);
+            if (!tracking) misses = 0;
+            tracking = true;
+        }
+
+        if (tracking && ++misses > missLimit) {
+            tracking = false;
+            misses = 0;
+        }
+        return frameResult;
+    }
+
+    /** Go back to scanning the whole frame */
+    public void reset() {
+        tracking = false;
+        misses = 0;
+        pointCount = 0;
+    }
+
+    /** True if a code has been seen recently, and the next scan will be in a region around it */
+    public boolean isTracking() {
+        return tracking;
+    }
+
+    /** Left edge of the region being scanned, in frame pixels */
+    public int left() {
+        return left;
+    }
+
+    /** Top edge of the region being scanned, in frame pixels */
+    public int top() {
+        return top;
+    }
+
+    /** Width of the region being scanned */
+    public int width() {
+        return width;
+    }
+
+    /** Height of the region being scanned */
+    public int height() {
+        return height;
+    }
+
+    /** Called by the readers as they find possible parts of a code */
+    @Override
+    public void foundPossibleResultPoint(ResultPoint point) {
+        if (point == null || pointCount >= MAX_POINTS) return;
+        pointX[pointCount] = point.getX();
+        pointY[pointCount] = point.getY();
+        pointCount++;
+    }
+
+    /** Move a result found in the scan region into frame coordinates */
+    private Result toFrame(Result result) {
+        if (result == null || (left == 0 && top == 0)) return result;
+
+        var points = result.getResultPoints();
+        ResultPoint[] moved = null;
+        if (points != null) {
+            moved = new ResultPoint[points.length];
+            for (int i = 0; i < points.length; i++) {
+                if (points[i] != null) moved[i] = new ResultPoint(points[i].getX() + left, points[i].getY() + top);
+            }
+        }
+
+        var frameResult = new Result(result.getText(), result.getRawBytes(), result.getNumBits(),
+                moved, result.getBarcodeFormat(), result.getTimestamp());
+        frameResult.putAllMetadata(result.getResultMetadata());
+        return frameResult;
+    }
+
+    private boolean setBounds(ResultPoint[] points) {
+        if (points == null) return false;
+
+        minX = minY = Float.MAX_VALUE;
+        maxX = maxY = -Float.MAX_VALUE;
+        var found = false;
+        for (ResultPoint point : points) {
+            if (point == null) continue;
+            include(point.getX(), point.getY());
+            found = true;
+        }
+        return found;
+    }
+
+    private void include(float x, float y) {
+        if (x < minX) minX = x;
+        if (x > maxX) maxX = x;
+        if (y < minY) minY = y;
+        if (y > maxY) maxY = y;
+    }
+}
@@ -0,0 +1,87 @@
+package com.ieb.zxingtest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Collects scan attempts during a replay, and summarises capture rate and decode latency.
+ * Pass to {@link BarcodeScanner#onFrameScanned(Consumer)}, or feed it the results of
+ * {@link FrameDecoder#decode(ByteImage)} as {@link FrameReplay} does.
+ */
+public class ReplayStatistics implements Consumer<ScanAttempt> {
+    private long[] latencies = new long[256];
+    private int count;
+    private int rejected;
+    private long firstFrameTime;
+    private long lastFrameTime;
+    private final List<String> hits = new ArrayList<>();
+
+    @Override
+    public synchronized void accept(ScanAttempt attempt) {
+        var now = System.nanoTime();
+        if (count == 0) firstFrameTime = now - attempt.decodeNanos;
+        lastFrameTime = now;
+
+        if (count >= latencies.length) latencies = Arrays.copyOf(latencies, latencies.length * 2);
+        latencies[count++] = attempt.decodeNanos;
+
+        if (attempt.rejected) rejected++;
+        if (attempt.result != null) hits.add(attempt.toString());
+    }
+
+    /** Number of frames scanned */
+    public synchronized int getFrameCount() {
+        return count;
+    }
+
+    /** Number of frames that gave a result */
+    public synchronized int getHitCount() {
+        return hits.size();
+    }
+
+    /** Number of frames skipped by the quality gate without decoding */
+    public synchronized int getRejectedCount() {
+        return rejected;
+    }
+
+    /** Description of each successful scan, including the threshold settings that found it */
+    public synchronized List<String> getHits() {
+        return new ArrayList<>(hits);
+    }
+
+    /** Frames scanned per second of wall-clock time */
+    public synchronized double getFramesPerSecond() {
+        var elapsed = lastFrameTime - firstFrameTime;
+        if (count < 1 || elapsed <= 0) return 0.0;
+        return count * 1_000_000_000.0 / elapsed;
+    }
+
+    /**
+     * Decode latency at the given percentile, in milliseconds.
+     * @param percentile 0..100
+     */
+    public synchronized double getLatencyPercentile(double percentile) {
+        if (count < 1) return 0.0;
+        var sorted = Arrays.copyOf(latencies, count);
+        Arrays.sort(sorted);
+
+        var idx = (int) Math.ceil(percentile / 100.0 * count) - 1;
+        if (idx < 0) idx = 0;
+        if (idx >= count) idx = count - 1;
+        return sorted[idx] / 1_000_000.0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        var sb = new StringBuilder();
+        sb.append(String.format("Frames: %d, hits: %d, rejected: %d, %.1f frames/sec%n", count, hits.size(), rejected, getFramesPerSecond()));
+        sb.append(String.format("Decode ms: p50=%.2f p90=%.2f p99=%.2f max=%.2f%n",
+                getLatencyPercentile(50), getLatencyPercentile(90), getLatencyPercentile(99), getLatencyPercentile(100)));
+        for (String hit : hits) {
+            sb.append("  ").append(hit).append(System.lineSeparator());
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,47 @@
+package com.ieb.zxingtest;
+
+import com.google.zxing.Result;
+
+/** Outcome of scanning a single frame, and the threshold settings that were used */
+public class ScanAttempt {
+    /** Time taken to filter, threshold and decode the frame */
+    public long decodeNanos;
+
+    public boolean invert;
+    public int scale;
+    public int exposure;
+    public int morph;
+    public int fourier;
+
+    /** Local variance formula used to threshold, or null if UnsharpMaskBinarizer was used */
+    public LocalVarianceBinarizer.Method variance;
+
+    /** True if the threshold settings missed, and the code was read with the HybridBinarizer fallback instead */
+    public boolean hybrid;
+
+    /** True if only the region around a recently seen code was scanned, rather than the whole frame */
+    public boolean tracked;
+
+    /** Number of frames averaged together for this scan. 1 if frame fusion is off. */
+    public int fused = 1;
+
+    /** True if the frame was skipped by the quality gate without decoding. Threshold settings are not set. */
+    public boolean rejected;
+
+    /** Mean gradient energy of the frame, if the quality gate is on. Higher is sharper. */
+    public double sharpness;
+
+    /** Luminance spread of the frame (5th to 95th percentile), if the quality gate is on */
+    public int contrast;
+
+    /** Decoded code, or null if nothing was found */
+    public Result result;
+
+    @Override
+    public String toString() {
+        if (rejected) return String.format("rejected, sharpness=%.1f, contrast=%d", sharpness, contrast);
+        return "scale=" + scale + ", exposure=" + exposure + ", invert=" + invert
+                + ", morph=" + morph + ", fourier=" + fourier + (variance != null ? ", variance=" + variance : "") + (hybrid ? ", hybrid" : "") + (tracked ? ", tracked" : "") + (fused > 1 ? ", fused=" + fused : "")
+                + (result == null ? " (miss)" : " -> " + result.getBarcodeFormat() + " '" + result.getText() + "'");
+    }
+}
@@ -0,0 +1,44 @@
+package com.ieb.zxingtest;
+
+/** One combination of {@link UnsharpMaskBinarizer} settings */
+public class ThresholdParameters {
+    public final int scale;
+    public final int exposure;
+    public final boolean invert;
+    public final int morph;
+    /** If not null, threshold with {@link LocalVarianceBinarizer} using this formula, instead of UnsharpMaskBinarizer */
+    public final LocalVarianceBinarizer.Method variance;
+
+    public ThresholdParameters(int scale, int exposure, boolean invert, int morph) {
+        this(scale, exposure, invert, morph, null);
+    }
+
+    public ThresholdParameters(int scale, int exposure, boolean invert, int morph, LocalVarianceBinarizer.Method variance) {
+        this.scale = scale;
+        this.exposure = exposure;
+        this.invert = invert;
+        this.morph = morph;
+        this.variance = variance;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof ThresholdParameters)) return false;
+        var other = (ThresholdParameters) o;
+        return scale == other.scale && exposure == other.exposure && invert == other.invert && morph == other.morph
+                && variance == other.variance;
+    }
+
+    @Override
+    public int hashCode() {
+        var hash = ((scale * 31 + exposure) * 31 + morph) * 2 + (invert ? 1 : 0);
+        return variance == null ? hash : hash * 31 + variance.ordinal() + 1;
+    }
+
+    @Override
+    public String toString() {
+        return "scale=" + scale + ", exposure=" + exposure + ", invert=" + invert + ", morph=" + morph
+                + (variance == null ? "" : ", variance=" + variance);
+    }
+}
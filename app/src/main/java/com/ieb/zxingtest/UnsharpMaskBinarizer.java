@@ -4,6 +4,7 @@ import com.google.zxing.Binarizer;
 import com.google.zxing.LuminanceSource;
 import com.google.zxing.common.BitArray;
 import com.google.zxing.common.BitMatrix;
+import com.google.zxing.common.RunLengthRow;
 
 public class UnsharpMaskBinarizer extends Binarizer {
     private final boolean invert;
@@ -29,8 +30,32 @@ public class UnsharpMaskBinarizer extends Binarizer {
         this.morph = morph;
     }
 
-    private static byte[] rowLuminances = null;
-    private static int[] colLuminances = null;
+    /**
+     * Working space, shared by every binarizer on the same thread.
+     * This saves allocating new buffers for each frame, and binarizers on different threads don't interfere.
+     */
+    private static final ThreadLocal<ScratchBuffers> scratch = ThreadLocal.withInitial(ScratchBuffers::new);
+
+    private static class ScratchBuffers {
+        private byte[] rowLuminances = null;
+        private int[] colLuminances = null;
+        private int[] morph = null;
+
+        byte[] rowLuminances(int size) {
+            if (rowLuminances == null || rowLuminances.length < size) rowLuminances = new byte[size];
+            return rowLuminances;
+        }
+
+        int[] colLuminances(int size) {
+            if (colLuminances == null || colLuminances.length < size) colLuminances = new int[size + 32];
+            return colLuminances;
+        }
+
+        int[] morph(int size) {
+            if (morph == null || morph.length < size) morph = new int[size];
+            return morph;
+        }
+    }
 
     private static final int UPPER_LIMIT = 251;
     private static final int LOWER_LIMIT = 4;
@@ -53,10 +78,7 @@ public class UnsharpMaskBinarizer extends Binarizer {
             row.clear();
         }
 
-        if (rowLuminances == null || rowLuminances.length < width) {
-            rowLuminances = new byte[width];
-        }
-        var srcRow = source.getRow(y, rowLuminances);
+        var srcRow = source.getRow(y, scratch.get().rowLuminances(width));
 
         int radius = 1 << scale;
         int diam = scale + 1;
@@ -103,10 +125,7 @@ public class UnsharpMaskBinarizer extends Binarizer {
             row.clear();
         }
 
-        if (rowLuminances == null || rowLuminances.length < width) {
-            rowLuminances = new byte[width];
-        }
-        var srcRow = source.getRow(y, rowLuminances);
+        var srcRow = source.getRow(y, scratch.get().rowLuminances(width));
 
         int radius = 1 << scale;
         int diam = scale + 1;
@@ -144,6 +163,112 @@ public class UnsharpMaskBinarizer extends Binarizer {
         return row;
     }
 
+    /**
+     * Get a single row as runs of black and white, for the 1D readers.
+     * This is the same threshold as getBlackRow, but records where the colour changes
+     * instead of setting bits, so the readers don't have to count the runs again.
+     */
+    @Override
+    public RunLengthRow getBlackRuns(int y, RunLengthRow runs) {
+        // we split these up to keep the JIT happy. Being efficient with code slows this right down.
+        if (invert) return getBlackRunsInverted(y, runs);
+        return getBlackRunsNormal(y, runs);
+    }
+
+    public RunLengthRow getBlackRunsNormal(int y, RunLengthRow runs) {
+        if (runs == null) runs = new RunLengthRow();
+        LuminanceSource source = getLuminanceSource();
+        int width = source.getWidth();
+
+        var srcRow = source.getRow(y, scratch.get().rowLuminances(width));
+
+        int radius = 1 << scale;
+        int diam = scale + 1;
+        int right = width - 1;
+        int sum = 0;
+        boolean last = false;
+
+        // feed in
+        for (int i = -radius; i < radius; i++) {
+            int x = Math.max(i, 0);
+            sum += srcRow[x] & 0xFF;
+        }
+
+        // running average threshold
+        for (int x = 0; x < width; x++) {
+            // calculate threshold values
+            int actual = (srcRow[x] & 0xFF) - bias;
+            int target = sum >>> diam;
+
+            // don't let the target be too extreme (this stops us turning white rows into black)
+            if (target > UPPER_LIMIT) target = UPPER_LIMIT;
+            if (target < LOWER_LIMIT) target = LOWER_LIMIT;
+
+            // Decide what side of the threshold we are on, and start a new run if it has changed
+            boolean black = actual < target;
+            if (x == 0) runs.reset(width, black);
+            else if (black != last) runs.addTransition(x);
+            last = black;
+
+            // update running average
+            int xr = Math.min(x + radius, right);
+            int xl = Math.max(x - radius, 0);
+            int incoming = srcRow[xr] & 0xFF;
+            int outgoing = srcRow[xl] & 0xFF;
+
+            sum += incoming - outgoing;
+        }
+
+        return runs;
+    }
+
+    public RunLengthRow getBlackRunsInverted(int y, RunLengthRow runs) {
+        if (runs == null) runs = new RunLengthRow();
+        LuminanceSource source = getLuminanceSource();
+        int width = source.getWidth();
+
+        var srcRow = source.getRow(y, scratch.get().rowLuminances(width));
+
+        int radius = 1 << scale;
+        int diam = scale + 1;
+        int right = width - 1;
+        int sum = 0;
+        boolean last = false;
+
+        // feed in
+        for (int i = -radius; i < radius; i++) {
+            int x = Math.max(i, 0);
+            sum += srcRow[x] & 0xFF;
+        }
+
+        // running average threshold
+        for (int x = 0; x < width; x++) {
+            // calculate threshold values
+            int actual = (srcRow[x] & 0xFF) - bias;
+            int target = sum >>> diam;
+
+            // don't let the target be too extreme (this stops us turning white rows into black)
+            if (target > UPPER_LIMIT) target = UPPER_LIMIT;
+            if (target < LOWER_LIMIT) target = LOWER_LIMIT;
+
+            // Decide what side of the threshold we are on, and start a new run if it has changed
+            boolean black = actual > target;
+            if (x == 0) runs.reset(width, black);
+            else if (black != last) runs.addTransition(x);
+            last = black;
+
+            // update running average
+            int xr = Math.min(x + radius, right);
+            int xl = Math.max(x - radius, 0);
+            int incoming = srcRow[xr] & 0xFF;
+            int outgoing = srcRow[xl] & 0xFF;
+
+            sum += incoming - outgoing;
+        }
+
+        return runs;
+    }
+
 
     /** Get a whole image. This is optimised for 2D bar codes, and averages in X and Y bases */
     @Override
@@ -159,9 +284,12 @@ public class UnsharpMaskBinarizer extends Binarizer {
         int height = source.getHeight();
 
         byte[] image = source.getMatrix();
-        byte[] result = new byte[image.length];
+        var buffers = scratch.get();
+        int[] colLuminances = buffers.colLuminances(image.length);
 
-        if (colLuminances == null || colLuminances.length < image.length) colLuminances = new int[image.length+32];
+        BitMatrix matrix = new BitMatrix(width, height);
+        int[] bits = matrix.getBits();
+        int rowSize = matrix.getRowSize();
 
         int radius = 1 << scale;
         int diam = scale + 1;
@@ -198,6 +326,8 @@ public class UnsharpMaskBinarizer extends Binarizer {
 
         for (int y = 0; y < height; y++) { // for each scanline
             int yOff = y * width;
+            int bitOff = y * rowSize;
+            int word = 0;
             int sum = 0;
 
             // feed in
@@ -216,9 +346,12 @@ public class UnsharpMaskBinarizer extends Binarizer {
                 if (target > UPPER_LIMIT) target = UPPER_LIMIT;
                 if (target < LOWER_LIMIT) target = LOWER_LIMIT;
 
-                // Decide what side of the threshold we are on
-                //if (actual < target) matrix.set(x, y);
-                result[yOff + x] = (actual < target) ? (byte) 0x00 : 0x0F;
+                // Decide what side of the threshold we are on, packing 32 pixels per word
+                word |= ((actual - target) >>> 31) << (x & 0x1f);
+                if ((x & 0x1f) == 0x1f) {
+                    bits[bitOff + (x >>> 5)] = word;
+                    word = 0;
+                }
 
                 // update running average
                 int xr = Math.min(x + radius, right);
@@ -228,18 +361,11 @@ public class UnsharpMaskBinarizer extends Binarizer {
 
                 sum += incoming - outgoing;
             }
+            if ((width & 0x1f) != 0) bits[bitOff + (width >>> 5)] = word;
         }
 
         if (morph > 0) {
-            MorphologicalTransforms.Opening2D(result, width, height, morph);
-        }
-
-        BitMatrix matrix = new BitMatrix(width, height);
-        for (int y = 0; y < height; y++) { // for each scanline
-            int yOff = y * width;
-            for (int x = 0; x < width; x++) {
-                if (result[yOff + x] < 0x0F) matrix.set(x,y);
-            }
+            MorphologicalTransforms.Opening2D(matrix, morph, buffers.morph(MorphologicalTransforms.ScratchSize(matrix, morph)));
         }
 
         return matrix;
@@ -251,9 +377,12 @@ public class UnsharpMaskBinarizer extends Binarizer {
         int height = source.getHeight();
 
         byte[] image = source.getMatrix();
-        byte[] result = new byte[image.length];
+        var buffers = scratch.get();
+        int[] colLuminances = buffers.colLuminances(image.length);
 
-        if (colLuminances == null || colLuminances.length < image.length) colLuminances = new int[image.length+32];
+        BitMatrix matrix = new BitMatrix(width, height);
+        int[] bits = matrix.getBits();
+        int rowSize = matrix.getRowSize();
 
         int radius = 1 << scale;
         int diam = scale + 1;
@@ -290,6 +419,8 @@ public class UnsharpMaskBinarizer extends Binarizer {
 
         for (int y = 0; y < height; y++) { // for each scanline
             int yOff = y * width;
+            int bitOff = y * rowSize;
+            int word = 0;
             int sum = 0;
 
             // feed in
@@ -308,9 +439,12 @@ public class UnsharpMaskBinarizer extends Binarizer {
                 if (target > UPPER_LIMIT) target = UPPER_LIMIT;
                 if (target < LOWER_LIMIT) target = LOWER_LIMIT;
 
-                // Decide what side of the threshold we are on
-                //if (actual > target) matrix.set(x,y);
-                result[yOff + x] = (actual > target) ? (byte) 0x00 : 0x0F;
+                // Decide what side of the threshold we are on, packing 32 pixels per word
+                word |= ((target - actual) >>> 31) << (x & 0x1f);
+                if ((x & 0x1f) == 0x1f) {
+                    bits[bitOff + (x >>> 5)] = word;
+                    word = 0;
+                }
 
                 // update running average
                 int xr = Math.min(x + radius, right);
@@ -320,18 +454,11 @@ public class UnsharpMaskBinarizer extends Binarizer {
 
                 sum += incoming - outgoing;
             }
+            if ((width & 0x1f) != 0) bits[bitOff + (width >>> 5)] = word;
         }
 
         if (morph > 0) {
-            MorphologicalTransforms.Opening2D(result, width, height, morph);
-        }
-
-        BitMatrix matrix = new BitMatrix(width, height);
-        for (int y = 0; y < height; y++) { // for each scanline
-            int yOff = y * width;
-            for (int x = 0; x < width; x++) {
-                if (result[yOff + x] < 0x0F) matrix.set(x,y);
-            }
+            MorphologicalTransforms.Opening2D(matrix, morph, buffers.morph(MorphologicalTransforms.ScratchSize(matrix, morph)));
         }
 
         return matrix;
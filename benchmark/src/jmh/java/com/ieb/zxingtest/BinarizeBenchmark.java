@@ -0,0 +1,129 @@
+package com.ieb.zxingtest;
+
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.common.BitArray;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.common.HybridBinarizer;
+import com.google.zxing.common.ParallelHybridBinarizer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Thresholding stage: luminance frame to black and white.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class BinarizeBenchmark {
+
+    @Param({"0", "2"})
+    public int morph;
+
+    private final ParallelHybridBinarizer.Scratch hybridScratch = new ParallelHybridBinarizer.Scratch();
+
+    /** Full frame, as used by the 2D readers */
+    @Benchmark
+    public BitMatrix blackMatrix(FrameState state) {
+        return new UnsharpMaskBinarizer(state.source, false, FrameState.SCALE, FrameState.EXPOSURE, morph).getBlackMatrix();
+    }
+
+    /** Every scan line, as used by the 1D readers. Morph has no effect here. */
+    @Benchmark
+    public void blackRows(FrameState state, Blackhole bh) {
+        var binarizer = state.binarizer(state.source);
+        BitArray row = null;
+        for (int y = 0; y < DegradedFrames.HEIGHT; y++) {
+            row = binarizer.getBlackRow(y, row);
+            bh.consume(row);
+        }
+    }
+
+    /** Full frame from an integral image, including the cost of building it */
+    @Benchmark
+    public BitMatrix integralMatrix(FrameState state) {
+        var integral = new IntegralImage(state.source);
+        return new IntegralUnsharpMaskBinarizer(state.source, integral, false, FrameState.SCALE, FrameState.EXPOSURE, morph).getBlackMatrix();
+    }
+
+    /** Full frame against local mean and deviation, including the cost of building the tables */
+    @Benchmark
+    public BitMatrix sauvolaMatrix(FrameState state) {
+        // A fresh source each time, or the binarizer would reuse the tables from the last call
+        var lum = FrameState.luminance(state.frame);
+        return new LocalVarianceBinarizer(lum, LocalVarianceBinarizer.Method.SAUVOLA, false, FrameState.SCALE, 0, morph).getBlackMatrix();
+    }
+
+    /** As sauvolaMatrix, with the extra pass to find the image's largest deviation */
+    @Benchmark
+    public BitMatrix wolfMatrix(FrameState state) {
+        var lum = FrameState.luminance(state.frame);
+        return new LocalVarianceBinarizer(lum, LocalVarianceBinarizer.Method.WOLF, false, FrameState.SCALE, 0, morph).getBlackMatrix();
+    }
+
+    /** Every exposure in the scanner's search range, normal and inverted, each thresholded separately */
+    @Benchmark
+    public void allExposuresSeparate(FrameState state, Blackhole bh) {
+        for (ThresholdParameters p : exposureSettings()) {
+            bh.consume(new UnsharpMaskBinarizer(state.source, p.invert, p.scale, p.exposure, p.morph).getBlackMatrix());
+        }
+    }
+
+    /** The same outputs as allExposuresSeparate, from one pass sharing the local mean */
+    @Benchmark
+    public void allExposuresBatch(FrameState state, Blackhole bh) throws Exception {
+        var batch = new MultiThresholdBinarizer(state.source, exposureSettings());
+        for (BinaryBitmap bitmap : batch.getBitmaps()) {
+            bh.consume(bitmap.getBlackMatrix());
+        }
+    }
+
+    private List<ThresholdParameters> exposureSettings() {
+        var list = new ArrayList<ThresholdParameters>();
+        for (int exposure = 12; exposure >= -4; exposure -= 4) {
+            list.add(new ThresholdParameters(FrameState.SCALE, exposure, false, morph));
+            list.add(new ThresholdParameters(FrameState.SCALE, exposure, true, morph));
+        }
+        return list;
+    }
+
+    /** ZXing's block thresholder, for comparison. Morph has no effect here. */
+    @Benchmark
+    public BitMatrix hybridMatrix(FrameState state) throws Exception {
+        return new HybridBinarizer(state.source).getBlackMatrix();
+    }
+
+    /** The same output as hybridMatrix, split over the common fork-join pool, with reused buffers */
+    @Benchmark
+    public BitMatrix parallelHybridMatrix(FrameState state) throws Exception {
+        return new ParallelHybridBinarizer(state.source, ForkJoinPool.commonPool(), hybridScratch).getBlackMatrix();
+    }
+
+    /** Every scale in the scanner's search range, with running sums for each */
+    @Benchmark
+    public void allScalesRunningSum(FrameState state, Blackhole bh) {
+        for (int scale = 4; scale <= 7; scale++) {
+            bh.consume(new UnsharpMaskBinarizer(state.source, false, scale, FrameState.EXPOSURE, morph).getBlackMatrix());
+        }
+    }
+
+    /** Every scale in the scanner's search range, sharing one integral image */
+    @Benchmark
+    public void allScalesIntegral(FrameState state, Blackhole bh) {
+        var integral = new IntegralImage(state.source);
+        for (int scale = 4; scale <= 7; scale++) {
+            bh.consume(new IntegralUnsharpMaskBinarizer(state.source, integral, false, scale, FrameState.EXPOSURE, morph).getBlackMatrix());
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.ieb.zxingtest;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.Result;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.common.RunLengthRow;
+import com.google.zxing.oned.OneDReader;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decode stage: turn already located modules into text.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class DecodeBenchmark {
+
+    @Param({"QR_CODE", "DATA_MATRIX", "CODE_128", "ITF"})
+    public BarcodeFormat format;
+
+    private BitMatrix bits; // sampled module grid for 2D codes
+    private RunLengthRow[] rows; // thresholded scan lines for 1D codes, as runs
+    private OneDReader rowReader;
+    private Map<DecodeHintType, Object> hints;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        var frame = DegradedFrames.frame(format);
+        var binarizer = new UnsharpMaskBinarizer(FrameState.luminance(frame), false, FrameState.SCALE, FrameState.EXPOSURE, 0);
+        hints = new EnumMap<>(DecodeHintType.class);
+        hints.put(DecodeHintType.TRY_HARDER, Boolean.TRUE);
+
+        switch (format) {
+            case QR_CODE:
+                bits = new com.google.zxing.qrcode.detector.Detector(binarizer.getBlackMatrix()).detect(hints).getBits();
+                break;
+            case DATA_MATRIX:
+                bits = new com.google.zxing.datamatrix.detector.Detector(binarizer.getBlackMatrix()).detect().getBits();
+                break;
+            default:
+                rowReader = (OneDReader) FrameState.readerFor(format);
+                rows = new RunLengthRow[DegradedFrames.HEIGHT];
+                for (int y = 0; y < rows.length; y++) {
+                    rows[y] = binarizer.getBlackRuns(y, null);
+                }
+                break;
+        }
+        decode(); // fail early if the corpus frame can't be read
+    }
+
+    @Benchmark
+    public Object decode() throws Exception {
+        switch (format) {
+            case QR_CODE:
+                // the QR decoder un-masks and mirrors the grid in place, so it gets a fresh copy each time
+                return new com.google.zxing.qrcode.decoder.Decoder().decode(bits.clone(), hints);
+            case DATA_MATRIX:
+                return new com.google.zxing.datamatrix.decoder.Decoder().decode(bits);
+            default:
+                return decodeRows();
+        }
+    }
+
+    /** Try each scan line, middle outward, until one reads. This is the 1D equivalent of detect + decode. */
+    public Result decodeRows() throws NotFoundException {
+        var middle = rows.length / 2;
+        for (int i = 0; i < rows.length; i++) {
+            var offset = (i + 1) / 2;
+            var y = (i & 1) == 0 ? middle + offset : middle - offset;
+            if (y < 0 || y >= rows.length) continue;
+            try {
+                return rowReader.decodeRuns(y, rows[y], hints);
+            } catch (Exception e) {
+                // try next row
+            }
+        }
+        throw NotFoundException.getNotFoundInstance();
+    }
+}
@@ -0,0 +1,179 @@
+package com.ieb.zxingtest;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.EncodeHintType;
+import com.google.zxing.MultiFormatWriter;
+import com.google.zxing.WriterException;
+import com.google.zxing.common.BitMatrix;
+
+import java.util.HashMap;
+import java.util.Random;
+
+/**
+ * Benchmark corpus of poor quality luminance frames, the same size as the
+ * camera feed. Frames are generated from a fixed seed, so every run (and
+ * every machine) measures exactly the same pixels.
+ */
+public class DegradedFrames {
+    public static final int WIDTH = 1024;
+    public static final int HEIGHT = 768;
+
+    public static final String QR_CONTENT = "https://github.com/i-e-b/AndroidRawZxing";
+    public static final String DATA_MATRIX_CONTENT = "LOT:48213-77 EXP:2027-01";
+    public static final String CODE_128_CONTENT = "WH-04-118-3372";
+    public static final String ITF_CONTENT = "0012345678901234";
+
+    private static final int PAPER = 184; // faded label stock
+    private static final int INK = 86; // washed-out print
+    private static final int GRADIENT = 48; // uneven lighting across the frame
+    private static final double NOISE = 5.0; // sensor noise, as std-dev in luminance steps
+    private static final double VOIDS = 0.02; // chance of an ink pixel not printing
+
+    private static final double GLARE_MIN = 0.3; // least washed-out a glared frame can be
+    private static final double GLARE_MAX = 0.65; // most washed-out: the fraction of the way to white
+    private static final int GLARE_EDGE = 40; // width in pixels of the soft edge of a glare patch
+
+    /** Expected text content for a generated frame */
+    public static String contentFor(BarcodeFormat format) {
+        switch (format) {
+            case QR_CODE: return QR_CONTENT;
+            case DATA_MATRIX: return DATA_MATRIX_CONTENT;
+            case CODE_128: return CODE_128_CONTENT;
+            case ITF: return ITF_CONTENT;
+            default: throw new IllegalArgumentException("No corpus frame for " + format);
+        }
+    }
+
+    /**
+     * Render a single degraded frame of the given format.
+     * The result is a Y-plane of WIDTH * HEIGHT bytes.
+     */
+    public static byte[] frame(BarcodeFormat format) {
+        var code = encode(format);
+        var rnd = new Random(format.ordinal() * 7919L + 1);
+
+        // draw the code, roughly centred, over an uneven background
+        var left = (WIDTH - code.getWidth()) / 2 + 37;
+        var top = (HEIGHT - code.getHeight()) / 2 - 21;
+        var pixels = new int[WIDTH * HEIGHT];
+        for (int y = 0; y < HEIGHT; y++) {
+            var yOff = y * WIDTH;
+            for (int x = 0; x < WIDTH; x++) {
+                var light = PAPER - (GRADIENT * (x + y)) / (WIDTH + HEIGHT);
+                var cx = x - left;
+                var cy = y - top;
+                var inCode = cx >= 0 && cy >= 0 && cx < code.getWidth() && cy < code.getHeight();
+                if (inCode && code.get(cx, cy) && rnd.nextDouble() >= VOIDS) {
+                    light = INK + (light - PAPER) / 2;
+                }
+                pixels[yOff + x] = light;
+            }
+        }
+
+        // out of focus
+        boxBlur(pixels, 2);
+        boxBlur(pixels, 1);
+
+        // sensor noise
+        var result = new byte[WIDTH * HEIGHT];
+        for (int i = 0; i < result.length; i++) {
+            var v = (int) Math.round(pixels[i] + rnd.nextGaussian() * NOISE);
+            if (v < 0) v = 0;
+            if (v > 255) v = 255;
+            result[i] = (byte) v;
+        }
+        return result;
+    }
+
+    /**
+     * A frame as {@link #frame}, with glare washing out one side of the code.
+     * The glare's edge, angle and strength come from the variant number, so a run of
+     * variants gives a fixed set of damaged frames to measure recovery rate over.
+     */
+    public static byte[] glared(BarcodeFormat format, int variant) {
+        var result = frame(format);
+        var rnd = new Random(format.ordinal() * 104729L + variant);
+
+        // a soft straight edge through the middle of the frame, with everything past it washed out
+        var angle = rnd.nextDouble() * Math.PI * 2;
+        var nx = Math.cos(angle);
+        var ny = Math.sin(angle);
+        var offset = (rnd.nextDouble() - 0.5) * WIDTH / 4;
+        var strength = GLARE_MIN + rnd.nextDouble() * (GLARE_MAX - GLARE_MIN);
+
+        for (int y = 0; y < HEIGHT; y++) {
+            var yOff = y * WIDTH;
+            for (int x = 0; x < WIDTH; x++) {
+                var distance = (x - WIDTH / 2.0) * nx + (y - HEIGHT / 2.0) * ny - offset;
+                var amount = strength * Math.min(Math.max(distance / GLARE_EDGE + 0.5, 0.0), 1.0);
+                if (amount <= 0.0) continue;
+                var v = result[yOff + x] & 0xFF;
+                result[yOff + x] = (byte) Math.round(v + (255 - v) * amount);
+            }
+        }
+        return result;
+    }
+
+    private static BitMatrix encode(BarcodeFormat format) {
+        var hints = new HashMap<EncodeHintType, Object>();
+        hints.put(EncodeHintType.MARGIN, 0);
+        try {
+            switch (format) {
+                case QR_CODE:
+                    return new MultiFormatWriter().encode(QR_CONTENT, format, 264, 264, hints);
+                case DATA_MATRIX:
+                    return scale(new MultiFormatWriter().encode(DATA_MATRIX_CONTENT, format, 0, 0, hints), 9);
+                case CODE_128:
+                    return new MultiFormatWriter().encode(CODE_128_CONTENT, format, 760, 140, hints);
+                case ITF:
+                    return new MultiFormatWriter().encode(ITF_CONTENT, format, 880, 140, hints);
+                default:
+                    throw new IllegalArgumentException("No corpus frame for " + format);
+            }
+        } catch (WriterException e) {
+            throw new IllegalStateException("Failed to encode corpus frame", e);
+        }
+    }
+
+    /** The DataMatrix writer does not scale its output, so we do it here */
+    private static BitMatrix scale(BitMatrix src, int factor) {
+        var result = new BitMatrix(src.getWidth() * factor, src.getHeight() * factor);
+        for (int y = 0; y < result.getHeight(); y++) {
+            for (int x = 0; x < result.getWidth(); x++) {
+                if (src.get(x / factor, y / factor)) result.set(x, y);
+            }
+        }
+        return result;
+    }
+
+    /** In-place box blur in X then Y, clamping at the edges */
+    private static void boxBlur(int[] pixels, int radius) {
+        var temp = new int[Math.max(WIDTH, HEIGHT)];
+        var diam = radius * 2 + 1;
+
+        for (int y = 0; y < HEIGHT; y++) {
+            var yOff = y * WIDTH;
+            for (int x = 0; x < WIDTH; x++) {
+                var sum = 0;
+                for (int i = -radius; i <= radius; i++) {
+                    sum += pixels[yOff + Math.min(Math.max(x + i, 0), WIDTH - 1)];
+                }
+                temp[x] = sum / diam;
+            }
+            System.arraycopy(temp, 0, pixels, yOff, WIDTH);
+        }
+
+        for (int x = 0; x < WIDTH; x++) {
+            for (int y = 0; y < HEIGHT; y++) {
+                var sum = 0;
+                for (int i = -radius; i <= radius; i++) {
+                    sum += pixels[Math.min(Math.max(y + i, 0), HEIGHT - 1) * WIDTH + x];
+                }
+                temp[y] = sum / diam;
+            }
+            for (int y = 0; y < HEIGHT; y++) {
+                pixels[y * WIDTH + x] = temp[y];
+            }
+        }
+    }
+}
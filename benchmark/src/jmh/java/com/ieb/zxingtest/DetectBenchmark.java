@@ -0,0 +1,53 @@
+package com.ieb.zxingtest;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.common.DetectorResult;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Detection stage for the 2D formats: locate the code in a thresholded frame and sample its grid.
+ * The 1D readers do not have a separate detection step, see {@link DecodeBenchmark#decodeRows}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class DetectBenchmark {
+
+    @Param({"QR_CODE", "DATA_MATRIX"})
+    public BarcodeFormat format;
+
+    private BitMatrix matrix;
+    private Map<DecodeHintType, Object> hints;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        var frame = DegradedFrames.frame(format);
+        hints = new EnumMap<>(DecodeHintType.class);
+        hints.put(DecodeHintType.TRY_HARDER, Boolean.TRUE);
+        matrix = new UnsharpMaskBinarizer(FrameState.luminance(frame), false, FrameState.SCALE, FrameState.EXPOSURE, 0).getBlackMatrix();
+        detect(); // fail early if the corpus frame can't be found
+    }
+
+    @Benchmark
+    public DetectorResult detect() throws Exception {
+        if (format == BarcodeFormat.QR_CODE) {
+            return new com.google.zxing.qrcode.detector.Detector(matrix).detect(hints);
+        }
+        return new com.google.zxing.datamatrix.detector.Detector(matrix).detect();
+    }
+}
@@ -0,0 +1,33 @@
+package com.ieb.zxingtest;
+
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.Result;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Whole decode path for a single frame: luminance, threshold, detect and decode.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class EndToEndBenchmark {
+
+    @Benchmark
+    public Result singleFormat(FrameState state) throws Exception {
+        var lum = FrameState.luminance(state.frame);
+        return state.decode(new BinaryBitmap(state.binarizer(lum)));
+    }
+
+    /** The reader set used by BarcodeScanner, so each frame also pays for the formats that miss */
+    @Benchmark
+    public Result scannerReaders(FrameState state) throws Exception {
+        var lum = FrameState.luminance(state.frame);
+        state.scannerReader.reset();
+        return state.scannerReader.decode(new BinaryBitmap(state.binarizer(lum)));
+    }
+}
@@ -0,0 +1,93 @@
+package com.ieb.zxingtest;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.PlanarYUVLuminanceSource;
+import com.google.zxing.PresetListReader;
+import com.google.zxing.Reader;
+import com.google.zxing.Result;
+import com.google.zxing.datamatrix.DataMatrixReader;
+import com.google.zxing.oned.Code128Reader;
+import com.google.zxing.oned.ITFReader;
+import com.google.zxing.qrcode.QRCodeReader;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * One degraded corpus frame per format, with the binarizer settings
+ * that are known to recover it.
+ */
+@State(Scope.Thread)
+public class FrameState {
+    /** Threshold scale that decodes every corpus frame */
+    public static final int SCALE = 6;
+    /** Exposure bias that decodes every corpus frame */
+    public static final int EXPOSURE = -4;
+
+    @Param({"QR_CODE", "DATA_MATRIX", "CODE_128", "ITF"})
+    public BarcodeFormat format;
+
+    public byte[] frame;
+    public LuminanceSource source;
+    public Reader reader;
+    public Map<DecodeHintType, Object> hints;
+    public PresetListReader scannerReader;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        frame = DegradedFrames.frame(format);
+        source = luminance(frame);
+        reader = readerFor(format);
+
+        hints = new EnumMap<>(DecodeHintType.class);
+        hints.put(DecodeHintType.TRY_HARDER, Boolean.TRUE);
+
+        // Same reader set as BarcodeScanner
+        scannerReader = new PresetListReader();
+        scannerReader.setTryHarder(true);
+        scannerReader.add(BarcodeFormat.QR_CODE);
+        scannerReader.add(BarcodeFormat.CODE_128);
+        scannerReader.add(BarcodeFormat.ITF);
+        scannerReader.add(BarcodeFormat.DATA_MATRIX);
+
+        // Don't measure the wrong thing: the frame must actually decode
+        var result = decode(new BinaryBitmap(binarizer(source)));
+        if (!DegradedFrames.contentFor(format).equals(result.getText())) {
+            throw new IllegalStateException("Corpus frame for " + format + " decoded as " + result.getText());
+        }
+    }
+
+    public UnsharpMaskBinarizer binarizer(LuminanceSource lum) {
+        return new UnsharpMaskBinarizer(lum, false, SCALE, EXPOSURE, 0);
+    }
+
+    public Result decode(BinaryBitmap bitmap) throws Exception {
+        reader.reset();
+        return reader.decode(bitmap, hints);
+    }
+
+    public static LuminanceSource luminance(byte[] frame) {
+        return new PlanarYUVLuminanceSource(frame,
+                DegradedFrames.WIDTH, DegradedFrames.HEIGHT,
+                0, 0, DegradedFrames.WIDTH, DegradedFrames.HEIGHT, false);
+    }
+
+    public static Reader readerFor(BarcodeFormat format) {
+        switch (format) {
+            case QR_CODE: return new QRCodeReader();
+            case DATA_MATRIX: return new DataMatrixReader();
+            case CODE_128: return new Code128Reader();
+            case ITF: return new ITFReader();
+            default: throw new IllegalArgumentException("No reader for " + format);
+        }
+    }
+}
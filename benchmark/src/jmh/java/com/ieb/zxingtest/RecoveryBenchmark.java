@@ -0,0 +1,81 @@
+package com.ieb.zxingtest;
+
+import com.google.zxing.Binarizer;
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.LuminanceSource;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Thresholders on damaged codes: how many of a fixed set of glared frames each one
+ * lets the reader recover, and how long a pass over the set takes.
+ * Recovery rate is `recovered / frames` in the secondary results.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class RecoveryBenchmark {
+    private static final int VARIANTS = 20; // glared frames per format
+    private static final int SCALE = 5; // the largest scale still fine enough for glare edges
+
+    @Param({"UNSHARP_MASK", "SAUVOLA", "WOLF"})
+    public String thresholder;
+
+    private byte[][] frames;
+
+    /** Outcome counts, summed over the measured passes */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Counts {
+        public long frames;
+        public long recovered;
+
+        @Setup(Level.Iteration)
+        public void clear() {
+            frames = 0;
+            recovered = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp(FrameState state) {
+        frames = new byte[VARIANTS][];
+        for (int i = 0; i < VARIANTS; i++) {
+            frames[i] = DegradedFrames.glared(state.format, i);
+        }
+    }
+
+    /** Threshold and read every glared frame once */
+    @Benchmark
+    public void glaredFrames(FrameState state, Counts counts) {
+        var expected = DegradedFrames.contentFor(state.format);
+        for (byte[] frame : frames) {
+            counts.frames++;
+            try {
+                var result = state.decode(new BinaryBitmap(binarizer(FrameState.luminance(frame))));
+                if (expected.equals(result.getText())) counts.recovered++;
+            } catch (Exception e) {
+                // not recovered
+            }
+        }
+    }
+
+    private Binarizer binarizer(LuminanceSource lum) {
+        switch (thresholder) {
+            case "SAUVOLA": return new LocalVarianceBinarizer(lum, LocalVarianceBinarizer.Method.SAUVOLA, false, SCALE, 0, 0);
+            case "WOLF": return new LocalVarianceBinarizer(lum, LocalVarianceBinarizer.Method.WOLF, false, SCALE, 0, 0);
+            default: return new UnsharpMaskBinarizer(lum, false, SCALE, FrameState.EXPOSURE, 0);
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.google.zxing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.common.GlobalHistogramBinarizer;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * With 1D grouping on, the 1D readers take turns on each scan line instead of each reading the
+ * whole image. On images with one code, that should find the same code as reading them in turn,
+ * and report each reader to the listener once, with the 1D readers together.
+ */
+public class PresetListReaderTest {
+    private static final BarcodeFormat[] FORMATS = {
+            BarcodeFormat.QR_CODE, BarcodeFormat.CODE_128, BarcodeFormat.EAN_13, BarcodeFormat.ITF,
+            BarcodeFormat.DATA_MATRIX, BarcodeFormat.CODE_39};
+    private static final BarcodeFormat[] ONE_D = {
+            BarcodeFormat.CODE_128, BarcodeFormat.EAN_13, BarcodeFormat.ITF, BarcodeFormat.CODE_39};
+    /** Order the grouped reader tries them in: the 1D formats together, where the first was added */
+    private static final List<BarcodeFormat> GROUPED_ORDER = List.of(
+            BarcodeFormat.QR_CODE, BarcodeFormat.CODE_128, BarcodeFormat.EAN_13, BarcodeFormat.ITF,
+            BarcodeFormat.CODE_39, BarcodeFormat.DATA_MATRIX);
+    private static final int TRIALS = 200;
+
+    /** What a listener was told about one reader */
+    private static class Report {
+        final BarcodeFormat format;
+        final long nanos;
+        final Result result;
+
+        Report(BarcodeFormat format, long nanos, Result result) {
+            this.format = format;
+            this.nanos = nanos;
+            this.result = result;
+        }
+    }
+
+    private static PresetListReader reader(boolean groupOneD, List<Report> reports) {
+        var reader = new PresetListReader();
+        reader.setTryHarder(true);
+        reader.setGroupOneD(groupOneD);
+        for (BarcodeFormat format : FORMATS) {
+            reader.add(format);
+        }
+        reader.setDecodeListener((format, nanos, result, error) -> reports.add(new Report(format, nanos, result)));
+        return reader;
+    }
+
+    @Test
+    public void groupedFindsTheSameCodes() throws Exception {
+        var rnd = new Random(25);
+        var groupedReports = new ArrayList<Report>();
+        var plainReports = new ArrayList<Report>();
+        var grouped = reader(true, groupedReports);
+        var plain = reader(false, plainReports);
+
+        int hits = 0;
+        for (int trial = 0; trial < TRIALS; trial++) {
+            var format = ONE_D[rnd.nextInt(ONE_D.length)];
+            var image = trial % 10 == 0 ? noise(rnd) : code(rnd, format);
+            var name = "trial " + trial + " " + format;
+
+            groupedReports.clear();
+            plainReports.clear();
+            var expected = decode(plain, image);
+            var actual = decode(grouped, image);
+
+            assertEquals(name + " found", expected != null, actual != null);
+            if (expected == null) {
+                // Every reader had a go
+                assertEquals(name + " reports", GROUPED_ORDER, formats(groupedReports));
+                for (Report report : groupedReports) {
+                    assertEquals(name + " " + report.format + " result", null, report.result);
+                }
+                continue;
+            }
+            hits++;
+            assertEquals(name + " format", expected.getBarcodeFormat(), actual.getBarcodeFormat());
+            assertEquals(name + " text", expected.getText(), actual.getText());
+
+            // The 1D readers report together, with only the one that read the code given the result
+            assertEquals(name + " reports", GROUPED_ORDER.subList(0, 5), formats(groupedReports));
+            for (Report report : groupedReports) {
+                assertTrue(name + " nanos", report.nanos >= 0);
+                assertEquals(name + " " + report.format + " result", report.format == actual.getBarcodeFormat(), report.result != null);
+            }
+        }
+        assertTrue("only " + hits + " codes read", hits > TRIALS / 2);
+    }
+
+    private static List<BarcodeFormat> formats(List<Report> reports) {
+        var formats = new ArrayList<BarcodeFormat>();
+        for (Report report : reports) {
+            formats.add(report.format);
+        }
+        return formats;
+    }
+
+    private static Result decode(Reader reader, BinaryBitmap image) throws Exception {
+        reader.reset();
+        return reader.decode(image);
+    }
+
+    /** A 1D code of the given format, with random contents, margins, noise and orientation */
+    private static BinaryBitmap code(Random rnd, BarcodeFormat format) throws WriterException {
+        String contents;
+        switch (format) {
+            case EAN_13:
+                contents = digits(rnd, 12);
+                break;
+            case ITF:
+                contents = digits(rnd, 2 * (3 + rnd.nextInt(6)));
+                break;
+            case CODE_39:
+                contents = digits(rnd, 4 + rnd.nextInt(8));
+                break;
+            default:
+                contents = "LOT-" + digits(rnd, 2 + rnd.nextInt(10));
+                break;
+        }
+        BitMatrix bars = new MultiFormatWriter().encode(contents, format, 0, 1);
+        int barWidth = 2 + rnd.nextInt(2);
+        int margin = rnd.nextInt(40);
+        int width = bars.getWidth() * barWidth + margin * 2;
+        int height = 40 + rnd.nextInt(40);
+        boolean flip = rnd.nextBoolean();
+
+        var pixels = new byte[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int bar = (flip ? width - 1 - x : x) - margin;
+                boolean black = bar >= 0 && bar / barWidth < bars.getWidth() && bars.get(bar / barWidth, 0);
+                pixels[y * width + x] = (byte) ((black ? 40 : 200) + rnd.nextInt(31) - 15);
+            }
+        }
+        return bitmap(pixels, width, height);
+    }
+
+    /** Noise with no code in it */
+    private static BinaryBitmap noise(Random rnd) {
+        int width = 100 + rnd.nextInt(200);
+        int height = 40 + rnd.nextInt(40);
+        var pixels = new byte[width * height];
+        rnd.nextBytes(pixels);
+        return bitmap(pixels, width, height);
+    }
+
+    private static BinaryBitmap bitmap(byte[] pixels, int width, int height) {
+        var source = new PlanarYUVLuminanceSource(pixels, width, height, 0, 0, width, height, false);
+        return new BinaryBitmap(new GlobalHistogramBinarizer(source));
+    }
+
+    private static String digits(Random rnd, int count) {
+        var text = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            text.append((char) ('0' + rnd.nextInt(10)));
+        }
+        return text.toString();
+    }
+}
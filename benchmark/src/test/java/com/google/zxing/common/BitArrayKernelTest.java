@@ -0,0 +1,117 @@
+package com.google.zxing.common;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+
+/**
+ * Checks the word-level run kernels of {@link BitArray} and {@link BitMatrix} against
+ * bit by bit versions, on random rows with short and long runs.
+ */
+public final class BitArrayKernelTest {
+
+  private static final int TRIALS = 1000;
+
+  @Test
+  public void testTransitions() {
+    Random random = new Random(1);
+    for (int trial = 0; trial < TRIALS; trial++) {
+      BitArray row = randomRow(random, 1 + random.nextInt(300));
+      int size = row.getSize();
+      for (int from = 0; from < size; from++) {
+        int next = from + 1;
+        while (next < size && row.get(next) == row.get(from)) {
+          next++;
+        }
+        Assert.assertEquals("next from " + from + " in " + row, next, row.getNextTransition(from));
+
+        int previous = from - 1;
+        while (previous >= 0 && row.get(previous) == row.get(from)) {
+          previous--;
+        }
+        Assert.assertEquals("previous from " + from + " in " + row, previous, row.getPreviousTransition(from));
+      }
+      Assert.assertEquals(size, row.getNextTransition(size));
+    }
+  }
+
+  @Test
+  public void testGetRuns() {
+    Random random = new Random(2);
+    for (int trial = 0; trial < TRIALS; trial++) {
+      BitArray row = randomRow(random, 1 + random.nextInt(300));
+      int size = row.getSize();
+      int start = random.nextInt(size);
+      int end = start + random.nextInt(size - start + 1);
+      int[] runs = new int[1 + random.nextInt(20)];
+
+      int count = row.getRuns(start, end, runs);
+
+      int expected = 0;
+      int i = start;
+      while (i < end && expected < runs.length) {
+        int runEnd = i + 1;
+        while (runEnd < end && row.get(runEnd) == row.get(i)) {
+          runEnd++;
+        }
+        Assert.assertEquals("run " + expected + " from " + start + " in " + row, runEnd - i, runs[expected]);
+        expected++;
+        i = runEnd;
+      }
+      Assert.assertEquals("run count from " + start + " to " + end + " in " + row, expected, count);
+    }
+  }
+
+  @Test
+  public void testGetColumnAndIsRowRange() {
+    Random random = new Random(3);
+    for (int trial = 0; trial < TRIALS / 2; trial++) {
+      int width = 1 + random.nextInt(100);
+      int height = 1 + random.nextInt(100);
+      BitMatrix matrix = new BitMatrix(width, height);
+      int density = 2 + random.nextInt(8);
+      for (int y = 0; y < height; y++) {
+        for (int x = 0; x < width; x++) {
+          if (random.nextInt(density) == 0) {
+            matrix.set(x, y);
+          }
+        }
+      }
+
+      int x = random.nextInt(width);
+      BitArray column = matrix.getColumn(x, random.nextBoolean() ? null : new BitArray(height + random.nextInt(3)));
+      for (int y = 0; y < height; y++) {
+        Assert.assertEquals("column " + x + " row " + y, matrix.get(x, y), column.get(y));
+      }
+
+      int y = random.nextInt(height);
+      int start = random.nextInt(width);
+      int end = start + random.nextInt(width - start + 1);
+      for (boolean value : new boolean[] {false, true}) {
+        boolean expected = true;
+        for (int i = start; i < end; i++) {
+          expected &= matrix.get(i, y) == value;
+        }
+        Assert.assertEquals("row " + y + " from " + start + " to " + end, expected, matrix.isRowRange(y, start, end, value));
+      }
+    }
+  }
+
+  /** A row with runs of random length, mostly short with some long, crossing word boundaries */
+  static BitArray randomRow(Random random, int size) {
+    BitArray row = new BitArray(size);
+    int changeOdds = 1 + random.nextInt(40);
+    boolean black = random.nextBoolean();
+    for (int i = 0; i < size; i++) {
+      if (random.nextInt(changeOdds) == 0) {
+        black = !black;
+      }
+      if (black) {
+        row.set(i);
+      }
+    }
+    return row;
+  }
+
+}
@@ -0,0 +1,104 @@
+package com.google.zxing.common;
+
+import com.google.zxing.Binarizer;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.PlanarYUVLuminanceSource;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Checks {@link ParallelHybridBinarizer} gives the same matrix as {@link HybridBinarizer},
+ * on frame sizes that are and aren't whole blocks, around the minimum size, and big enough
+ * to be split across the pool. One scratch is reused for every frame, as a decoder would.
+ */
+public final class ParallelHybridBinarizerTest {
+
+  private static final int[] SIZES = {30, 39, 40, 41, 47, 48, 63, 64, 65, 127, 130, 257, 480, 643};
+
+  @Test
+  public void testMatchesHybridBinarizer() throws Exception {
+    ForkJoinPool pool = new ForkJoinPool(4);
+    try {
+      ParallelHybridBinarizer.Scratch scratch = new ParallelHybridBinarizer.Scratch();
+      Random random = new Random(21);
+      for (int width : SIZES) {
+        for (int height : SIZES) {
+          LuminanceSource source = randomFrame(random, width, height);
+          BitMatrix expected = blackMatrix(new HybridBinarizer(source));
+          BitMatrix actual = blackMatrix(new ParallelHybridBinarizer(source, pool, scratch));
+          Assert.assertEquals(width + "x" + height, expected, actual);
+        }
+      }
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  @Test
+  public void testCroppedSource() throws Exception {
+    ForkJoinPool pool = new ForkJoinPool(3);
+    try {
+      ParallelHybridBinarizer.Scratch scratch = new ParallelHybridBinarizer.Scratch();
+      Random random = new Random(22);
+      for (int trial = 0; trial < 50; trial++) {
+        int width = 40 + random.nextInt(300);
+        int height = 40 + random.nextInt(300);
+        LuminanceSource frame = randomFrame(random, width + 20, height + 20);
+        LuminanceSource source = frame.crop(random.nextInt(21), random.nextInt(21), width, height);
+        BitMatrix expected = blackMatrix(new HybridBinarizer(source));
+        BitMatrix actual = blackMatrix(new ParallelHybridBinarizer(source, pool, scratch));
+        Assert.assertEquals("cropped " + width + "x" + height, expected, actual);
+      }
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  /** The thresholded matrix, or null if the binarizer found nothing to threshold */
+  private static BitMatrix blackMatrix(Binarizer binarizer) {
+    try {
+      return binarizer.getBlackMatrix();
+    } catch (NotFoundException e) {
+      return null;
+    }
+  }
+
+  /**
+   * A lit background with a brightness gradient, noise, and patches of random bars. This gives
+   * a mix of high contrast blocks and flat ones, which take their black point from their neighbours.
+   */
+  private static LuminanceSource randomFrame(Random random, int width, int height) {
+    byte[] pixels = new byte[width * height];
+    int base = 60 + random.nextInt(120);
+    int gradient = random.nextInt(60);
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        int value = base + gradient * x / width + random.nextInt(5);
+        pixels[y * width + x] = (byte) value;
+      }
+    }
+    int patches = 1 + random.nextInt(6);
+    for (int patch = 0; patch < patches; patch++) {
+      int left = random.nextInt(width);
+      int top = random.nextInt(height);
+      int right = Math.min(width, left + 8 + random.nextInt(width / 2 + 1));
+      int bottom = Math.min(height, top + 8 + random.nextInt(height / 2 + 1));
+      int dark = random.nextInt(base);
+      int barWidth = 1 + random.nextInt(6);
+      for (int y = top; y < bottom; y++) {
+        for (int x = left; x < right; x++) {
+          if ((x / barWidth + y / (barWidth * 4)) % 2 == 0) {
+            pixels[y * width + x] = (byte) dark;
+          }
+        }
+      }
+    }
+    return new PlanarYUVLuminanceSource(pixels, width, height, 0, 0, width, height, false);
+  }
+
+}
@@ -0,0 +1,60 @@
+package com.google.zxing.common;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+
+/**
+ * Checks every lookup on {@link RunLengthRow} gives the same answer as on the {@link BitArray}
+ * it was built from, in order and at random, and that reversing matches {@link BitArray#reverse()}.
+ */
+public final class RunLengthRowTest {
+
+  private static final int TRIALS = 500;
+
+  @Test
+  public void testRoundTrip() {
+    Random random = new Random(6);
+    RunLengthRow runs = new RunLengthRow();
+    for (int trial = 0; trial < TRIALS; trial++) {
+      BitArray row = BitArrayKernelTest.randomRow(random, random.nextInt(300));
+      runs.set(row);
+      Assert.assertEquals(row.getSize(), runs.getSize());
+      Assert.assertEquals(row, runs.toBitArray(null));
+
+      if (row.getSize() > 0) { // BitArray can't reverse an empty row
+        BitArray reversed = row.clone();
+        reversed.reverse();
+        Assert.assertEquals("reverse of " + row, reversed, runs.reverse(null).toBitArray(null));
+      }
+    }
+  }
+
+  @Test
+  public void testLookups() {
+    Random random = new Random(7);
+    RunLengthRow runs = new RunLengthRow();
+    for (int trial = 0; trial < TRIALS; trial++) {
+      BitArray row = BitArrayKernelTest.randomRow(random, 1 + random.nextInt(300));
+      int size = row.getSize();
+      runs.set(row);
+
+      // In order first, as the readers mostly look, then jumping about
+      for (int n = 0; n < 2 * size; n++) {
+        int i = n < size ? n : random.nextInt(size);
+        Assert.assertEquals("get " + i + " in " + row, row.get(i), runs.get(i));
+        Assert.assertEquals("next set from " + i + " in " + row, row.getNextSet(i), runs.getNextSet(i));
+        Assert.assertEquals("next unset from " + i + " in " + row, row.getNextUnset(i), runs.getNextUnset(i));
+
+        int end = i + random.nextInt(size - i + 1);
+        boolean value = random.nextBoolean();
+        Assert.assertEquals("range " + i + " to " + end + " in " + row,
+            row.isRange(i, end, value), runs.isRange(i, end, value));
+      }
+      Assert.assertEquals(size, runs.getNextSet(size));
+      Assert.assertEquals(size, runs.getNextUnset(size));
+    }
+  }
+
+}
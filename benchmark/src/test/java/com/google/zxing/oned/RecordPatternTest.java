@@ -0,0 +1,157 @@
+package com.google.zxing.oned;
+
+import com.google.zxing.NotFoundException;
+import com.google.zxing.common.BitArray;
+import com.google.zxing.common.RunLengthRow;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Checks {@link OneDReader#recordPattern(BitArray, int, int[])}, which steps a run at a time,
+ * against the original pixel by pixel version, and the {@link RunLengthRow} version against both.
+ */
+public final class RecordPatternTest {
+
+  private static final int TRIALS = 20000;
+
+  @Test
+  public void testRecordPattern() {
+    Random random = new Random(4);
+    for (int trial = 0; trial < TRIALS; trial++) {
+      BitArray row = randomRow(random);
+      int start = random.nextInt(row.getSize() + 1);
+      int[] expected = new int[1 + random.nextInt(9)];
+      int[] actual = new int[expected.length];
+
+      boolean expectFound = record(() -> recordPatternBitwise(row, start, expected));
+      boolean found = record(() -> OneDReader.recordPattern(row, start, actual));
+
+      Assert.assertEquals("found from " + start + " in " + row, expectFound, found);
+      if (found) {
+        Assert.assertArrayEquals("counters from " + start + " in " + row, expected, actual);
+      }
+    }
+  }
+
+  @Test
+  public void testRecordPatternInReverse() {
+    Random random = new Random(5);
+    for (int trial = 0; trial < TRIALS; trial++) {
+      BitArray row = randomRow(random);
+      int start = random.nextInt(row.getSize());
+      int[] expected = new int[1 + random.nextInt(9)];
+      int[] actual = new int[expected.length];
+
+      boolean expectFound = record(() -> recordPatternInReverseBitwise(row, start, expected));
+      boolean found = record(() -> OneDReader.recordPatternInReverse(row, start, actual));
+
+      Assert.assertEquals("found back from " + start + " in " + row, expectFound, found);
+      if (found) {
+        Assert.assertArrayEquals("counters back from " + start + " in " + row, expected, actual);
+      }
+    }
+  }
+
+  @Test
+  public void testRecordPatternFromRuns() {
+    Random random = new Random(8);
+    RunLengthRow runs = new RunLengthRow();
+    for (int trial = 0; trial < TRIALS; trial++) {
+      BitArray row = randomRow(random);
+      runs.set(row);
+      int start = random.nextInt(row.getSize() + 1);
+      int[] expected = new int[1 + random.nextInt(9)];
+      int[] actual = new int[expected.length];
+
+      boolean expectFound = record(() -> OneDReader.recordPattern(row, start, expected));
+      boolean found = record(() -> OneDReader.recordPattern(runs, start, actual));
+
+      Assert.assertEquals("found from " + start + " in " + row, expectFound, found);
+      if (found) {
+        Assert.assertArrayEquals("counters from " + start + " in " + row, expected, actual);
+      }
+    }
+  }
+
+  interface Recorder {
+    void record() throws NotFoundException;
+  }
+
+  /** True if the pattern was recorded, false if it wasn't found */
+  static boolean record(Recorder recorder) {
+    try {
+      recorder.record();
+      return true;
+    } catch (NotFoundException e) {
+      return false;
+    }
+  }
+
+  /** A row with runs of a few pixels, like a bar code, and sometimes long ones */
+  static BitArray randomRow(Random random) {
+    int size = 1 + random.nextInt(300);
+    BitArray row = new BitArray(size);
+    int changeOdds = 1 + random.nextInt(10);
+    boolean black = random.nextBoolean();
+    for (int i = 0; i < size; i++) {
+      if (random.nextInt(changeOdds) == 0) {
+        black = !black;
+      }
+      if (black) {
+        row.set(i);
+      }
+    }
+    return row;
+  }
+
+  /** The original ZXing recordPattern, one pixel at a time */
+  private static void recordPatternBitwise(BitArray row, int start, int[] counters) throws NotFoundException {
+    int numCounters = counters.length;
+    Arrays.fill(counters, 0, numCounters, 0);
+    int end = row.getSize();
+    if (start >= end) {
+      throw NotFoundException.getNotFoundInstance();
+    }
+    boolean isWhite = !row.get(start);
+    int counterPosition = 0;
+    int i = start;
+    while (i < end) {
+      if (row.get(i) != isWhite) {
+        counters[counterPosition]++;
+      } else {
+        if (++counterPosition == numCounters) {
+          break;
+        } else {
+          counters[counterPosition] = 1;
+          isWhite = !isWhite;
+        }
+      }
+      i++;
+    }
+    if (!(counterPosition == numCounters || (counterPosition == numCounters - 1 && i == end))) {
+      throw NotFoundException.getNotFoundInstance();
+    }
+  }
+
+  /** The original ZXing recordPatternInReverse, one pixel at a time */
+  private static void recordPatternInReverseBitwise(BitArray row, int start, int[] counters)
+      throws NotFoundException {
+    int numTransitionsLeft = counters.length;
+    boolean last = row.get(start);
+    while (start > 0 && numTransitionsLeft >= 0) {
+      if (row.get(--start) != last) {
+        numTransitionsLeft--;
+        last = !last;
+      }
+    }
+    if (numTransitionsLeft >= 0) {
+      throw NotFoundException.getNotFoundInstance();
+    }
+    recordPatternBitwise(row, start + 1, counters);
+  }
+
+}
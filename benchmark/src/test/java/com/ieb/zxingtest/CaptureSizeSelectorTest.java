@@ -0,0 +1,69 @@
+package com.ieb.zxingtest;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/** Capture size picking, with made-up size lists */
+public class CaptureSizeSelectorTest {
+    private static CaptureSizeSelector sizes(int... widthHeightPairs) {
+        var widths = new int[widthHeightPairs.length / 2];
+        var heights = new int[widths.length];
+        for (int i = 0; i < widths.length; i++) {
+            widths[i] = widthHeightPairs[2 * i];
+            heights[i] = widthHeightPairs[2 * i + 1];
+        }
+        return new CaptureSizeSelector(widths, heights);
+    }
+
+    @Test
+    public void noSizesGivesNoIndex() {
+        var selector = sizes();
+        assertEquals(-1, selector.nearest(1024, 768, 4000, 3000));
+        assertEquals(-1, selector.escalate(-1, 2.0, 4000, 3000));
+    }
+
+    @Test
+    public void closestSizeWins() {
+        var selector = sizes(640, 480, 1280, 720, 1024, 768, 1920, 1080);
+        assertEquals(2, selector.nearest(1024, 768, 4000, 3000));
+        assertEquals(1, selector.nearest(1200, 700, 4000, 3000));
+        assertEquals(0, selector.nearest(320, 240, 4000, 3000));
+    }
+
+    @Test
+    public void biggerSizeWinsATie() {
+        // Half and double the target on each side are equally far off
+        assertEquals(1, sizes(500, 500, 2000, 2000).nearest(1000, 1000, 4000, 4000));
+        assertEquals(0, sizes(2000, 2000, 500, 500).nearest(1000, 1000, 4000, 4000));
+    }
+
+    @Test
+    public void oversizeOnlyPickedWhenNothingFits() {
+        // The exact match is too big, so the small one is used, however far off
+        var selector = sizes(1920, 1080, 320, 240);
+        assertEquals(1, selector.nearest(1920, 1080, 1280, 720));
+
+        // Nothing fits, so the closest of the oversize ones
+        var oversize = sizes(4000, 3000, 1920, 1080);
+        assertEquals(1, oversize.nearest(1920, 1080, 1280, 720));
+        assertEquals(0, oversize.nearest(4000, 3000, 100, 100));
+    }
+
+    @Test
+    public void escalateMovesUpWithinTheMaximum() {
+        var selector = sizes(640, 480, 1280, 960, 2560, 1920);
+        assertEquals(1, selector.escalate(0, 2.0, 4000, 3000));
+        assertEquals(2, selector.escalate(1, 2.0, 4000, 3000));
+        assertEquals(1, selector.escalate(0, 4.0, 2000, 2000)); // the closest, 2560x1920, is too big
+    }
+
+    @Test
+    public void escalateStaysWhenNothingLargerFits() {
+        var selector = sizes(640, 480, 1280, 960, 2560, 1920);
+        assertEquals(2, selector.escalate(2, 2.0, 4000, 3000)); // already the largest
+        assertEquals(1, selector.escalate(1, 2.0, 1280, 960)); // larger sizes are over the maximum
+        assertEquals(0, selector.escalate(0, 1.0, 4000, 3000)); // nothing larger asked for
+        assertEquals(7, selector.escalate(7, 2.0, 4000, 3000)); // not a size index
+    }
+}
@@ -0,0 +1,137 @@
+package com.ieb.zxingtest;
+
+import static org.junit.Assert.assertEquals;
+
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.PlanarYUVLuminanceSource;
+import com.google.zxing.common.BitArray;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.common.RunLengthRow;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+/**
+ * The binarizers share per-thread scratch buffers between instances.
+ * Run lots of them at once, on frames of different sizes so the buffers keep being resized,
+ * and check every output is bit for bit the same as running them one at a time.
+ */
+public class ConcurrentBinarizerTest {
+    private static final int THREADS = 8;
+    private static final int ROUNDS = 3;
+    private static final int[][] SIZES = {{64, 48}, {333, 217}, {480, 360}, {301, 97}};
+
+    /** One binarizer setting on one frame, with the output it gave on its own */
+    private static class Case {
+        final String name;
+        final Function<LuminanceSource, BinaryBitmap> factory;
+        final LuminanceSource source;
+        final BitMatrix matrix;
+        final BitArray[] rows;
+
+        Case(String name, Function<LuminanceSource, BinaryBitmap> factory, LuminanceSource source) throws NotFoundException {
+            this.name = name;
+            this.factory = factory;
+            this.source = source;
+            var bitmap = factory.apply(source);
+            matrix = bitmap.getBlackMatrix();
+            rows = new BitArray[source.getHeight()];
+            for (int y = 0; y < rows.length; y++) {
+                rows[y] = bitmap.getBlackRow(y, null);
+            }
+        }
+
+        /** Threshold again, and check nothing changed */
+        void check() throws NotFoundException {
+            var bitmap = factory.apply(source);
+            var runs = new RunLengthRow();
+            BitArray row = null;
+            for (int y = 0; y < rows.length; y++) {
+                row = bitmap.getBlackRow(y, row);
+                assertEquals(name + " row " + y, rows[y], row);
+                assertEquals(name + " runs " + y, rows[y], bitmap.getBlackRuns(y, runs).toBitArray(null));
+            }
+            assertEquals(name + " matrix", matrix, bitmap.getBlackMatrix());
+        }
+    }
+
+    @Test
+    public void concurrentOutputMatchesSingleThreaded() throws Exception {
+        var rnd = new Random(1234);
+        var cases = new ArrayList<Case>();
+        for (int[] size : SIZES) {
+            var source = frame(rnd, size[0], size[1]);
+            var integral = new IntegralImage(source);
+            for (boolean invert : new boolean[]{false, true}) {
+                for (int morph : new int[]{0, 2}) {
+                    var tag = size[0] + "x" + size[1] + " invert=" + invert + " morph=" + morph;
+                    for (int scale = 4; scale <= 7; scale++) {
+                        if (2 << scale > Math.min(size[0], size[1])) break; // window must fit in the frame
+                        var p = new ThresholdParameters(scale, rnd.nextInt(17) - 4, invert, morph);
+                        cases.add(new Case("unsharp " + tag + " scale=" + scale,
+                                l -> new BinaryBitmap(new UnsharpMaskBinarizer(l, p.invert, p.scale, p.exposure, p.morph)), source));
+                        cases.add(new Case("integral " + tag + " scale=" + scale,
+                                l -> new BinaryBitmap(new IntegralUnsharpMaskBinarizer(l, integral, p.invert, p.scale, p.exposure, p.morph)), source));
+                    }
+                    for (LocalVarianceBinarizer.Method method : LocalVarianceBinarizer.Method.values()) {
+                        cases.add(new Case(method + " " + tag,
+                                l -> new BinaryBitmap(new LocalVarianceBinarizer(l, method, invert, 4, 0, morph)), source));
+                    }
+                    var settings = List.of(new ThresholdParameters(4, 12, invert, morph), new ThresholdParameters(4, -4, !invert, morph));
+                    for (int i = 0; i < settings.size(); i++) {
+                        var plane = i;
+                        cases.add(new Case("multi " + tag + " plane=" + plane,
+                                l -> new MultiThresholdBinarizer(l, settings).getBitmaps().get(plane), source));
+                    }
+                }
+            }
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        try {
+            var results = new ArrayList<Future<?>>();
+            for (int t = 0; t < THREADS; t++) {
+                // Each thread takes the cases in its own order, so different sizes and binarizers overlap
+                var order = new ArrayList<>(cases);
+                Collections.shuffle(order, new Random(t));
+                results.add(pool.submit(() -> {
+                    for (int round = 0; round < ROUNDS; round++) {
+                        for (Case c : order) {
+                            c.check();
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> result : results) {
+                result.get(); // rethrows any mismatch
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /** Bars, blocks and noise under an uneven light, so every threshold has some edges to find */
+    static LuminanceSource frame(Random rnd, int width, int height) {
+        var image = new byte[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                var ink = y < height / 2 ? (x / 3) % 2 == 0 : ((x / 7) + (y / 7)) % 2 == 0;
+                var light = 60 + (x * 80) / width + (y * 40) / height;
+                var v = (ink ? light - 50 : light + 60) + rnd.nextInt(21) - 10;
+                image[y * width + x] = (byte) Math.max(0, Math.min(255, v));
+            }
+        }
+        return new PlanarYUVLuminanceSource(image, width, height, 0, 0, width, height, false);
+    }
+}
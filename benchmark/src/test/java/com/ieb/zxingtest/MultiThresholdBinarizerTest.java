@@ -0,0 +1,68 @@
+package com.ieb.zxingtest;
+
+import static org.junit.Assert.assertEquals;
+
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.common.BitArray;
+import com.google.zxing.common.RunLengthRow;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * MultiThresholdBinarizer works out the local mean once for every setting in a batch.
+ * Check each of its outputs is bit for bit the same as UnsharpMaskBinarizer with that setting,
+ * for batches mixing exposures and polarities, with and without morphological opening.
+ */
+public class MultiThresholdBinarizerTest {
+    private static final int EXPOSURE_MAX = 12;
+    private static final int EXPOSURE_MIN = -4;
+    private static final int[][] SIZES = {{64, 48}, {333, 217}, {480, 360}, {301, 97}, {97, 301}};
+
+    @Test
+    public void everyPlaneMatchesUnsharpMask() throws Exception {
+        var rnd = new Random(22);
+        for (int[] size : SIZES) {
+            var source = ConcurrentBinarizerTest.frame(rnd, size[0], size[1]);
+            for (int morph : new int[]{0, 2}) {
+                for (int scale = 3; scale <= 7; scale++) {
+                    if (2 << scale > Math.min(size[0], size[1])) break; // window must fit in the frame
+                    // Every exposure in the search range both ways, as an exposure batch is, starting inverted half the time
+                    var first = rnd.nextBoolean();
+                    var settings = new ArrayList<ThresholdParameters>();
+                    for (int exposure = EXPOSURE_MAX; exposure >= EXPOSURE_MIN; exposure -= 4) {
+                        settings.add(new ThresholdParameters(scale, exposure, first, morph));
+                        settings.add(new ThresholdParameters(scale, exposure, !first, morph));
+                    }
+                    // And a few odd exposures
+                    settings.add(new ThresholdParameters(scale, rnd.nextInt(41) - 20, rnd.nextBoolean(), morph));
+                    settings.add(new ThresholdParameters(scale, rnd.nextInt(41) - 20, rnd.nextBoolean(), morph));
+
+                    var batch = new MultiThresholdBinarizer(source, settings);
+                    assertEquals("batch size", settings.size(), batch.size());
+                    for (int i = 0; i < batch.size(); i++) {
+                        var p = batch.getSettings(i);
+                        var name = size[0] + "x" + size[1] + " " + p;
+                        var expected = new BinaryBitmap(new UnsharpMaskBinarizer(source, p.invert, p.scale, p.exposure, p.morph));
+                        check(name, source, expected, batch.getBitmaps().get(i));
+                    }
+                }
+            }
+        }
+    }
+
+    private static void check(String name, LuminanceSource source, BinaryBitmap expected, BinaryBitmap actual) throws Exception {
+        var runs = new RunLengthRow();
+        BitArray row = null;
+        for (int y = 0; y < source.getHeight(); y++) {
+            var expectedRow = expected.getBlackRow(y, null);
+            row = actual.getBlackRow(y, row);
+            assertEquals(name + " row " + y, expectedRow, row);
+            assertEquals(name + " runs " + y, expectedRow, actual.getBlackRuns(y, runs).toBitArray(null));
+        }
+        assertEquals(name + " matrix", expected.getBlackMatrix(), actual.getBlackMatrix());
+    }
+}